@@ -0,0 +1,689 @@
+import java.io.Closeable;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many games of the regular maps in lockstep, for self-play: every game is a few slices of primitive arrays
+ * instead of a {@link Referee} object graph, a step plays one action in every game that is not over, and the legal
+ * actions of all games are computed into one array of bit masks.
+ *
+ * <pre>
+ * java -cp cg-ww.jar BatchSim check [games=2000] [seed=0] [version=3] [illegal=0.05]
+ * java -cp cg-ww.jar BatchSim bench [games=4096] [steps=200000000] [seconds=10] [threads=N] [version=3]
+ * </pre>
+ *
+ * The rules are those of the referee for {@link Referee#GAME_VERSION}, including how its turn loop ends a game: only
+ * when both players lost, after the last round, or when the first player loses its first turn. An action is an index
+ * in {@link Referee.Action#all(int, boolean)}, the same as in the legal actions sent to the players; an action that is
+ * not legal, or a negative one for ACCEPT-DEFEAT, loses like an invalid output. "check" plays random games on both
+ * engines, mostly with legal actions, and compares the legal actions, the board, the scores and the results after every
+ * turn; it exits with status 1 on a difference. "bench" reports game steps per second, against the headless referee.
+ */
+class BatchSim implements Closeable {
+    // padded board: a border of holes around the largest regular map, so that neighbours need no bounds check
+    private static final int WIDTH = 9;
+    private static final int CELLS = WIDTH * WIDTH;
+    private static final int MAX_ROUNDS = 200;
+    private static final int HOLE = -1;
+    private static final int[] DELTA = new int[8];
+    // pushes allowed for each direction of the pushed unit, see Referee.Direction.canPush
+    private static final int[][] PUSHES = new int[8][];
+    private static final int[] X = new int[CELLS], Y = new int[CELLS];
+
+    static {
+        for (Referee.Direction d : Referee.Direction.ALL) {
+            DELTA[d.ordinal()] = d.dy * WIDTH + d.dx;
+            int[] pushes = new int[3];
+            int n = 0;
+            for (Referee.Direction push : Referee.Direction.ALL) {
+                if (d.canPush(push)) {
+                    pushes[n++] = push.ordinal();
+                }
+            }
+            PUSHES[d.ordinal()] = Arrays.copyOf(pushes, n);
+        }
+        for (int cell = 0; cell < CELLS; ++cell) {
+            X[cell] = cell % WIDTH;
+            Y[cell] = cell / WIDTH;
+        }
+    }
+
+    private final int games, units, words;
+    private final boolean canPush, fog, winOnMaxHeight;
+    private final Referee.Action[] actions;
+    // action index by command, unit and directions, and back
+    private final int[] index;
+    private final byte[] command, unit, move, place;
+
+    // per game: heights by padded cell, HOLE off the map
+    private final byte[] heights;
+    // per game and unit, player 0 first: padded cell
+    private final byte[] cells;
+    // per game and player
+    private final int[] scores;
+    private final boolean[] lost, won;
+    // per game: the round, the player to play, the player of the turn before, whether it is over
+    private final short[] rounds;
+    private final byte[] toPlay, last;
+    private final boolean[] over;
+
+    private final int threads;
+    private final ExecutorService pool;
+
+    /**
+     * A batch of games with the rules of {@link Referee#GAME_VERSION}, all over until {@link #reset(int, Referee.Setup)}.
+     *
+     * @param threads how many threads compute the masks and play the steps, in slices of games
+     */
+    BatchSim(int games, int threads) {
+        Referee.applyGameVersion();
+        this.games = games;
+        units = Referee.UNITS_PER_PLAYER;
+        canPush = Referee.CAN_PUSH;
+        fog = Referee.FOG_OF_WAR;
+        winOnMaxHeight = Referee.WIN_ON_MAX_HEIGHT;
+        actions = Referee.Action.all(units, canPush);
+        words = (actions.length + 63) / 64;
+        index = new int[2 * units * 64];
+        command = new byte[actions.length];
+        unit = new byte[actions.length];
+        move = new byte[actions.length];
+        place = new byte[actions.length];
+        for (int i = 0; i < actions.length; ++i) {
+            Referee.Action a = actions[i];
+            command[i] = (byte) (a.command.equals(Referee.Action.MOVE) ? 0 : 1);
+            unit[i] = (byte) a.index;
+            move[i] = (byte) a.move.ordinal();
+            place[i] = (byte) a.place.ordinal();
+            index[((command[i] * units + unit[i]) * 8 + move[i]) * 8 + place[i]] = i;
+        }
+
+        heights = new byte[games * CELLS];
+        cells = new byte[games * 2 * units];
+        scores = new int[games * 2];
+        lost = new boolean[games * 2];
+        won = new boolean[games * 2];
+        rounds = new short[games];
+        toPlay = new byte[games];
+        last = new byte[games];
+        over = new boolean[games];
+        Arrays.fill(over, true);
+
+        this.threads = Math.max(1, threads);
+        pool = this.threads > 1 ? Executors.newFixedThreadPool(this.threads) : null;
+    }
+
+    int getGames() {
+        return games;
+    }
+
+    /**
+     * @return the number of longs of the legal action mask of a game
+     */
+    int getWords() {
+        return words;
+    }
+
+    Referee.Action[] getActions() {
+        return actions;
+    }
+
+    /**
+     * Starts a game over on a setup of the regular maps, like a referee with the same init properties.
+     */
+    void reset(int game, Referee.Setup setup) {
+        if (setup.grid.size > WIDTH - 2 || setup.positions.length != 2 * units) {
+            throw new IllegalArgumentException("Not a setup of the regular maps with " + units + " units per player");
+        }
+        int base = game * CELLS;
+        for (int cell = 0; cell < CELLS; ++cell) {
+            Integer level = setup.grid.get(X[cell] - 1, Y[cell] - 1);
+            heights[base + cell] = (byte) (level == null ? HOLE : level);
+        }
+        for (int i = 0; i < 2 * units; ++i) {
+            cells[game * 2 * units + i] = (byte) ((setup.positions[i].y + 1) * WIDTH + setup.positions[i].x + 1);
+        }
+        for (int p = 2 * game; p < 2 * game + 2; ++p) {
+            scores[p] = 0;
+            lost[p] = won[p] = false;
+        }
+        rounds[game] = 0;
+        toPlay[game] = 0;
+        // like the referee's turn loop, which starts with player 0 as the player of the turn before
+        last[game] = 0;
+        over[game] = false;
+    }
+
+    boolean isOver(int game) {
+        return over[game];
+    }
+
+    int getPlayer(int game) {
+        return toPlay[game];
+    }
+
+    int getRound(int game) {
+        return rounds[game];
+    }
+
+    /**
+     * @return the score of the player, as the referee reports it: in the first version -1 for a player who lost, 1 for a
+     *         player who reached the last height and 0 otherwise, the points later on
+     */
+    int getScore(int game, int player) {
+        if (winOnMaxHeight) {
+            return lost[2 * game + player] ? -1 : won[2 * game + player] ? 1 : 0;
+        }
+        return scores[2 * game + player];
+    }
+
+    /**
+     * @return the index of the winner of a game that is over, or -1 on a draw
+     */
+    int getWinner(int game) {
+        int a = getScore(game, 0), b = getScore(game, 1);
+        return a > b ? 0 : a < b ? 1 : -1;
+    }
+
+    /**
+     * @return the height of a cell, or -1 for a hole or a cell off the map
+     */
+    int getHeight(int game, int x, int y) {
+        return x < -1 || y < -1 || x >= WIDTH - 1 || y >= WIDTH - 1 ? HOLE : heights[game * CELLS + (y + 1) * WIDTH + x + 1];
+    }
+
+    /**
+     * @return the position of a unit as {x, y}
+     */
+    int[] getPosition(int game, int player, int unit) {
+        int cell = cells[(2 * game + player) * units + unit];
+        return new int[] { X[cell] - 1, Y[cell] - 1 };
+    }
+
+    /**
+     * Computes the legal actions of the player to play in every game that is not over, in slices on the threads.
+     *
+     * @param masks {@link #getWords()} longs per game, bit i of a game for action i; left alone for games that are over
+     * @param counts the count of legal actions per game, 0 for games that are over
+     */
+    void computeMasks(long[] masks, int[] counts) {
+        parallel((from, to) -> {
+            for (int game = from; game < to; ++game) {
+                counts[game] = over[game] ? 0 : legalMask(game, masks, game * words);
+            }
+        });
+    }
+
+    /**
+     * Plays one action in every game that is not over, for the player to play, in slices on the threads.
+     *
+     * @param actions per game, an index of {@link #getActions()}; illegal or negative ones lose
+     * @return the number of games that played
+     */
+    int step(int[] actions) {
+        int playing = 0;
+        for (int game = 0; game < games; ++game) {
+            if (!over[game]) {
+                playing++;
+            }
+        }
+        parallel((from, to) -> {
+            for (int game = from; game < to; ++game) {
+                if (!over[game]) {
+                    play(game, actions[game]);
+                }
+            }
+        });
+        return playing;
+    }
+
+    private interface Slice {
+        void run(int from, int to);
+    }
+
+    private void parallel(Slice slice) {
+        if (pool == null) {
+            slice.run(0, games);
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int t = 0; t < threads; ++t) {
+            int from = (int) ((long) games * t / threads), to = (int) ((long) games * (t + 1) / threads);
+            futures.add(pool.submit(() -> slice.run(from, to)));
+        }
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the unit on the cell, as its index in the units of the game, or -1
+     */
+    private int occupant(int unitBase, int cell) {
+        for (int i = 0; i < 2 * units; ++i) {
+            if (cells[unitBase + i] == cell) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return whether a unit of the player is next to the cell or on it
+     */
+    private boolean sees(int unitBase, int player, int cell) {
+        for (int i = player * units; i < (player + 1) * units; ++i) {
+            int from = cells[unitBase + i];
+            if (Math.abs(X[from] - X[cell]) <= Referee.VIEW_DISTANCE && Math.abs(Y[from] - Y[cell]) <= Referee.VIEW_DISTANCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the legal actions of the player to play, like Referee.computeLegalActions.
+     *
+     * @return their count
+     */
+    int legalMask(int game, long[] masks, int offset) {
+        Arrays.fill(masks, offset, offset + words, 0);
+        int player = toPlay[game];
+        int base = game * CELLS, unitBase = game * 2 * units;
+        int count = 0;
+        for (int u = 0; u < units; ++u) {
+            int self = player * units + u;
+            int from = cells[unitBase + self];
+            int level = heights[base + from];
+            for (int d1 = 0; d1 < 8; ++d1) {
+                int target = from + DELTA[d1];
+                int targetLevel = heights[base + target];
+                if (targetLevel == HOLE || targetLevel > level + 1 || targetLevel >= Referee.FINAL_HEIGHT || occupant(unitBase, target) >= 0) {
+                    continue;
+                }
+                for (int d2 = 0; d2 < 8; ++d2) {
+                    int at = target + DELTA[d2];
+                    int atLevel = heights[base + at];
+                    if (atLevel == HOLE || atLevel >= Referee.FINAL_HEIGHT) {
+                        continue;
+                    }
+                    int other = occupant(unitBase, at);
+                    if (other < 0 || other == self || fog && other / units != player && !sees(unitBase, player, at)) {
+                        count += set(masks, offset, index[((u) * 8 + d1) * 8 + d2]);
+                    }
+                }
+            }
+            if (!canPush) {
+                continue;
+            }
+            for (int d1 = 0; d1 < 8; ++d1) {
+                int target = from + DELTA[d1];
+                int pushed = occupant(unitBase, target);
+                if (pushed < 0 || pushed / units == player) {
+                    continue;
+                }
+                int targetLevel = heights[base + target];
+                for (int d2 : PUSHES[d1]) {
+                    int to = target + DELTA[d2];
+                    int toLevel = heights[base + to];
+                    if (toLevel == HOLE || toLevel >= Referee.FINAL_HEIGHT || toLevel > targetLevel + 1) {
+                        continue;
+                    }
+                    int other = occupant(unitBase, to);
+                    if (other < 0 || fog && other / units != player && !sees(unitBase, player, to)) {
+                        count += set(masks, offset, index[((units + u) * 8 + d1) * 8 + d2]);
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int set(long[] masks, int offset, int bit) {
+        masks[offset + (bit >>> 6)] |= 1L << bit;
+        return 1;
+    }
+
+    /**
+     * Plays an action for the player to play, then moves on like the referee's turn loop.
+     *
+     * @param action an index of {@link #getActions()}; an illegal or negative one loses
+     */
+    void play(int game, int action) {
+        int player = toPlay[game];
+        if (action < 0 || action >= actions.length || !apply(game, player, action)) {
+            lost[2 * game + player] = true;
+            // the referee ends the game when the player of the turn before lost too, or was this one
+            if (lost[2 * game + last[game]]) {
+                last[game] = (byte) player;
+                over[game] = true;
+                return;
+            }
+        }
+        last[game] = (byte) player;
+        int next = player;
+        do {
+            if (++next == 2) {
+                next = 0;
+                if (++rounds[game] > 0 && winOnMaxHeight) {
+                    markWinners(game);
+                }
+            }
+        } while (lost[2 * game + next]);
+        toPlay[game] = (byte) next;
+        if (rounds[game] >= MAX_ROUNDS) {
+            over[game] = true;
+        }
+    }
+
+    /**
+     * The first version: units on the last height win at the start of a round, like Referee.updateGame.
+     */
+    private void markWinners(int game) {
+        for (int i = 0; i < 2 * units; ++i) {
+            if (heights[game * CELLS + cells[game * 2 * units + i]] == Referee.FINAL_HEIGHT - 1) {
+                won[2 * game + i / units] = true;
+            }
+        }
+    }
+
+    /**
+     * Checks one action like Referee.computeMove and computePush, and plays it if it is legal.
+     *
+     * @return false if it is not legal
+     */
+    private boolean apply(int game, int player, int action) {
+        int base = game * CELLS, unitBase = game * 2 * units;
+        int self = player * units + unit[action];
+        int from = cells[unitBase + self];
+        int target = from + DELTA[move[action]];
+        int targetLevel = heights[base + target];
+        if (command[action] == 0) {
+            if (targetLevel == HOLE || targetLevel > heights[base + from] + 1 || targetLevel >= Referee.FINAL_HEIGHT
+                    || occupant(unitBase, target) >= 0) {
+                return false;
+            }
+            int at = target + DELTA[place[action]];
+            int atLevel = heights[base + at];
+            if (atLevel == HOLE || atLevel >= Referee.FINAL_HEIGHT) {
+                return false;
+            }
+            int other = occupant(unitBase, at);
+            boolean build = other < 0 || other == self;
+            if (!build && !(fog && other / units != player && !sees(unitBase, player, at))) {
+                return false;
+            }
+            cells[unitBase + self] = (byte) target;
+            if (build) {
+                heights[base + at]++;
+            }
+            if (targetLevel == Referee.FINAL_HEIGHT - 1) {
+                scores[2 * game + player]++;
+            }
+            return true;
+        }
+        if (!Referee.Direction.ALL[move[action]].canPush(Referee.Direction.ALL[place[action]])) {
+            return false;
+        }
+        int pushed = occupant(unitBase, target);
+        if (pushed < 0 || pushed / units == player) {
+            return false;
+        }
+        int to = target + DELTA[place[action]];
+        int toLevel = heights[base + to];
+        if (toLevel == HOLE || toLevel >= Referee.FINAL_HEIGHT || toLevel > targetLevel + 1) {
+            return false;
+        }
+        int other = occupant(unitBase, to);
+        if (other < 0) {
+            cells[unitBase + pushed] = (byte) to;
+            heights[base + target]++;
+            return true;
+        }
+        // a unit the player does not see cancels the push
+        return fog && other / units != player && !sees(unitBase, player, to);
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    public static void main(String... args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Properties p = new Properties();
+        for (int i = 1; i < args.length; ++i) {
+            int eq = args[i].indexOf('=');
+            if (eq > 0) {
+                p.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        // the rules are static, one version per run
+        Referee.GAME_VERSION = Integer.parseInt(p.getProperty("version", String.valueOf(Referee.GAME_VERSION)));
+        switch (args[0]) {
+        case "check":
+            if (!check(p)) {
+                System.exit(1);
+            }
+            break;
+        case "bench":
+            bench(p);
+            break;
+        default:
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: BatchSim check [games=2000] [seed=0] [version=3] [illegal=0.05]");
+        System.err.println("       BatchSim bench [games=4096] [steps=200000000] [seconds=10] [threads=N] [version=3]");
+    }
+
+    /**
+     * Plays every game on a headless referee and in a batch of one, with random actions, a share of them illegal or
+     * ACCEPT-DEFEAT, and compares both after every turn.
+     *
+     * @return false on the first difference, which is printed
+     */
+    private static boolean check(Properties p) {
+        int games = Integer.parseInt(p.getProperty("games", "2000"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        double illegal = Double.parseDouble(p.getProperty("illegal", "0.05"));
+        long turns = 0;
+        try (BatchSim sim = new BatchSim(1, 1)) {
+            long[] mask = new long[sim.getWords()];
+            int[] legal = new int[sim.getActions().length];
+            String[] outputs = new String[1];
+            for (int game = 0; game < games; ++game) {
+                Random random = new Random(seed * 1_000_003 + game);
+                long gameSeed = random.nextLong();
+                int mapIndex = random.nextInt(4) - 1;
+                boolean symmetric = random.nextBoolean();
+                Referee referee = new Referee(DISCARD, DISCARD,
+                        new String[] { "seed=" + gameSeed, "mapIndex=" + mapIndex, "symmetric=" + symmetric, "headless=true" });
+                referee.initGame();
+                referee.beginGame();
+                sim.reset(0, Referee.Setup.create(gameSeed, mapIndex, symmetric, 2, Referee.UNITS_PER_PLAYER));
+                String where = "game " + game + " (seed=" + gameSeed + " mapIndex=" + mapIndex + " symmetric=" + symmetric + ")";
+                for (int turn = 0;; ++turn, ++turns) {
+                    boolean playing = referee.nextTurn();
+                    String difference = compare(referee, sim, playing, mask, legal);
+                    if (difference != null) {
+                        System.out.println(where + ", turn " + turn + ": " + difference);
+                        return false;
+                    }
+                    if (!playing) {
+                        break;
+                    }
+                    int count = sim.legalMask(0, mask, 0);
+                    int action;
+                    if (count > 0 && random.nextDouble() >= illegal) {
+                        action = legal[random.nextInt(count)];
+                    } else {
+                        action = random.nextInt(sim.getActions().length + 1) - 1;
+                    }
+                    outputs[0] = action < 0 ? "ACCEPT-DEFEAT" : sim.getActions()[action].toPlayerString();
+                    referee.playTurn(outputs);
+                    sim.play(0, action);
+                }
+            }
+        }
+        System.out.println(String.format("%d games, %d turns of version %d: identical", games, turns, Referee.GAME_VERSION));
+        return true;
+    }
+
+    /**
+     * @param legal filled with the legal actions of the referee
+     * @return what differs, or null
+     */
+    private static String compare(Referee referee, BatchSim sim, boolean playing, long[] mask, int[] legal) {
+        if (playing == sim.isOver(0)) {
+            return "the referee " + (playing ? "plays on" : "is over");
+        }
+        for (int player = 0; player < 2; ++player) {
+            if (referee.getPlayer(player).score != sim.scores[player]) {
+                return "score of player " + player + " " + referee.getPlayer(player).score + " != " + sim.scores[player];
+            }
+            for (int u = 0; u < sim.units; ++u) {
+                Referee.Point position = referee.getPlayer(player).units.get(u).position;
+                int[] at = sim.getPosition(0, player, u);
+                if (position.x != at[0] || position.y != at[1]) {
+                    return "unit " + u + " of player " + player + " at " + position.toPlayerString() + " != " + at[0] + " " + at[1];
+                }
+            }
+        }
+        Referee.Grid grid = referee.getGrid();
+        for (int y = 0; y < grid.size; ++y) {
+            for (int x = 0; x < grid.size; ++x) {
+                Integer level = grid.get(x, y);
+                if ((level == null ? HOLE : level) != sim.getHeight(0, x, y)) {
+                    return "height of " + x + " " + y + " " + level + " != " + sim.getHeight(0, x, y);
+                }
+            }
+        }
+        if (!playing) {
+            for (int player = 0; player < 2; ++player) {
+                if (referee.getScore(player) != sim.getScore(0, player)) {
+                    return "final score of player " + player + " " + referee.getScore(player) + " != " + sim.getScore(0, player);
+                }
+            }
+            return null;
+        }
+        if (referee.getNextPlayer() != sim.getPlayer(0)) {
+            return "player to play " + referee.getNextPlayer() + " != " + sim.getPlayer(0);
+        }
+        int count = referee.legalActions(referee.getNextPlayer(), legal);
+        long[] expected = new long[mask.length];
+        for (int i = 0; i < count; ++i) {
+            expected[legal[i] >>> 6] |= 1L << legal[i];
+        }
+        if (sim.legalMask(0, mask, 0) != count || !Arrays.equals(mask, expected)) {
+            return "legal actions " + count + " != " + Long.bitCount(mask[0]) + "...";
+        }
+        return null;
+    }
+
+    /**
+     * Steps a batch with a random legal action per game, from start positions prepared beforehand, and restarts the
+     * games that end; then plays the same number of turns on headless referees, on one thread, for comparison.
+     */
+    private static void bench(Properties p) throws Exception {
+        int games = Integer.parseInt(p.getProperty("games", "4096"));
+        long maxSteps = Long.parseLong(p.getProperty("steps", "200000000"));
+        double maxSeconds = Double.parseDouble(p.getProperty("seconds", "10"));
+        int threads = Integer.parseInt(p.getProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        try (BatchSim sim = new BatchSim(games, threads)) {
+            Referee.Setup[] setups = new Referee.Setup[1024];
+            for (int i = 0; i < setups.length; ++i) {
+                setups[i] = Referee.Setup.create(i, -1, false, 2, Referee.UNITS_PER_PLAYER);
+            }
+            long[] masks = new long[games * sim.getWords()];
+            int[] counts = new int[games];
+            int[] actions = new int[games];
+            long[] random = new long[games];
+            for (int game = 0; game < games; ++game) {
+                sim.reset(game, setups[game % setups.length]);
+                random[game] = game * 0x9E3779B97F4A7C15L + 1;
+            }
+            long steps = 0, ended = 0;
+            long start = System.nanoTime();
+            while (steps < maxSteps && System.nanoTime() - start < maxSeconds * 1e9) {
+                sim.computeMasks(masks, counts);
+                for (int game = 0; game < games; ++game) {
+                    // xorshift, a generator per game
+                    long r = random[game];
+                    r ^= r << 13;
+                    r ^= r >>> 7;
+                    r ^= r << 17;
+                    random[game] = r;
+                    actions[game] = counts[game] == 0 ? -1 : nth(masks, game * sim.getWords(), (int) ((r >>> 1) % counts[game]));
+                }
+                steps += sim.step(actions);
+                for (int game = 0; game < games; ++game) {
+                    if (sim.isOver(game)) {
+                        sim.reset(game, setups[(int) (ended++ % setups.length)]);
+                    }
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("batch:   %d game steps in %.1f s, %.0f steps/s, %d games ended (%d games, %d threads)", steps,
+                    seconds, steps / seconds, ended, games, threads));
+
+            long reference = 0;
+            start = System.nanoTime();
+            for (int game = 0; reference < steps && System.nanoTime() - start < maxSeconds * 1e9; ++game) {
+                Referee referee = new Referee(DISCARD, DISCARD, new String[] { "seed=" + game, "headless=true" });
+                referee.initGame();
+                referee.beginGame();
+                Bench.Driver driver = new Bench.Driver(referee, game);
+                while (driver.step(null)) {
+                    reference++;
+                }
+            }
+            seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("referee: %d game steps in %.1f s, %.0f steps/s (headless, 1 thread)", reference, seconds,
+                    reference / seconds));
+        }
+    }
+
+    /**
+     * @return the index of the n-th set bit of a mask
+     */
+    private static int nth(long[] masks, int offset, int n) {
+        for (int w = offset;; ++w) {
+            int bits = Long.bitCount(masks[w]);
+            if (n < bits) {
+                long word = masks[w];
+                for (; n > 0; --n) {
+                    word &= word - 1;
+                }
+                return (w - offset) * 64 + Long.numberOfTrailingZeros(word);
+            }
+            n -= bits;
+        }
+    }
+}
@@ -0,0 +1,804 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Micro benchmarks of the referee, run in process with {@link LocalGame}.
+ *
+ * <pre>
+ * java -cp cg-ww.jar Bench headless [games=2000] [seed=0]
+ * java -cp cg-ww.jar Bench bots [games=100] [seed=0] [bots=random,climber,minimax]
+ * java -cp cg-ww.jar Bench scaling [games=3] [sizes=6,16,32,64] [units=1,2,8,32]
+ * java -cp cg-ww.jar Bench alloc [games=500] [seed=0] [budget=64] [boardSize=..] [units=..]
+ * java -cp cg-ww.jar Bench fork [games=50] [turn=20] [forks=8] [threads=N]
+ * java -cp cg-ww.jar Bench wire [games=2000] [seed=0]
+ * java -cp cg-ww.jar Bench live [games=2000] [seed=0] [observers=2]
+ * java -cp cg-ww.jar Bench adjudicate [games=500] [seed=0] [bots=random,climber] [version=3]
+ * java -cp cg-ww.jar Bench setup [games=2000] [seed=0] [threads=1] [prefetch=1] [boardSize=..] [units=..]
+ * java -cp cg-ww.jar Bench reset [games=2000] [seed=0] [boardSize=..] [units=..]
+ * </pre>
+ */
+class Bench {
+
+    public static void main(String... args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Properties p = new Properties();
+        for (int i = 1; i < args.length; ++i) {
+            int eq = args[i].indexOf('=');
+            if (eq > 0) {
+                p.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        switch (args[0]) {
+        case "headless":
+            headless(p);
+            break;
+        case "bots":
+            bots(p);
+            break;
+        case "scaling":
+            scaling(p);
+            break;
+        case "alloc":
+            if (!alloc(p)) {
+                System.exit(1);
+            }
+            break;
+        case "fork":
+            if (!fork(p)) {
+                System.exit(1);
+            }
+            break;
+        case "wire":
+            if (!wire(p)) {
+                System.exit(1);
+            }
+            break;
+        case "live":
+            if (!live(p)) {
+                System.exit(1);
+            }
+            break;
+        case "adjudicate":
+            if (!adjudicate(p)) {
+                System.exit(1);
+            }
+            break;
+        case "setup":
+            if (!setup(p)) {
+                System.exit(1);
+            }
+            break;
+        case "reset":
+            if (!reset(p)) {
+                System.exit(1);
+            }
+            break;
+        default:
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: Bench headless [games=2000] [seed=0]");
+        System.err.println("       Bench bots [games=100] [seed=0] [bots=random,climber,minimax]");
+        System.err.println("       Bench scaling [games=3] [sizes=6,16,32,64] [units=1,2,8,32]");
+        System.err.println("       Bench alloc [games=500] [seed=0] [budget=64] [boardSize=..] [units=..]");
+        System.err.println("       Bench fork [games=50] [turn=20] [forks=8] [threads=N]");
+        System.err.println("       Bench wire [games=2000] [seed=0]");
+        System.err.println("       Bench live [games=2000] [seed=0] [observers=2]");
+        System.err.println("       Bench adjudicate [games=500] [seed=0] [bots=random,climber] [version=3]");
+        System.err.println("       Bench setup [games=2000] [seed=0] [threads=1] [prefetch=1] [boardSize=..] [units=..]");
+        System.err.println("       Bench reset [games=2000] [seed=0] [boardSize=..] [units=..]");
+    }
+
+    private static double[] playGames(long seed, int games, boolean headless) throws IOException {
+        long turns = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < games; ++i) {
+            String[] init = { "seed=" + (seed + i), "headless=" + headless };
+            LocalGame.Result result = new LocalGame(init, new Bots.RandomLegal(seed + 2 * i), new Bots.RandomLegal(seed + 2 * i + 1)).play();
+            turns += result.turns;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return new double[] { games / seconds, turns / seconds };
+    }
+
+    private static void headless(Properties p) throws IOException {
+        int games = Integer.parseInt(p.getProperty("games", "2000"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+
+        // warm up both paths before measuring
+        playGames(seed, games / 4, false);
+        playGames(seed, games / 4, true);
+        for (boolean headless : new boolean[] { false, true, false, true }) {
+            double[] rates = playGames(seed, games, headless);
+            System.out.println(String.format("headless=%-5s %8.1f games/s %10.0f turns/s", headless, rates[0], rates[1]));
+        }
+    }
+
+    /**
+     * Plays every ordered pair of sparring bots against each other, see {@link Bots}, and reports their results and the
+     * speed of their games.
+     */
+    private static void bots(Properties p) throws IOException {
+        int games = Integer.parseInt(p.getProperty("games", "100"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        String[] names = p.getProperty("bots", String.join(",", Bots.NAMES)).split(",");
+
+        for (String a : names) {
+            for (String b : names) {
+                int[] outcomes = new int[3];
+                long turns = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < games; ++i) {
+                    String[] init = { "seed=" + (seed + i), "headless=true" };
+                    LocalGame.Result result = new LocalGame(init, Bots.create(a, seed + 2 * i), Bots.create(b, seed + 2 * i + 1)).play();
+                    outcomes[result.winner() + 1]++;
+                    turns += result.turns;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println(String.format("%-8s vs %-8s %4d/%d/%-4d %8.1f games/s %10.0f turns/s", a, b, outcomes[1], outcomes[0],
+                        outcomes[2], games / seconds, turns / seconds));
+            }
+        }
+    }
+
+    private static int[] ints(String list) {
+        String[] values = list.split(",");
+        int[] result = new int[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            result[i] = Integer.parseInt(values[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Charts the turn latency of the stress variant against the board size and the number of units per player.
+     */
+    private static void scaling(Properties p) throws IOException {
+        int games = Integer.parseInt(p.getProperty("games", "3"));
+        int[] sizes = ints(p.getProperty("sizes", "6,16,32,64"));
+        int[] unitCounts = ints(p.getProperty("units", "1,2,8,32"));
+
+        List<String> rows = new ArrayList<>();
+        List<Double> latencies = new ArrayList<>();
+        for (int size : sizes) {
+            for (int units : unitCounts) {
+                String[] init = { "seed=" + size * 100 + units, "boardSize=" + size, "units=" + units, "headless=true" };
+                // the first game warms up the JIT for this configuration
+                new LocalGame(init, new Bots.RandomLegal(0), new Bots.RandomLegal(1)).play();
+                long turns = 0;
+                int boardSize = size;
+                long start = System.nanoTime();
+                for (int i = 0; i < games; ++i) {
+                    LocalGame.Result result = new LocalGame(init, new Bots.RandomLegal(2 * i), new Bots.RandomLegal(2 * i + 1)).play();
+                    turns += result.turns;
+                    // the board grows when it is too small for the units
+                    boardSize = Integer.parseInt(String.valueOf(result.configuration.get("boardSize")));
+                }
+                double micros = (System.nanoTime() - start) / 1e3 / turns;
+                rows.add(String.format("%3dx%-3d %2d units %9.1f us/turn %7.2f us/turn/unit", boardSize, boardSize, units, micros, micros / units));
+                latencies.add(micros);
+            }
+        }
+        double max = Collections.max(latencies);
+        for (int i = 0; i < rows.size(); ++i) {
+            StringBuilder bar = new StringBuilder();
+            for (int j = 0; j < Math.round(40 * latencies.get(i) / max); ++j) {
+                bar.append('#');
+            }
+            System.out.println(rows.get(i) + "  " + bar);
+        }
+    }
+
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    /**
+     * Measures the bytes allocated by every turn of headless games driven in process, after the first round, which
+     * sends the init input. Only the rows of the grid that changed are expected to allocate, that is a single string on
+     * most turns.
+     *
+     * @return false if the average is over the budget, in bytes per turn
+     */
+    private static boolean alloc(Properties p) {
+        int games = Integer.parseInt(p.getProperty("games", "500"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        long budget = Long.parseLong(p.getProperty("budget", "64"));
+        List<String> init = new ArrayList<>();
+        init.add("headless=true");
+        for (String key : new String[] { "boardSize", "units" }) {
+            if (p.getProperty(key) != null) {
+                init.add(key + "=" + p.getProperty(key));
+            }
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        long[] warmUp = new long[3];
+        for (int i = 0; i < games; ++i) {
+            measureGame(threads, seed + i, init, warmUp);
+        }
+        long[] totals = new long[3];
+        for (int i = 0; i < games; ++i) {
+            measureGame(threads, seed + games + i, init, totals);
+        }
+        double perTurn = (double) totals[1] / totals[0];
+        System.out.println(String.format("%d turns: %.1f bytes/turn, %d bytes at most in a turn, budget %d bytes/turn", totals[0], perTurn,
+                totals[2], budget));
+        return perTurn <= budget;
+    }
+
+    /**
+     * Adds to totals the number of measured turns, the bytes they allocated and the most bytes allocated by one turn.
+     */
+    private static void measureGame(com.sun.management.ThreadMXBean threads, long seed, List<String> init, long[] totals) {
+        List<String> lines = new ArrayList<>(init);
+        lines.add("seed=" + seed);
+        Referee referee = new Referee(DISCARD, DISCARD, lines.toArray(new String[lines.size()]));
+        if (!referee.initGame()) {
+            return;
+        }
+        referee.beginGame();
+        Driver driver = new Driver(referee, seed);
+        long thread = Thread.currentThread().getId();
+        // what reading the counter costs, on some VMs it allocates
+        long overhead = -threads.getThreadAllocatedBytes(thread) + threads.getThreadAllocatedBytes(thread);
+        while (true) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            if (!driver.step(null)) {
+                break;
+            }
+            long bytes = threads.getThreadAllocatedBytes(thread) - before - overhead;
+            // both players get the init input in the first round
+            if (driver.turn > 2) {
+                totals[0]++;
+                totals[1] += bytes;
+                totals[2] = Math.max(totals[2], bytes);
+            }
+        }
+    }
+
+    /**
+     * Drives a referee in process, with a random legal action every turn. The random generator is seeded with the turn,
+     * so that a driver of a restored game plays on exactly like the driver of the original game.
+     */
+    static class Driver {
+        final Referee referee;
+        private final long seed;
+        private final Random random = new Random();
+        private final String[] outputs = new String[1];
+        int turn, size, units;
+
+        Driver(Referee referee, long seed) {
+            this.referee = referee;
+            this.seed = seed;
+        }
+
+        /**
+         * @return a driver of the restored copy of the game, at the same turn
+         */
+        Driver fork(Referee copy, long seed) {
+            Driver driver = new Driver(copy, seed);
+            driver.turn = turn;
+            driver.size = size;
+            driver.units = units;
+            return driver;
+        }
+
+        /**
+         * Plays a turn, without allocating when there is no transcript.
+         *
+         * @param transcript where to append the input and the output of the turn, or null
+         * @return false once the game is over
+         */
+        boolean step(StringBuilder transcript) {
+            if (!referee.nextTurn()) {
+                return false;
+            }
+            List<String> input = referee.getNextInput();
+            // both players get the init input in the first round
+            int offset = turn < 2 ? 2 : 0;
+            if (turn == 0) {
+                size = Integer.parseInt(input.get(0));
+                units = Integer.parseInt(input.get(1));
+            }
+            int countLine = offset + size + 2 * units;
+            int count = Integer.parseInt(input.get(countLine));
+            random.setSeed(seed + turn);
+            outputs[0] = count == 0 ? "ACCEPT-DEFEAT" : input.get(countLine + 1 + random.nextInt(count));
+            if (transcript != null) {
+                transcript.append("###Input ").append(referee.getNextPlayer()).append('\n');
+                for (int i = 0; i < input.size(); ++i) {
+                    transcript.append(input.get(i)).append('\n');
+                }
+                transcript.append(outputs[0]).append('\n');
+            }
+            referee.playTurn(outputs);
+            turn++;
+            return true;
+        }
+    }
+
+    /**
+     * Plays games up to a turn, snapshots them and forks every snapshot into continuations on a thread pool. The first
+     * continuation plays like the original game and must match it byte for byte.
+     *
+     * @return false if a continuation or a snapshot of a restored game differs
+     */
+    private static boolean fork(Properties p) throws Exception {
+        int games = Integer.parseInt(p.getProperty("games", "50"));
+        int turn = Integer.parseInt(p.getProperty("turn", "20"));
+        int forks = Integer.parseInt(p.getProperty("forks", "8"));
+        int threads = Integer.parseInt(p.getProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        boolean ok = true;
+        long snapshotBytes = 0, snapshots = 0, continuations = 0;
+        long start = System.nanoTime();
+        try {
+            for (int game = 0; game < games; ++game) {
+                ByteArrayOutputStream end = new ByteArrayOutputStream();
+                Referee referee = new Referee(new PrintStream(end), DISCARD, new String[] { "seed=" + game, "headless=true" });
+                if (!referee.initGame()) {
+                    continue;
+                }
+                referee.beginGame();
+                Driver original = new Driver(referee, game);
+                while (original.turn < turn && original.step(null)) {
+                }
+                if (referee.isOver()) {
+                    continue;
+                }
+                byte[] snapshot = referee.snapshot();
+                snapshotBytes += snapshot.length;
+                snapshots++;
+                if (!Arrays.equals(Referee.restore(snapshot, DISCARD, DISCARD).snapshot(), snapshot)) {
+                    System.out.println("game " + game + ": the snapshot of the restored game differs");
+                    ok = false;
+                }
+
+                // where the original driver is, before it plays on
+                Driver at = original.fork(null, game);
+                List<Future<String>> results = new ArrayList<>();
+                for (int f = 0; f < forks; ++f) {
+                    long seed = game + 1_000_003L * f;
+                    results.add(pool.submit(() -> {
+                        ByteArrayOutputStream forkEnd = new ByteArrayOutputStream();
+                        Referee copy = Referee.restore(snapshot, new PrintStream(forkEnd), DISCARD);
+                        return playToEnd(at.fork(copy, seed), forkEnd);
+                    }));
+                }
+                String expected = playToEnd(original, end);
+                for (Future<String> result : results) {
+                    result.get();
+                    continuations++;
+                }
+                if (!results.get(0).get().equals(expected)) {
+                    System.out.println("game " + game + ": the continuation differs from the original game");
+                    ok = false;
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%d snapshots at turn %d, %.0f bytes each, %d continuations on %d threads, %.1f s: %s", snapshots,
+                turn, (double) snapshotBytes / Math.max(1, snapshots), continuations, threads, seconds, ok ? "identical" : "DIFFERENT"));
+        return ok;
+    }
+
+    private static String playToEnd(Driver driver, ByteArrayOutputStream end) {
+        StringBuilder transcript = new StringBuilder();
+        while (driver.step(transcript)) {
+        }
+        return transcript.append(end.toString()).toString();
+    }
+
+    /**
+     * Plays the same games with random legal bots on the text protocol and on the binary protocol, and compares their
+     * results and speed.
+     *
+     * @return false if a game ends differently
+     */
+    private static boolean wire(Properties p) throws IOException {
+        int games = Integer.parseInt(p.getProperty("games", "2000"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        String[][] ends = new String[games][];
+        long turns = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < games; ++i) {
+            String[] init = { "seed=" + (seed + i), "headless=true" };
+            LocalGame.Result result = new LocalGame(init, new Bots.RandomLegal(seed + 2 * i), new Bots.RandomLegal(seed + 2 * i + 1)).play();
+            ends[i] = new String[] { result.end, Arrays.toString(result.scores) };
+            turns += result.turns;
+        }
+        double text = (System.nanoTime() - start) / 1e9;
+
+        boolean ok = true;
+        long binaryTurns = 0, bytes = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < games; ++i) {
+            String[] init = { "seed=" + (seed + i), "headless=true" };
+            BinaryGame game = new BinaryGame(init, seed + 2 * i, seed + 2 * i + 1);
+            LocalGame.Result result = game.play();
+            binaryTurns += result.turns;
+            bytes += game.getBytes();
+            if (ok && !(result.end.equals(ends[i][0]) && Arrays.toString(result.scores).equals(ends[i][1]))) {
+                System.out.println("game " + i + ": " + result.end + " " + Arrays.toString(result.scores) + " on the binary protocol, " + ends[i][0]
+                        + " " + ends[i][1] + " on the text protocol");
+                ok = false;
+            }
+        }
+        double binary = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("text:   %d games, %d turns in %.2f s, %.0f turns/s", games, turns, text, turns / text));
+        System.out.println(String.format("binary: %d games, %d turns in %.2f s, %.0f turns/s, %.0f bytes per turn: %s", games, binaryTurns, binary,
+                binaryTurns / binary, (double) bytes / binaryTurns, ok && turns == binaryTurns ? "same results" : "DIFFERENT"));
+        return ok && turns == binaryTurns;
+    }
+
+    /**
+     * Plays the same games driven in process without and with a "live" name, while observer threads watch them, and
+     * reports what publishing the views costs the game thread, in CPU time and allocated bytes. The observers check that
+     * every view they see is whole: the units on distinct cells they can stand on.
+     *
+     * @return false if an observer saw a view that is not
+     */
+    private static boolean live(Properties p) throws Exception {
+        int games = Integer.parseInt(p.getProperty("games", "2000"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        int observers = Integer.parseInt(p.getProperty("observers", "2"));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicLong reads = new AtomicLong(), views = new AtomicLong(), broken = new AtomicLong();
+        Thread[] watchers = new Thread[observers];
+        for (int i = 0; i < observers; ++i) {
+            watchers[i] = new Thread(() -> {
+                long read = 0, seen = 0, bad = 0;
+                Referee.LiveView last = null;
+                while (!done.get()) {
+                    Referee.LiveView view = Referee.watch("bench");
+                    read++;
+                    if (view != null && view != last) {
+                        seen++;
+                        if (!whole(view)) {
+                            bad++;
+                        }
+                        last = view;
+                    }
+                    // leave the game thread its share of the cores
+                    Thread.yield();
+                }
+                reads.addAndGet(read);
+                views.addAndGet(seen);
+                broken.addAndGet(bad);
+            });
+            watchers[i].start();
+        }
+        long[] plain, live;
+        try {
+            playLive(threads, seed, games / 4, false);
+            playLive(threads, seed, games / 4, true);
+            plain = playLive(threads, seed, games, false);
+            live = playLive(threads, seed, games, true);
+        } finally {
+            done.set(true);
+            for (Thread watcher : watchers) {
+                watcher.join();
+            }
+        }
+        System.out.println(String.format("plain: %d turns, %6.0f ns/turn, %6.1f bytes/turn", plain[0], (double) plain[1] / plain[0],
+                (double) plain[2] / plain[0]));
+        System.out.println(String.format("live:  %d turns, %6.0f ns/turn, %6.1f bytes/turn, %.2f views/turn", live[0], (double) live[1] / live[0],
+                (double) live[2] / live[0], (double) live[3] / live[0]));
+
+        // a view costs less than the noise of whole games: publish the same position over and over
+        Referee referee = new Referee(DISCARD, DISCARD, new String[] { "seed=" + seed, "headless=true", "live=publish" });
+        referee.initGame();
+        referee.beginGame();
+        Driver driver = new Driver(referee, seed);
+        while (driver.turn < 20 && driver.step(null)) {
+        }
+        int publishes = 1_000_000;
+        long thread = Thread.currentThread().getId();
+        for (int round = 0; round < 2; ++round) {
+            long cpu = threads.getCurrentThreadCpuTime();
+            long bytes = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < publishes; ++i) {
+                referee.publish();
+            }
+            if (round == 1) {
+                System.out.println(String.format("publish: %.0f ns and %.0f bytes per view", (double) (threads.getCurrentThreadCpuTime() - cpu) / publishes,
+                        (double) (threads.getThreadAllocatedBytes(thread) - bytes) / publishes));
+            }
+        }
+        referee.unpublish();
+        System.out.println(String.format("%d observers: %d reads, %d views seen, %d broken: %s", observers, reads.get(), views.get(), broken.get(),
+                broken.get() == 0 ? "whole" : "BROKEN"));
+        return broken.get() == 0;
+    }
+
+    /**
+     * @return the turns, the CPU time and the bytes allocated by the calling thread, and the views published
+     */
+    private static long[] playLive(com.sun.management.ThreadMXBean threads, long seed, int games, boolean live) {
+        long thread = Thread.currentThread().getId();
+        long[] totals = new long[4];
+        long cpu = threads.getCurrentThreadCpuTime();
+        long bytes = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < games; ++i) {
+            String[] init = live ? new String[] { "seed=" + (seed + i), "headless=true", "live=bench" }
+                    : new String[] { "seed=" + (seed + i), "headless=true" };
+            Referee referee = new Referee(DISCARD, DISCARD, init);
+            if (!referee.initGame()) {
+                continue;
+            }
+            referee.beginGame();
+            Driver driver = new Driver(referee, seed + i);
+            while (driver.step(null)) {
+            }
+            totals[0] += driver.turn;
+            if (live) {
+                totals[3] += referee.getLiveView().sequence + 1;
+            }
+        }
+        totals[1] = threads.getCurrentThreadCpuTime() - cpu;
+        totals[2] = threads.getThreadAllocatedBytes(thread) - bytes;
+        return totals;
+    }
+
+    private static boolean whole(Referee.LiveView view) {
+        Set<Integer> cells = new HashSet<>();
+        for (int unit : view.units) {
+            int x = unit >> 8, y = unit & 0xFF;
+            if (x >= view.size || y >= view.size || !cells.add(unit)) {
+                return false;
+            }
+            int height = view.height(x, y);
+            if (height < 0 || height >= Referee.FINAL_HEIGHT) {
+                return false;
+            }
+        }
+        return view.heights.length == view.size * view.size && view.scores.length == view.lost.length;
+    }
+
+    /**
+     * Plays every ordered pair of sparring bots with and without "adjudicate=true", the same games since the bots are
+     * seeded, and checks that adjudicated games end with the same ranking in fewer turns.
+     *
+     * @return false if an adjudicated game ends with another ranking
+     */
+    private static boolean adjudicate(Properties p) throws IOException {
+        int games = Integer.parseInt(p.getProperty("games", "500"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        String[] names = p.getProperty("bots", "random,climber").split(",");
+        // the rules are static, one version per run
+        Referee.GAME_VERSION = Integer.parseInt(p.getProperty("version", String.valueOf(Referee.GAME_VERSION)));
+
+        boolean ok = true;
+        for (String a : names) {
+            for (String b : names) {
+                long turns = 0, adjudicatedTurns = 0, nanos = 0, adjudicatedNanos = 0;
+                int adjudicated = 0, different = 0;
+                for (int i = 0; i < games; ++i) {
+                    String[] init = { "seed=" + (seed + i), "headless=true" };
+                    long start = System.nanoTime();
+                    LocalGame.Result full = new LocalGame(init, Bots.create(a, seed + 2 * i), Bots.create(b, seed + 2 * i + 1)).play();
+                    nanos += System.nanoTime() - start;
+                    init = new String[] { "seed=" + (seed + i), "headless=true", "adjudicate=true" };
+                    start = System.nanoTime();
+                    LocalGame.Result early = new LocalGame(init, Bots.create(a, seed + 2 * i), Bots.create(b, seed + 2 * i + 1)).play();
+                    adjudicatedNanos += System.nanoTime() - start;
+                    turns += full.turns;
+                    adjudicatedTurns += early.turns;
+                    if ("adjudicated".equals(early.reason)) {
+                        adjudicated++;
+                    }
+                    if (!early.end.equals(full.end)) {
+                        if (different++ == 0) {
+                            System.out.println(String.format("%s vs %s, seed %d: %s adjudicated at turn %d, %s after %d turns", a, b, seed + i, early.end,
+                                    early.turns, full.end, full.turns));
+                        }
+                    }
+                }
+                ok &= different == 0;
+                System.out.println(String.format("%-8s vs %-8s %4d/%d adjudicated, %7d turns instead of %7d (%5.1f%%), %6.1f s instead of %6.1f: %s", a, b,
+                        adjudicated, games, adjudicatedTurns, turns, 100.0 * adjudicatedTurns / turns, adjudicatedNanos / 1e9, nanos / 1e9,
+                        different == 0 ? "same rankings" : different + " DIFFERENT"));
+            }
+        }
+        return ok;
+    }
+
+    /**
+     * Plays the same games of random bots on worker threads with the setups built inline and built ahead of time by
+     * {@link SetupPrefetcher}, and reports the share of the setups in the time of a game and the games per second.
+     *
+     * @return false if a game ended differently
+     */
+    private static boolean setup(Properties p) throws Exception {
+        int games = Integer.parseInt(p.getProperty("games", "2000"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        int threads = Integer.parseInt(p.getProperty("threads", "1"));
+        int prefetch = Integer.parseInt(p.getProperty("prefetch", "1"));
+        List<String[]> inits = new ArrayList<>(games);
+        for (int i = 0; i < games; ++i) {
+            List<String> init = new ArrayList<>(Arrays.asList("seed=" + (seed + i), "headless=true"));
+            for (String key : new String[] { "boardSize", "units" }) {
+                if (p.getProperty(key) != null) {
+                    init.add(key + "=" + p.getProperty(key));
+                }
+            }
+            inits.add(init.toArray(new String[init.size()]));
+        }
+
+        long setupNanos = 0;
+        for (int round = 0; round < 2; ++round) {
+            long start = System.nanoTime();
+            for (String[] init : inits) {
+                Referee.Setup.create(2, Referee.properties(init));
+            }
+            setupNanos = System.nanoTime() - start;
+        }
+        LocalGame.Result[] inline = new LocalGame.Result[games], prefetched = new LocalGame.Result[games];
+        playSetups(inits, seed, threads, 0, inline);
+        playSetups(inits, seed, threads, prefetch, prefetched);
+        double inlineSeconds = playSetups(inits, seed, threads, 0, inline);
+        double prefetchedSeconds = playSetups(inits, seed, threads, prefetch, prefetched);
+
+        int different = 0;
+        for (int i = 0; i < games; ++i) {
+            if (!inline[i].end.equals(prefetched[i].end) || !Arrays.equals(inline[i].scores, prefetched[i].scores) || inline[i].turns != prefetched[i].turns
+                    || !inline[i].configuration.equals(prefetched[i].configuration)) {
+                if (different++ == 0) {
+                    System.out.println(String.format("seed %d: %s after %d turns inline, %s after %d turns prefetched", seed + i, inline[i].end,
+                            inline[i].turns, prefetched[i].end, prefetched[i].turns));
+                }
+            }
+        }
+        System.out.println(String.format("setup: %.1f us per game, %.1f%% of the time of a game", setupNanos / 1e3 / games,
+                100.0 * setupNanos / 1e9 / (inlineSeconds * threads)));
+        System.out.println(String.format("inline:     %8.1f games/s on %d threads", games / inlineSeconds, threads));
+        System.out.println(String.format("prefetched: %8.1f games/s on %d threads, %d prefetching: %s", games / prefetchedSeconds, threads, prefetch,
+                different == 0 ? "same results" : different + " DIFFERENT"));
+        return different == 0;
+    }
+
+    /**
+     * Plays every game on worker threads, writing its result at its index.
+     *
+     * @param prefetch the threads building the setups ahead of time, or 0 to build them inline
+     * @return the time it took, in seconds
+     */
+    private static double playSetups(List<String[]> inits, long seed, int threads, int prefetch, LocalGame.Result[] results) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        SetupPrefetcher prefetcher = prefetch > 0 ? new SetupPrefetcher(inits, prefetch, 4 * threads) : null;
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> played = new ArrayList<>();
+            for (int i = 0; i < inits.size(); ++i) {
+                int index = i;
+                played.add(executor.submit(() -> {
+                    SetupPrefetcher.Game ready = prefetcher == null ? null : prefetcher.take();
+                    int game = ready == null ? index : ready.index;
+                    results[game] = new LocalGame(inits.get(game), new Bots.RandomLegal(seed + 2 * game), new Bots.RandomLegal(seed + 2 * game + 1))
+                            .setSetup(ready == null ? null : ready.setup).play();
+                    return null;
+                }));
+            }
+            for (Future<?> game : played) {
+                game.get();
+            }
+            return (System.nanoTime() - start) / 1e9;
+        } finally {
+            executor.shutdown();
+            if (prefetcher != null) {
+                prefetcher.close();
+            }
+        }
+    }
+
+    /**
+     * Plays the same games driven in process on a new referee per game and on referees reset by a {@link RefereePool},
+     * and reports what setting up a game allocates and costs the game thread, until its first turn.
+     *
+     * @return false if a game was played differently
+     */
+    private static boolean reset(Properties p) {
+        int games = Integer.parseInt(p.getProperty("games", "2000"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        RefereePool pool = new RefereePool(DISCARD, DISCARD, 1);
+
+        long[] created = new long[2], pooled = new long[2];
+        int different = 0;
+        for (int round = 0; round < 2; ++round) {
+            // the first round warms up both paths
+            created = new long[2];
+            pooled = new long[2];
+            for (int i = 0; i < games; ++i) {
+                String a = playReset(threads, p, seed + i, null, created);
+                String b = playReset(threads, p, seed + i, pool, pooled);
+                if (round == 1 && !a.equals(b) && different++ == 0) {
+                    System.out.println(String.format("seed %d: the game on a reset referee is not the game on a new one", seed + i));
+                }
+            }
+        }
+        System.out.println(String.format("new referee:   %7.0f bytes and %5.1f us of setup per game", (double) created[0] / games,
+                created[1] / 1e3 / games));
+        System.out.println(String.format("reset referee: %7.0f bytes and %5.1f us of setup per game, %s", (double) pooled[0] / games,
+                pooled[1] / 1e3 / games, pool));
+        System.out.println(different == 0 ? "same games" : different + " DIFFERENT");
+        return different == 0;
+    }
+
+    /**
+     * Plays a game, adding to totals the bytes allocated and the CPU time spent from the init properties to the first
+     * turn.
+     *
+     * @param pool where to take the referee from, or null for a new one
+     * @return the transcript of the game and its scores
+     */
+    private static String playReset(com.sun.management.ThreadMXBean threads, Properties p, long seed, RefereePool pool, long[] totals) {
+        long thread = Thread.currentThread().getId();
+        long bytes = threads.getThreadAllocatedBytes(thread);
+        long cpu = threads.getCurrentThreadCpuTime();
+        Referee referee;
+        if (pool == null) {
+            List<String> init = new ArrayList<>(Arrays.asList("seed=" + seed, "headless=true"));
+            for (String key : new String[] { "boardSize", "units" }) {
+                if (p.getProperty(key) != null) {
+                    init.add(key + "=" + p.getProperty(key));
+                }
+            }
+            referee = new Referee(DISCARD, DISCARD, init.toArray(new String[init.size()]));
+        } else {
+            Properties init = new Properties();
+            init.setProperty("seed", String.valueOf(seed));
+            init.setProperty("headless", "true");
+            for (String key : new String[] { "boardSize", "units" }) {
+                if (p.getProperty(key) != null) {
+                    init.setProperty(key, p.getProperty(key));
+                }
+            }
+            referee = pool.acquire(init);
+        }
+        boolean valid = referee.initGame();
+        if (valid) {
+            referee.beginGame();
+        }
+        totals[0] += threads.getThreadAllocatedBytes(thread) - bytes;
+        totals[1] += threads.getCurrentThreadCpuTime() - cpu;
+
+        StringBuilder transcript = new StringBuilder();
+        if (valid) {
+            Driver driver = new Driver(referee, seed);
+            while (driver.step(transcript)) {
+            }
+            transcript.append(referee.getScore(0)).append(' ').append(referee.getScore(1)).append(' ').append(referee.getConfiguration());
+        }
+        if (pool != null) {
+            pool.release(referee);
+        }
+        return transcript.toString();
+    }
+}
@@ -0,0 +1,212 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Runs a game of {@link Referee} in the calling thread on the binary protocol, see {@link AbstractReferee#start()}, as
+ * a stand-in for a driver that speaks it. Every input frame is decoded into the grid, the units and the legal action
+ * mask, and both players answer with a random legal action: the n-th legal action for a random n, like
+ * {@link Bots.RandomLegal} with the same seed picks on the text protocol, so that both protocols play the same game.
+ */
+class BinaryGame {
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private final String[] init;
+    private final Random[] randoms;
+
+    private byte[] pending = "###Start 2 binary\n".getBytes(StandardCharsets.UTF_8);
+    private int pendingStart, pendingEnd = pending.length;
+
+    // the referee's output: the ###Binary line, then frames
+    private byte[] frame = new byte[1024];
+    private int frameLength;
+    private boolean binary;
+    private long bytes;
+
+    // from the hello frame
+    private int size, units, words;
+    // decoded from the last input frame
+    private final ByteArrayOutputStream answer = new ByteArrayOutputStream();
+    private byte[] heights;
+    private int[] positions;
+    private long[] mask;
+
+    private LocalGame.Result result;
+    private int turns;
+
+    /**
+     * @param seeds the seed of the random generator of every player
+     */
+    BinaryGame(String[] init, long... seeds) {
+        this.init = init;
+        randoms = new Random[seeds.length];
+        for (int i = 0; i < seeds.length; ++i) {
+            randoms[i] = new Random(seeds[i]);
+        }
+    }
+
+    LocalGame.Result play() throws IOException {
+        Referee referee = new Referee(new Answers(), new PrintStream(new Frames(), false, "UTF-8"), DISCARD, init);
+        if (result == null) {
+            throw new IOException("The game did not end with an end frame");
+        }
+        result.turns = turns;
+        result.configuration = referee.getConfiguration();
+        return result;
+    }
+
+    /**
+     * @return the bytes the referee wrote
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    private void onFrame(ByteBuffer in) throws IOException {
+        byte type = in.get();
+        if (type == Referee.FRAME_HELLO) {
+            in.get();
+            size = in.get();
+            units = in.get();
+            words = (in.getShort() + 63) / 64;
+            heights = new byte[size * size];
+            positions = new int[2 * units];
+            mask = new long[words];
+        } else if (type == Referee.FRAME_INPUT) {
+            int player = in.get();
+            in.getShort();
+            int lineCount = in.get();
+            in.get(heights);
+            for (int i = 0; i < positions.length; ++i) {
+                positions[i] = in.getShort();
+            }
+            int count = in.getShort();
+            for (int w = 0; w < words; ++w) {
+                mask[w] = in.getLong();
+            }
+            turns++;
+            answer.reset();
+            DataOutputStream out = new DataOutputStream(answer);
+            for (int i = 0; i < lineCount; ++i) {
+                String text = "";
+                int action = -1;
+                if (count == 0) {
+                    text = "ACCEPT-DEFEAT";
+                } else {
+                    action = nth(randoms[player].nextInt(count));
+                }
+                // length: type, action and the string with its length
+                out.writeInt(1 + 2 + 2 + text.length());
+                out.writeByte(Referee.FRAME_ANSWER);
+                out.writeShort(action);
+                out.writeUTF(text);
+            }
+            pending = answer.toByteArray();
+            pendingStart = 0;
+            pendingEnd = pending.length;
+        } else if (type == Referee.FRAME_END) {
+            result = new LocalGame.Result();
+            result.scores = new int[in.get()];
+            for (int i = 0; i < result.scores.length; ++i) {
+                result.scores[i] = in.getInt();
+            }
+            int length = in.getShort();
+            result.end = "###End " + new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            throw new IOException("Unknown frame " + type);
+        }
+    }
+
+    /**
+     * @return the index of the n-th legal action
+     */
+    private int nth(int n) {
+        for (int w = 0;; ++w) {
+            int bits = Long.bitCount(mask[w]);
+            if (n < bits) {
+                long word = mask[w];
+                for (; n > 0; --n) {
+                    word &= word - 1;
+                }
+                return w * 64 + Long.numberOfTrailingZeros(word);
+            }
+            n -= bits;
+        }
+    }
+
+    /**
+     * The referee's output: the line that acknowledges the binary protocol, then whole frames.
+     */
+    private class Frames extends OutputStream {
+        @Override
+        public void write(int b) throws IOException {
+            bytes++;
+            if (frameLength == frame.length) {
+                frame = Arrays.copyOf(frame, frame.length * 2);
+            }
+            frame[frameLength++] = (byte) b;
+            if (!binary) {
+                if (b == '\n') {
+                    String line = new String(frame, 0, frameLength - 1, StandardCharsets.UTF_8);
+                    if (!line.startsWith("###Binary ")) {
+                        throw new IOException("The referee answered with " + line);
+                    }
+                    binary = true;
+                    frameLength = 0;
+                }
+                return;
+            }
+            if (frameLength >= 4) {
+                int length = ByteBuffer.wrap(frame, 0, 4).getInt();
+                if (frameLength == 4 + length) {
+                    onFrame(ByteBuffer.wrap(frame, 4, length).slice());
+                    frameLength = 0;
+                }
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; ++i) {
+                write(b[i]);
+            }
+        }
+    }
+
+    /**
+     * The referee's input: the start line, then the answer frames of the last input frame.
+     */
+    private class Answers extends InputStream {
+        @Override
+        public int read() {
+            if (pendingStart == pendingEnd) {
+                return -1;
+            }
+            return pending[pendingStart++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (pendingStart == pendingEnd) {
+                return -1;
+            }
+            int n = Math.min(len, pendingEnd - pendingStart);
+            System.arraycopy(pending, pendingStart, b, off, n);
+            pendingStart += n;
+            return n;
+        }
+    }
+}
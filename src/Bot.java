@@ -0,0 +1,11 @@
+/**
+ * A player that runs in the same process as the referee, see {@link LocalGame}.
+ */
+interface Bot {
+    /**
+     * @param input the lines of an ###Input block, preceded by the init lines on the first turn
+     * @param outputLines the number of lines the referee expects
+     * @return the answer, one element per line
+     */
+    String[] play(String[] input, int outputLines);
+}
@@ -0,0 +1,279 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps bot processes running between games, so that bots which run on a JVM do not pay their JIT warm-up every game.
+ * <p>
+ * A bot opts in with {@link Spec#reset}: after a game it gets a "###Reset" line and answers "###Ready" once it forgot
+ * the game, then it gets the init input of its next game on the same process. Bots that do not opt in are replaced by a
+ * new process after every game, started while the other games are played.
+ */
+class BotPool implements Closeable {
+    static final String RESET = "###Reset";
+    static final String READY = "###Ready";
+
+    /**
+     * How to start a bot.
+     */
+    static class Spec {
+        final String name;
+        final List<String> command;
+        final boolean reset;
+
+        /**
+         * @param command the program and its arguments, separated by spaces
+         */
+        Spec(String name, String command, boolean reset) {
+            this.name = name;
+            this.command = Arrays.asList(command.trim().split("\\s+"));
+            this.reset = reset;
+        }
+    }
+
+    /**
+     * A bot process, playing one line of output per line the referee expects.
+     */
+    static class ProcessBot implements Bot, Closeable {
+        // put back into the queue, so that every read after the end of the output sees it
+        private static final String EOF = new String("EOF");
+
+        final Spec spec;
+        private final long answerTimeoutMillis;
+        private final Process process;
+        private final Writer in;
+        private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+        // games played on this process
+        int games;
+
+        /**
+         * @param answerTimeoutMillis how long to wait for each line of an answer, forever if negative
+         */
+        ProcessBot(Spec spec, long answerTimeoutMillis) throws IOException {
+            this.spec = spec;
+            this.answerTimeoutMillis = answerTimeoutMillis;
+            process = new ProcessBuilder(spec.command).redirectError(ProcessBuilder.Redirect.to(NULL_FILE)).start();
+            in = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), "UTF-8"));
+            Thread reader = new Thread(() -> {
+                try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"))) {
+                    String line;
+                    while ((line = out.readLine()) != null) {
+                        lines.add(line);
+                    }
+                } catch (IOException e) {
+                }
+                lines.add(EOF);
+            }, "bot-" + spec.name);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        @Override
+        public String[] play(String[] input, int outputLines) {
+            try {
+                for (String line : input) {
+                    in.write(line);
+                    in.write('\n');
+                }
+                in.flush();
+            } catch (IOException e) {
+                // the bot is gone, the referee gets empty lines and the bot loses
+                return new String[0];
+            }
+            String[] answer = new String[outputLines];
+            for (int i = 0; i < outputLines; ++i) {
+                answer[i] = next(answerTimeoutMillis);
+                if (answer[i] == null) {
+                    break;
+                }
+            }
+            return answer;
+        }
+
+        /**
+         * @param timeoutMillis how long to wait, forever if negative
+         * @return the next line of the bot, or null at the end of its output or after the timeout
+         */
+        String next(long timeoutMillis) {
+            try {
+                String line = timeoutMillis < 0 ? lines.take() : lines.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                if (line == EOF) {
+                    lines.add(EOF);
+                    return null;
+                }
+                return line;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+
+        /**
+         * Runs the reset handshake, dropping anything the bot printed after its last answer.
+         *
+         * @return true if the bot is ready for a new game
+         */
+        boolean reset(long timeoutMillis) {
+            try {
+                in.write(RESET);
+                in.write('\n');
+                in.flush();
+            } catch (IOException e) {
+                return false;
+            }
+            long deadline = System.currentTimeMillis() + timeoutMillis;
+            String line;
+            while ((line = next(Math.max(0, deadline - System.currentTimeMillis()))) != null) {
+                if (line.equals(READY)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean isAlive() {
+            return process.isAlive();
+        }
+
+        @Override
+        public void close() {
+            process.destroy();
+        }
+    }
+
+    private static final File NULL_FILE = new File(File.separatorChar == '\\' ? "NUL" : "/dev/null");
+
+    private final Map<String, Spec> specs = new HashMap<>();
+    private final Map<String, ConcurrentLinkedDeque<ProcessBot>> idle = new ConcurrentHashMap<>();
+    private final int size;
+    private final long resetTimeoutMillis;
+    private final long answerTimeoutMillis;
+    private final AtomicLong acquired = new AtomicLong(), warm = new AtomicLong(), prestarted = new AtomicLong(), cold = new AtomicLong(),
+            failedResets = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param size how many idle processes to keep per command
+     * @param answerTimeoutMillis how long to wait for a line of a bot before giving it an empty line, forever if
+     *            negative, so that a hung bot cannot stall its game
+     */
+    BotPool(Collection<Spec> specs, int size, long resetTimeoutMillis, long answerTimeoutMillis) {
+        for (Spec spec : specs) {
+            this.specs.put(spec.name, spec);
+            idle.put(spec.name, new ConcurrentLinkedDeque<>());
+        }
+        this.size = size;
+        this.resetTimeoutMillis = resetTimeoutMillis;
+        this.answerTimeoutMillis = answerTimeoutMillis;
+    }
+
+    /**
+     * Starts the idle processes of every command, so that the first games do not wait for them.
+     */
+    void prestart() throws IOException {
+        for (String name : specs.keySet()) {
+            refill(name);
+        }
+    }
+
+    /**
+     * @return a process of the bot, from the pool if there is one, ready for the init input of a game
+     */
+    ProcessBot acquire(String name) throws IOException {
+        acquired.incrementAndGet();
+        ProcessBot bot;
+        while ((bot = idle.get(name).pollFirst()) != null && !bot.isAlive()) {
+            bot.close();
+        }
+        if (bot == null) {
+            cold.incrementAndGet();
+            bot = new ProcessBot(specs.get(name), answerTimeoutMillis);
+        } else if (bot.games > 0) {
+            warm.incrementAndGet();
+        } else {
+            prestarted.incrementAndGet();
+        }
+        if (!bot.spec.reset) {
+            // start the process of the next game while this one is played
+            refill(name);
+        }
+        return bot;
+    }
+
+    /**
+     * Gives back a process after a game: it goes back to the pool if the bot is ready for another game, otherwise it is
+     * replaced by a new one.
+     */
+    void release(ProcessBot bot) throws IOException {
+        bot.games++;
+        Deque<ProcessBot> bots = idle.get(bot.spec.name);
+        if (bot.spec.reset && !closed) {
+            if (bot.reset(resetTimeoutMillis)) {
+                synchronized (bots) {
+                    // unless the pool closed during the handshake
+                    if (!closed) {
+                        // the most recently used process first, the others may stay cold in the pool
+                        bots.offerFirst(bot);
+                        while (bots.size() > size) {
+                            ProcessBot extra = bots.pollLast();
+                            if (extra != null) {
+                                extra.close();
+                            }
+                        }
+                        return;
+                    }
+                }
+            } else {
+                failedResets.incrementAndGet();
+            }
+        }
+        bot.close();
+        refill(bot.spec.name);
+    }
+
+    /**
+     * Starts processes until the pool of the command is full, one refill at a time per command: the size and the
+     * closed flag are checked under the same lock as the insert and as {@link #close()}, so the pool never grows past
+     * its size, nor after it is closed.
+     */
+    private void refill(String name) throws IOException {
+        Deque<ProcessBot> bots = idle.get(name);
+        synchronized (bots) {
+            while (!closed && bots.size() < size) {
+                bots.offerLast(new ProcessBot(specs.get(name), answerTimeoutMillis));
+            }
+        }
+    }
+
+    /**
+     * @return the share of games that got a process that already played, warmed up
+     */
+    double warmHitRate() {
+        return acquired.get() == 0 ? 0 : (double) warm.get() / acquired.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d bots acquired: %d warm (%.1f%%), %d prestarted, %d cold, %d failed resets", acquired.get(), warm.get(),
+                100 * warmHitRate(), prestarted.get(), cold.get(), failedResets.get());
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (Deque<ProcessBot> bots : idle.values()) {
+            // waits for a refill or a release in progress, later ones see the flag
+            synchronized (bots) {
+                ProcessBot bot;
+                while ((bot = bots.pollFirst()) != null) {
+                    bot.close();
+                }
+            }
+        }
+    }
+}
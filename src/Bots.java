@@ -0,0 +1,268 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sparring bots that play in process, reading the same input lines as a bot program, so that benchmarks run the whole
+ * protocol without processes or pipes:
+ * <ul>
+ * <li>random: a random legal action</li>
+ * <li>climber: the action that leaves its units highest, scoring first</li>
+ * <li>minimax: the action with the best outcome after the best answer of the other player, searched with the rules
+ * of the referee</li>
+ * </ul>
+ *
+ * They can also run as bot programs, e.g. for {@link Tournament}, and then answer "###Reset" like {@link BotPool}
+ * expects:
+ *
+ * <pre>
+ * java -cp cg-ww.jar Bots minimax [seed=0]
+ * </pre>
+ */
+class Bots {
+    static final String[] NAMES = { "random", "climber", "minimax" };
+
+    static Bot create(String name, long seed) {
+        switch (name) {
+        case "random":
+            return new RandomLegal(seed);
+        case "climber":
+            return new Climber(seed);
+        case "minimax":
+            return new Minimax(seed);
+        default:
+            throw new IllegalArgumentException("Unknown bot " + name + ", expected one of " + String.join(", ", NAMES));
+        }
+    }
+
+    /**
+     * Reads the init lines on the first turn, then hands the legal actions of every turn to {@link #choose}. A bot
+     * without legal action accepts defeat.
+     */
+    abstract static class InputBot implements Bot {
+        final Random random;
+        private boolean first = true;
+        int size, units;
+
+        InputBot(long seed) {
+            random = new Random(seed);
+        }
+
+        @Override
+        public String[] play(String[] input, int outputLines) {
+            int offset = 0;
+            if (first) {
+                size = Integer.parseInt(input[0]);
+                units = Integer.parseInt(input[1]);
+                offset = 2;
+                first = false;
+            }
+            int countLine = offset + size + 2 * units;
+            int count = Integer.parseInt(input[countLine]);
+            if (count == 0) {
+                return new String[] { "ACCEPT-DEFEAT" };
+            }
+            return new String[] { choose(input, offset, countLine + 1, count) };
+        }
+
+        /**
+         * @param rows the index of the first row of the grid in the input, followed by the unit positions
+         * @param actions the index of the first legal action in the input
+         * @param count the number of legal actions, at least one
+         */
+        abstract String choose(String[] input, int rows, int actions, int count);
+    }
+
+    /**
+     * Plays the legal action chosen by a seeded random generator.
+     */
+    static class RandomLegal extends InputBot {
+        RandomLegal(long seed) {
+            super(seed);
+        }
+
+        @Override
+        String choose(String[] input, int rows, int actions, int count) {
+            return input[actions + random.nextInt(count)];
+        }
+    }
+
+    /**
+     * Scores a position for player 0: points first, then the heights its units stand on against those of the units
+     * of player 1 it sees.
+     */
+    static int evaluate(Referee game) {
+        Referee.Grid grid = game.getGrid();
+        int value = 0;
+        for (int idx = 0; idx < 2; ++idx) {
+            Referee.Player player = game.getPlayer(idx);
+            int sign = idx == 0 ? 1 : -1;
+            value += sign * 16 * player.score;
+            for (int i = 0; i < player.units.size(); ++i) {
+                Referee.Point position = player.units.get(i).position;
+                if (position != null) {
+                    value += sign * 4 * grid.get(position);
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Plays the action with the best {@link #evaluate(Referee) value} right after it, the first of equal ones in a
+     * random order.
+     */
+    static class Climber extends InputBot {
+        private final Referee.ActionResult result = new Referee.ActionResult();
+        private int[] legal = new int[0];
+
+        Climber(long seed) {
+            super(seed);
+        }
+
+        @Override
+        String choose(String[] input, int rows, int actions, int count) {
+            Referee game = Referee.observe(input, rows, size, units);
+            if (legal.length < game.getActions().length) {
+                legal = new int[game.getActions().length];
+            }
+            int n = game.legalActions(0, legal);
+            int best = -1, bestValue = Integer.MIN_VALUE, ties = 0;
+            for (int i = 0; i < n; ++i) {
+                Referee.Point from = game.play(0, legal[i], result);
+                int value = evaluate(game);
+                game.undo(0, result, from);
+                if (value > bestValue) {
+                    best = legal[i];
+                    bestValue = value;
+                    ties = 1;
+                } else if (value == bestValue && random.nextInt(++ties) == 0) {
+                    best = legal[i];
+                }
+            }
+            return game.getActions()[best].toPlayerString();
+        }
+    }
+
+    /**
+     * Searches two plies, its action and the answer of the other player, with the rules of the referee on the
+     * position it sees. Units it does not see do not play. Leaving the other player without a legal action wins, being
+     * left without one after the answer is not looked at.
+     */
+    static class Minimax extends InputBot {
+        private static final int WIN = 1 << 20;
+
+        private final Referee.ActionResult mine = new Referee.ActionResult(), theirs = new Referee.ActionResult();
+        private int[] legal = new int[0], answers = new int[0];
+
+        Minimax(long seed) {
+            super(seed);
+        }
+
+        @Override
+        String choose(String[] input, int rows, int actions, int count) {
+            Referee game = Referee.observe(input, rows, size, units);
+            if (legal.length < game.getActions().length) {
+                legal = new int[game.getActions().length];
+                answers = new int[game.getActions().length];
+            }
+            int n = game.legalActions(0, legal);
+            int best = -1, bestValue = Integer.MIN_VALUE, ties = 0;
+            for (int i = 0; i < n; ++i) {
+                Referee.Point from = game.play(0, legal[i], mine);
+                int value = answer(game, bestValue);
+                game.undo(0, mine, from);
+                if (value > bestValue) {
+                    best = legal[i];
+                    bestValue = value;
+                    ties = 1;
+                } else if (value == bestValue && random.nextInt(++ties) == 0) {
+                    best = legal[i];
+                }
+            }
+            return game.getActions()[best].toPlayerString();
+        }
+
+        /**
+         * @param cut stops at an answer worth less than this, the action is not better than one already searched
+         * @return the value of the best answer
+         */
+        private int answer(Referee game, int cut) {
+            int m = game.legalActions(1, answers);
+            if (m == 0) {
+                // unless units it does not see could still play
+                return seesAll(game.getPlayer(1)) ? WIN + evaluate(game) : evaluate(game);
+            }
+            int worst = Integer.MAX_VALUE;
+            for (int j = 0; j < m && worst >= cut; ++j) {
+                Referee.Point from = game.play(1, answers[j], theirs);
+                worst = Math.min(worst, evaluate(game));
+                game.undo(1, theirs, from);
+            }
+            return worst;
+        }
+    }
+
+    private static boolean seesAll(Referee.Player player) {
+        for (int i = 0; i < player.units.size(); ++i) {
+            if (player.units.get(i).position == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Plays a bot on stdin and stdout.
+     */
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: Bots " + String.join("|", NAMES) + " [seed=0]");
+            return;
+        }
+        long seed = 0;
+        for (int i = 1; i < args.length; ++i) {
+            if (args[i].startsWith("seed=")) {
+                seed = Long.parseLong(args[i].substring(5));
+            }
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        List<String> input = new ArrayList<>();
+        String line;
+        // a game is the init lines, then a turn input per line to answer, until the reset
+        while ((line = in.readLine()) != null) {
+            Bot bot = null;
+            input.add(line);
+            input.add(in.readLine());
+            int size = Integer.parseInt(input.get(0).trim());
+            int units = Integer.parseInt(input.get(1).trim());
+            while ((line = in.readLine()) != null && !line.equals(BotPool.RESET)) {
+                input.add(line);
+                for (int i = 1; i < size + 2 * units; ++i) {
+                    input.add(in.readLine());
+                }
+                String count = in.readLine();
+                input.add(count);
+                for (int i = Integer.parseInt(count); i > 0; --i) {
+                    input.add(in.readLine());
+                }
+                if (bot == null) {
+                    // seeded by the game, not by the games the process played before, so that a game plays the same
+                    // whichever process of a pool gets it
+                    bot = create(args[0], 31 * seed + input.hashCode());
+                }
+                System.out.println(bot.play(input.toArray(new String[input.size()]), 1)[0]);
+                System.out.flush();
+                input.clear();
+            }
+            if (line == null) {
+                return;
+            }
+            System.out.println(BotPool.READY);
+            System.out.flush();
+        }
+    }
+}
@@ -0,0 +1,425 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Differential fuzzing of the referee against {@link LegacyReferee}, the frozen referee of the first release.
+ *
+ * <pre>
+ * java -cp cg-ww.jar DiffFuzz [games=100000] [seed=0] [threads=N] [malformed=0.1] [version=3] [mismatches=3]
+ * </pre>
+ *
+ * Both engines play the same random games on the regular maps, with bots that mostly play legal actions and otherwise
+ * send illegal or malformed ones. Both engines must write the same lines to their output stream, the inputs of every
+ * turn with their ###Input and ###Output headers and the "###End" line with the ranking, with every answer in between;
+ * then both must end the game with the same score of each player and the same reason code. The error stream is not
+ * compared: the legacy referee prints stack traces there that the referee no longer prints. A mismatch is shrunk to a
+ * short list of answers that still shows it, and printed with the first lines that differ, or with both ends. Exits
+ * with status 1 if there was one.
+ */
+class DiffFuzz {
+    // a replayed answer: the first legal action of the input
+    private static final String FIRST_LEGAL = "@first";
+    private static final String[] DIRECTIONS = { "N", "NE", "E", "SE", "S", "SW", "W", "NW" };
+
+    public static void main(String... args) throws Exception {
+        Properties p = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                p.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        int games = Integer.parseInt(p.getProperty("games", "100000"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        int threads = Integer.parseInt(p.getProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        double malformed = Double.parseDouble(p.getProperty("malformed", "0.1"));
+        int maxMismatches = Integer.parseInt(p.getProperty("mismatches", "3"));
+        // the rules are static, both engines play one version per run
+        Referee.GAME_VERSION = LegacyReferee.GAME_VERSION = Integer.parseInt(p.getProperty("version", String.valueOf(Referee.GAME_VERSION)));
+
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger mismatches = new AtomicInteger();
+        AtomicLong turns = new AtomicLong();
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                workers.add(executor.submit(() -> {
+                    int game;
+                    while (mismatches.get() < maxMismatches && (game = next.getAndIncrement()) < games) {
+                        Random random = new Random(seed * 1_000_003 + game);
+                        String[] init = { "seed=" + random.nextLong(), "mapIndex=" + (random.nextInt(4) - 1), "symmetric=" + random.nextBoolean() };
+                        Answers answers = new Answers(random.nextLong(), malformed);
+                        Mismatch mismatch = compare(init, answers);
+                        turns.addAndGet(answers.played.size());
+                        if (mismatch != null && mismatches.incrementAndGet() <= maxMismatches) {
+                            report(game, shrink(init, answers.played));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int played = Math.min(next.get(), games);
+        System.out.println(String.format("%d games, %d turns in %.1f s (%.0f games/s, %d threads): %d mismatches", played, turns.get(), seconds,
+                played / seconds, threads, mismatches.get()));
+        if (mismatches.get() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Answers of the bots, random or replayed. The random ones are recorded, so that both engines get the same answers
+     * as long as they send the same inputs, and so that a game can be replayed.
+     */
+    static class Answers {
+        private final Random random;
+        private final double malformed;
+        private final List<String> replay;
+        final List<String> played = new ArrayList<>();
+
+        Answers(long seed, double malformed) {
+            random = new Random(seed);
+            this.malformed = malformed;
+            replay = null;
+        }
+
+        /**
+         * Replays answers, then accepts defeat.
+         */
+        Answers(List<String> replay) {
+            random = null;
+            malformed = 0;
+            this.replay = replay;
+        }
+
+        Answers copy() {
+            return new Answers(new ArrayList<>(played));
+        }
+
+        /**
+         * @param input the input of the turn, the count of legal actions then the actions last
+         */
+        String next(List<String> input) {
+            int count = legalCount(input);
+            String answer;
+            if (replay != null) {
+                answer = played.size() < replay.size() ? replay.get(played.size()) : "ACCEPT-DEFEAT";
+                if (answer.equals(FIRST_LEGAL)) {
+                    answer = count > 0 ? input.get(input.size() - count) : "ACCEPT-DEFEAT";
+                }
+            } else if (count > 0 && random.nextDouble() >= malformed) {
+                answer = decorate(input.get(input.size() - count + random.nextInt(count)));
+            } else {
+                answer = malformed();
+            }
+            played.add(answer);
+            return answer;
+        }
+
+        private static int legalCount(List<String> input) {
+            // the count is the last line that is a number, the actions follow it
+            for (int i = input.size() - 1; i >= 0; --i) {
+                String line = input.get(i);
+                if (!line.isEmpty() && Character.isDigit(line.charAt(0)) && line.indexOf(' ') < 0) {
+                    int count = Integer.parseInt(line);
+                    if (count == input.size() - 1 - i) {
+                        return count;
+                    }
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * A legal action as a bot may write it: other case, more spaces, a message.
+         */
+        private String decorate(String action) {
+            switch (random.nextInt(20)) {
+            case 0:
+                return action.toLowerCase(Locale.ROOT);
+            case 1:
+                return action.replace(" ", "  ");
+            case 2:
+                return action + " " + message();
+            case 3:
+                return action + " ";
+            default:
+                return action;
+            }
+        }
+
+        private String message() {
+            String[] messages = { "gg", "hello world", "a message that is longer than forty-eight characters, to be cut", "été",
+                    "MOVE&BUILD 0 N S" };
+            return messages[random.nextInt(messages.length)];
+        }
+
+        private String direction() {
+            return random.nextInt(10) == 0 ? "X" : DIRECTIONS[random.nextInt(DIRECTIONS.length)];
+        }
+
+        /**
+         * A well formed action that is likely illegal, or a line that is not an action at all.
+         */
+        private String malformed() {
+            switch (random.nextInt(12)) {
+            case 0:
+                return "ACCEPT-DEFEAT";
+            case 1:
+                return "accept-defeat " + message();
+            case 2:
+                return "";
+            case 3:
+                return "MOVE&BUILD " + random.nextInt(12) + " " + direction() + " " + direction();
+            case 4:
+                return "PUSH&BUILD " + random.nextInt(3) + " " + direction() + " " + direction();
+            case 5:
+                return "MOVE&BUILD 0" + random.nextInt(2) + " " + direction() + " " + direction();
+            case 6:
+                return "MOVE&BUILD " + random.nextInt(2) + " " + direction();
+            case 7:
+                return "BUILD " + random.nextInt(2) + " " + direction() + " " + direction();
+            case 8:
+                return "push&build " + random.nextInt(2) + " " + direction().toLowerCase(Locale.ROOT) + " " + direction();
+            case 9:
+                return "MOVE&BUILD\t" + random.nextInt(2) + " " + direction() + " " + direction();
+            case 10:
+                return " MOVE&BUILD " + random.nextInt(2) + " " + direction() + " " + direction();
+            default:
+                return "MOVE&BUILD " + random.nextInt(2) + " " + direction() + " " + direction() + " " + message();
+            }
+        }
+    }
+
+    /**
+     * A game of one engine: what it wrote and what it was answered, line by line.
+     */
+    static class Transcript extends InputStream {
+        final List<String> lines = new ArrayList<>();
+        // the scores and the reason code the game ended with
+        String end;
+        private final Answers answers;
+        private final List<String> input = new ArrayList<>();
+        private byte[] pending = "###Start 2\n".getBytes(StandardCharsets.UTF_8);
+        private int position;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        Transcript(Answers answers) {
+            this.answers = answers;
+        }
+
+        /**
+         * The engine's output: answers are computed as soon as an ###Output header is written, before the engine reads
+         * them.
+         */
+        final PrintStream out = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+                if (b == '\n') {
+                    onLine(new String(line.toByteArray(), StandardCharsets.UTF_8));
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }, true);
+
+        final PrintStream err = new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+        });
+
+        private void onLine(String text) {
+            lines.add(text);
+            if (text.startsWith("###Input")) {
+                input.clear();
+            } else if (text.startsWith("###Output")) {
+                int count = Integer.parseInt(text.substring(text.lastIndexOf(' ') + 1));
+                StringBuilder sb = new StringBuilder();
+                for (int i = 0; i < count; ++i) {
+                    String answer = answers.next(input);
+                    lines.add(answer);
+                    sb.append(answer).append('\n');
+                }
+                pending = sb.toString().getBytes(StandardCharsets.UTF_8);
+                position = 0;
+            } else {
+                input.add(text);
+            }
+        }
+
+        @Override
+        public int read() {
+            return position < pending.length ? pending[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position == pending.length) {
+                return -1;
+            }
+            int n = Math.min(len, pending.length - position);
+            System.arraycopy(pending, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    /**
+     * Sets the init properties of the legacy referee, which reads none: its constructor plays the whole game.
+     */
+    private static final ThreadLocal<String[]> LEGACY_INIT = new ThreadLocal<>();
+
+    private static class Legacy extends LegacyReferee {
+        Legacy(InputStream is, PrintStream out, PrintStream err) throws IOException {
+            super(is, out, err);
+        }
+
+        @Override
+        protected void initReferee(int playerCount, Properties prop) throws InvalidFormatException {
+            for (String line : LEGACY_INIT.get()) {
+                prop.setProperty(line.substring(0, line.indexOf('=')), line.substring(line.indexOf('=') + 1));
+            }
+            super.initReferee(playerCount, prop);
+        }
+
+        /**
+         * @return the reason code the game ended with, which the frozen referee keeps to itself
+         */
+        String getReasonCode() {
+            // a field of the legacy AbstractReferee, the last superclass
+            Class<?> type = getClass();
+            while (type.getSuperclass() != Object.class) {
+                type = type.getSuperclass();
+            }
+            try {
+                java.lang.reflect.Field reasonCode = type.getDeclaredField("reasonCode");
+                reasonCode.setAccessible(true);
+                return (String) reasonCode.get(this);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    static class Mismatch {
+        final String[] init;
+        final List<String> answers;
+        final Transcript legacy, live;
+
+        Mismatch(String[] init, List<String> answers, Transcript legacy, Transcript live) {
+            this.init = init;
+            this.answers = answers;
+            this.legacy = legacy;
+            this.live = live;
+        }
+    }
+
+    /**
+     * Plays a game on both engines, the legacy one first, whose answers the live one replays.
+     *
+     * @return null if both wrote the same
+     */
+    static Mismatch compare(String[] init, Answers answers) throws IOException {
+        Transcript legacy = new Transcript(answers);
+        LEGACY_INIT.set(init);
+        Legacy legacyReferee = new Legacy(legacy, legacy.out, legacy.err);
+        legacy.end = end(legacyReferee.getScore(0), legacyReferee.getScore(1), legacyReferee.getReasonCode());
+        Answers replay = answers.copy();
+        Transcript live = new Transcript(replay);
+        Referee referee = new Referee(live, live.out, live.err, init);
+        live.end = end(referee.getScore(0), referee.getScore(1), referee.getReasonCode());
+        if (legacy.lines.equals(live.lines) && legacy.end.equals(live.end)) {
+            return null;
+        }
+        return new Mismatch(init, answers.played, legacy, live);
+    }
+
+    private static String end(int score0, int score1, String reasonCode) {
+        return "scores " + score0 + " " + score1 + ", reason " + reasonCode;
+    }
+
+    /**
+     * Cuts the game short, then replaces the answers that do not matter by the first legal action, as long as the
+     * engines still disagree.
+     */
+    static Mismatch shrink(String[] init, List<String> answers) throws IOException {
+        Mismatch mismatch = compare(init, new Answers(answers));
+        if (mismatch == null) {
+            throw new IllegalStateException("A mismatch that does not replay: " + Arrays.toString(init));
+        }
+        // the shortest prefix that still mismatches, the bots accept defeat after it
+        int low = 0, high = answers.size();
+        while (low < high) {
+            int mid = (low + high) / 2;
+            Mismatch m = compare(init, new Answers(answers.subList(0, mid)));
+            if (m != null) {
+                high = mid;
+                mismatch = m;
+            } else {
+                low = mid + 1;
+            }
+        }
+        List<String> shrunk = new ArrayList<>(answers.subList(0, high));
+        for (int i = 0; i < shrunk.size(); ++i) {
+            String answer = shrunk.get(i);
+            if (answer.equals(FIRST_LEGAL)) {
+                continue;
+            }
+            shrunk.set(i, FIRST_LEGAL);
+            Mismatch m = compare(init, new Answers(shrunk));
+            if (m != null) {
+                mismatch = m;
+            } else {
+                shrunk.set(i, answer);
+            }
+        }
+        return compare(init, new Answers(shrunk)) != null ? new Mismatch(init, shrunk, mismatch.legacy, mismatch.live) : mismatch;
+    }
+
+    private static synchronized void report(int game, Mismatch m) {
+        System.out.println("MISMATCH in game " + game + ", init " + String.join(" ", m.init));
+        System.out.println("  answers, then ACCEPT-DEFEAT (" + FIRST_LEGAL + " is the first legal action):");
+        for (int i = 0; i < m.answers.size(); ++i) {
+            System.out.println(String.format("  %4d %s", i, m.answers.get(i)));
+        }
+        List<String> legacy = m.legacy.lines, live = m.live.lines;
+        int i = 0;
+        while (i < legacy.size() && i < live.size() && legacy.get(i).equals(live.get(i))) {
+            ++i;
+        }
+        if (i == legacy.size() && i == live.size()) {
+            System.out.println(String.format("  same %d lines, differ at the end: legacy %s, live %s", i, m.legacy.end, m.live.end));
+            return;
+        }
+        int turn = 0;
+        for (int j = 0; j < i; ++j) {
+            if (legacy.get(j).startsWith("###Output")) {
+                turn++;
+            }
+        }
+        System.out.println("  differ at line " + i + ", turn " + turn + ":");
+        for (int j = Math.max(0, i - 3); j < i + 3; ++j) {
+            System.out.println(String.format("  %5d legacy: %-40s live: %s", j, j < legacy.size() ? legacy.get(j) : "<end>",
+                    j < live.size() ? live.get(j) : "<end>"));
+        }
+    }
+}
@@ -0,0 +1,210 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Runs a game of {@link Referee} in the calling thread against {@link Bot}s living in the same process. The referee's
+ * output is parsed line by line as it is written, and the answers of the bots are fed back through its input stream, so
+ * the whole ###Input/###Output protocol is exercised without pipes, threads or processes.
+ */
+class LocalGame {
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    static class Result {
+        String end;
+        // why the referee ended the game when it was not the players, e.g. "adjudicated", or null
+        String reason;
+        int[] scores;
+        int turns;
+        Properties configuration;
+        // per player, the first round then the other rounds; null unless the init has "deadlines=true"
+        Referee.LatencyHistogram[][] latencies;
+
+        /**
+         * @return the index of the winner, or -1 on a draw
+         */
+        int winner() {
+            if (end.equals("###End 0 1")) {
+                return 0;
+            } else if (end.equals("###End 1 0")) {
+                return 1;
+            }
+            return -1;
+        }
+    }
+
+    private final String[] init;
+    private final Bot[] bots;
+    private PrintStream err = DISCARD;
+    private TranscriptWriter.Game transcript;
+    private Referee.Setup setup;
+
+    private byte[] pending = "###Start 2\n".getBytes(StandardCharsets.UTF_8);
+    private int pendingStart, pendingEnd = pending.length;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private final List<String> input = new ArrayList<>();
+    private boolean inBlock;
+    private String end;
+    private int turns;
+
+    /**
+     * @param init init properties of the referee, one "key=value" per line
+     */
+    LocalGame(String[] init, Bot... bots) {
+        this.init = init;
+        this.bots = bots;
+    }
+
+    /**
+     * Where the referee's error stream goes, discarded by default.
+     */
+    LocalGame setErr(PrintStream err) {
+        this.err = err;
+        return this;
+    }
+
+    /**
+     * Where to log every line sent to and received from the referee, none by default. The transcript ends with the
+     * game.
+     */
+    LocalGame setTranscript(TranscriptWriter.Game transcript) {
+        this.transcript = transcript;
+        return this;
+    }
+
+    /**
+     * A setup built ahead of time for the init properties of the game, see {@link SetupPrefetcher}, none by default.
+     * The referee builds its own if it was built for other properties.
+     */
+    LocalGame setSetup(Referee.Setup setup) {
+        this.setup = setup;
+        return this;
+    }
+
+    Result play() throws IOException {
+        if (transcript != null) {
+            transcript.line("###Start 2");
+        }
+        Referee referee;
+        try {
+            Referee.Setup.prepare(setup);
+            referee = new Referee(new Answers(), new PrintStream(new Lines(), false, "UTF-8"), err, init);
+        } finally {
+            Referee.Setup.prepare(null);
+            if (transcript != null) {
+                transcript.end();
+            }
+        }
+        Result result = new Result();
+        result.end = end;
+        result.reason = referee.getReasonCode();
+        result.turns = turns;
+        result.scores = new int[bots.length];
+        for (int i = 0; i < bots.length; ++i) {
+            result.scores[i] = referee.getScore(i);
+        }
+        result.configuration = referee.getConfiguration();
+        if (referee.getLatencies(0, true) != null) {
+            result.latencies = new Referee.LatencyHistogram[bots.length][];
+            for (int i = 0; i < bots.length; ++i) {
+                result.latencies[i] = new Referee.LatencyHistogram[] { referee.getLatencies(i, true), referee.getLatencies(i, false) };
+            }
+        }
+        return result;
+    }
+
+    private void onLine(String text) {
+        if (transcript != null) {
+            transcript.line(text);
+        }
+        if (text.startsWith("###Input ")) {
+            input.clear();
+            inBlock = true;
+        } else if (text.startsWith("###Output ")) {
+            inBlock = false;
+            String[] header = text.split(" ");
+            int player = Integer.parseInt(header[1]);
+            int lineCount = Integer.parseInt(header[2]);
+            turns++;
+            String[] answer = bots[player].play(input.toArray(new String[input.size()]), lineCount);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < lineCount; ++i) {
+                String line = answer != null && i < answer.length && answer[i] != null ? answer[i] : "";
+                sb.append(line).append('\n');
+                if (transcript != null) {
+                    transcript.line(line);
+                }
+            }
+            pending = sb.toString().getBytes(StandardCharsets.UTF_8);
+            pendingStart = 0;
+            pendingEnd = pending.length;
+        } else if (text.startsWith("###End")) {
+            end = text;
+        } else if (inBlock) {
+            input.add(text);
+        }
+    }
+
+    /**
+     * The referee's output, split in lines.
+     */
+    private class Lines extends OutputStream {
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                lineLength = 0;
+                onLine(new String(line, 0, length, StandardCharsets.UTF_8));
+            } else {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, line.length * 2);
+                }
+                line[lineLength++] = (byte) b;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; ++i) {
+                write(b[i]);
+            }
+        }
+    }
+
+    /**
+     * The referee's input: the answer to the last ###Output, or the end of the stream if there is none.
+     */
+    private class Answers extends InputStream {
+        @Override
+        public int read() {
+            if (pendingStart == pendingEnd) {
+                return -1;
+            }
+            return pending[pendingStart++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (pendingStart == pendingEnd) {
+                return -1;
+            }
+            int n = Math.min(len, pendingEnd - pendingStart);
+            System.arraycopy(pending, pendingStart, b, off, n);
+            pendingStart += n;
+            return n;
+        }
+    }
+}
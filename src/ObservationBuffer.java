@@ -0,0 +1,699 @@
+import java.io.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Games served to a trainer in another process through a memory-mapped file, instead of the text of the turn inputs:
+ * every slot of the file holds the observation of the player to play in one game, written by the referee, and the
+ * action the trainer answers with.
+ *
+ * <pre>
+ * java -cp cg-ww.jar ObservationBuffer serve file=obs.buf [slots=64] [games=10000] [seed=0] [threads=1]
+ * java -cp cg-ww.jar ObservationBuffer consume file=obs.buf [seed=0]
+ * java -cp cg-ww.jar ObservationBuffer bench [slots=64] [games=2000]
+ * </pre>
+ *
+ * The file is little endian. Its header is {@link #HEADER} bytes of ints: magic "WWOB", layout version, slots, plane
+ * width, units per player, number of actions, bytes per slot, 1 once the server is done, game version. A slot, at
+ * HEADER + slot * bytes per slot, holds ints: the observation sequence, the action sequence, the action, flags (1 when
+ * the game is over), the player to play, the round, the scores of player 0 and player 1, the number of legal actions,
+ * the grid size and the game number; then from {@link #PLANES} the planes of {@link Referee#writeObservation}, and
+ * the legal action mask in longs, 8-byte aligned, bit i for the action "sorted i" of the referee.
+ * <p>
+ * The server bumps the observation sequence once the observation is written. The trainer answers by writing the
+ * action, the index of a legal action or -1 for ACCEPT-DEFEAT, then setting the action sequence to the observation
+ * sequence. An observation of a game that is over is answered like the others, with any action, and the slot then
+ * moves on to the next game. The Java memory model says nothing about memory shared with another process, so both
+ * sides use the fences of sun.misc.Unsafe, there since Java 8: a store fence between the writes of a slot and the
+ * write of its sequence, and a load fence between the read of a sequence and the reads of what it publishes.
+ * <p>
+ * "consume" is a stand-in trainer that plays random legal actions and checks every observation; "bench" runs both in
+ * this process, and compares with a trainer that parses the text input of the referee into the same planes.
+ */
+class ObservationBuffer implements Closeable {
+    static final int MAGIC = 0x57574F42; // "WWOB"
+    static final int LAYOUT = 1;
+    static final int HEADER = 64;
+
+    // header
+    private static final int H_MAGIC = 0, H_LAYOUT = 4, H_SLOTS = 8, H_WIDTH = 12, H_UNITS = 16, H_ACTIONS = 20, H_SLOT_BYTES = 24,
+            H_DONE = 28, H_VERSION = 32;
+    // slot
+    static final int OBSERVATION_SEQ = 0, ACTION_SEQ = 4, ACTION = 8, FLAGS = 12, PLAYER = 16, ROUND = 20, SCORE_0 = 24, SCORE_1 = 28,
+            LEGAL_COUNT = 32, GRID_SIZE = 36, GAME = 40, PLANES = 48;
+    static final int OVER = 1;
+
+    // Unsafe.loadFence() and Unsafe.storeFence(), bound at run time: javac does not link sun.misc for --release 8
+    private static final MethodHandle LOAD_FENCE, STORE_FENCE;
+
+    static {
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            LOAD_FENCE = MethodHandles.lookup().bind(unsafe, "loadFence", MethodType.methodType(void.class));
+            STORE_FENCE = MethodHandles.lookup().bind(unsafe, "storeFence", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    final int slots, width, units, actions, slotBytes, mask;
+
+    private ObservationBuffer(RandomAccessFile file, MappedByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int magic = buffer.getInt(H_MAGIC);
+        loadFence();
+        if (magic != MAGIC || buffer.getInt(H_LAYOUT) != LAYOUT) {
+            throw new IOException("Not an observation buffer of layout " + LAYOUT);
+        }
+        slots = buffer.getInt(H_SLOTS);
+        width = buffer.getInt(H_WIDTH);
+        units = buffer.getInt(H_UNITS);
+        actions = buffer.getInt(H_ACTIONS);
+        slotBytes = buffer.getInt(H_SLOT_BYTES);
+        mask = maskOffset(width);
+    }
+
+    /**
+     * Reads after it are not done before the reads before it.
+     */
+    private static void loadFence() {
+        try {
+            LOAD_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Writes after it are not done before the reads and writes before it.
+     */
+    private static void storeFence() {
+        try {
+            STORE_FENCE.invokeExact();
+        } catch (Throwable e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int maskOffset(int width) {
+        return (PLANES + 3 * width * width + 7) & ~7;
+    }
+
+    /**
+     * Creates the file for the rules of {@link Referee#GAME_VERSION}, every slot empty.
+     *
+     * @param width the width of the planes, at least the size of the largest map
+     */
+    static ObservationBuffer create(File path, int slots, int width) throws IOException {
+        Referee.applyGameVersion();
+        int units = Referee.UNITS_PER_PLAYER;
+        int actions = Referee.Action.all(units, Referee.CAN_PUSH).length;
+        // whole cache lines, so that two slots never share one
+        int slotBytes = (maskOffset(width) + 8 * ((actions + 63) / 64) + 63) & ~63;
+        long size = HEADER + (long) slots * slotBytes;
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        file.setLength(0);
+        file.setLength(size);
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(H_LAYOUT, LAYOUT);
+        buffer.putInt(H_SLOTS, slots);
+        buffer.putInt(H_WIDTH, width);
+        buffer.putInt(H_UNITS, units);
+        buffer.putInt(H_ACTIONS, actions);
+        buffer.putInt(H_SLOT_BYTES, slotBytes);
+        buffer.putInt(H_VERSION, Referee.GAME_VERSION);
+        storeFence();
+        // last, a reader that sees the magic sees the rest of the header
+        buffer.putInt(H_MAGIC, MAGIC);
+        return new ObservationBuffer(file, buffer);
+    }
+
+    static ObservationBuffer open(File path) throws IOException {
+        if (path.length() < HEADER) {
+            throw new FileNotFoundException("No observation buffer in " + path);
+        }
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+        try {
+            return new ObservationBuffer(file, file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, file.length()));
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    int slot(int slot) {
+        return HEADER + slot * slotBytes;
+    }
+
+    /**
+     * @return whether the server is done, its last observations are visible once this returns
+     */
+    boolean isDone() {
+        boolean done = buffer.getInt(H_DONE) != 0;
+        loadFence();
+        return done;
+    }
+
+    /**
+     * @return the observation sequence of a slot, the observation written before it is visible once this returns
+     */
+    int observationSequence(int slot) {
+        int sequence = buffer.getInt(slot(slot) + OBSERVATION_SEQ);
+        loadFence();
+        return sequence;
+    }
+
+    /**
+     * @return the action sequence of a slot, the action written before it is visible once this returns
+     */
+    int actionSequence(int slot) {
+        int sequence = buffer.getInt(slot(slot) + ACTION_SEQ);
+        loadFence();
+        return sequence;
+    }
+
+    int getInt(int slot, int field) {
+        return buffer.getInt(slot(slot) + field);
+    }
+
+    long getMask(int slot, int word) {
+        return buffer.getLong(slot(slot) + mask + 8 * word);
+    }
+
+    byte getPlane(int slot, int plane, int x, int y) {
+        return buffer.get(slot(slot) + PLANES + plane * width * width + y * width + x);
+    }
+
+    /**
+     * Writes the observation of the player to play, or the final scores, and publishes it.
+     */
+    void publish(int slot, Referee referee, int game, boolean over) {
+        int at = slot(slot);
+        buffer.putInt(at + FLAGS, over ? OVER : 0);
+        buffer.putInt(at + GAME, game);
+        buffer.putInt(at + ROUND, referee.getRound());
+        buffer.putInt(at + SCORE_0, referee.getScore(0));
+        buffer.putInt(at + SCORE_1, referee.getScore(1));
+        buffer.putInt(at + GRID_SIZE, referee.getGrid().size);
+        if (over) {
+            buffer.putInt(at + PLAYER, -1);
+            buffer.putInt(at + LEGAL_COUNT, 0);
+        } else {
+            int player = referee.getNextPlayer();
+            buffer.putInt(at + PLAYER, player);
+            buffer.putInt(at + LEGAL_COUNT, referee.writeObservation(player, buffer, at + PLANES, width, at + mask));
+        }
+        storeFence();
+        buffer.putInt(at + OBSERVATION_SEQ, buffer.getInt(at + OBSERVATION_SEQ) + 1);
+    }
+
+    /**
+     * Answers the observation with the given sequence.
+     */
+    void answer(int slot, int sequence, int action) {
+        buffer.putInt(slot(slot) + ACTION, action);
+        storeFence();
+        buffer.putInt(slot(slot) + ACTION_SEQ, sequence);
+    }
+
+    void setDone() {
+        storeFence();
+        buffer.putInt(H_DONE, 1);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Spins a little, then yields, then sleeps, while the other side has nothing new.
+     */
+    static void idle(int rounds) {
+        if (rounds < 100) {
+            return;
+        } else if (rounds < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(50_000);
+        }
+    }
+
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    /**
+     * Plays the games of its slots on headless referees, with the actions read from the slots.
+     */
+    static class Server implements Runnable {
+        private final ObservationBuffer buffer;
+        private final int first, step;
+        private final long seed;
+        private final int games;
+        private final AtomicInteger next;
+        private final AtomicLong turns;
+
+        /**
+         * Serves the slots first, first + step, ...
+         *
+         * @param next the next game to play, shared by the servers of the buffer
+         */
+        Server(ObservationBuffer buffer, int first, int step, long seed, int games, AtomicInteger next, AtomicLong turns) {
+            this.buffer = buffer;
+            this.first = first;
+            this.step = step;
+            this.seed = seed;
+            this.games = games;
+            this.next = next;
+            this.turns = turns;
+        }
+
+        @Override
+        public void run() {
+            int count = (buffer.slots - first + step - 1) / step;
+            Referee[] referees = new Referee[count];
+            int[] gameIds = new int[count];
+            boolean[] over = new boolean[count];
+            String[] outputs = new String[1];
+            Referee.Action[] actions = null;
+            int open = 0;
+            for (int i = 0; i < count; ++i) {
+                if (start(i, referees, gameIds)) {
+                    actions = referees[i].getActions();
+                    over[i] = advance(i, referees[i], gameIds[i]);
+                    open++;
+                }
+            }
+            int idle = 0;
+            while (open > 0) {
+                boolean answered = false;
+                for (int i = 0; i < count; ++i) {
+                    int slot = first + i * step;
+                    if (referees[i] == null || buffer.actionSequence(slot) != buffer.getInt(slot, OBSERVATION_SEQ)) {
+                        continue;
+                    }
+                    answered = true;
+                    if (over[i]) {
+                        if (start(i, referees, gameIds)) {
+                            over[i] = advance(i, referees[i], gameIds[i]);
+                        } else {
+                            referees[i] = null;
+                            open--;
+                        }
+                        continue;
+                    }
+                    int action = buffer.getInt(slot, ACTION);
+                    outputs[0] = action >= 0 && action < actions.length ? actions[action].toPlayerString() : "ACCEPT-DEFEAT";
+                    referees[i].playTurn(outputs);
+                    turns.incrementAndGet();
+                    over[i] = advance(i, referees[i], gameIds[i]);
+                }
+                idle = answered ? 0 : idle + 1;
+                idle(idle);
+            }
+        }
+
+        /**
+         * @return false if there are no more games
+         */
+        private boolean start(int i, Referee[] referees, int[] gameIds) {
+            int game = next.getAndIncrement();
+            if (game >= games) {
+                return false;
+            }
+            Referee referee = new Referee(DISCARD, DISCARD, Tournament.init(seed, game, false));
+            referee.initGame();
+            referee.beginGame();
+            referees[i] = referee;
+            gameIds[i] = game;
+            return true;
+        }
+
+        /**
+         * Moves on to the next turn and publishes it.
+         *
+         * @return whether the game is over
+         */
+        private boolean advance(int i, Referee referee, int game) {
+            boolean over = !referee.nextTurn();
+            buffer.publish(first + i * step, referee, game, over);
+            return over;
+        }
+    }
+
+    /**
+     * A stand-in trainer: answers every observation with a random legal action, and checks that the observation is
+     * consistent.
+     */
+    static class Consumer {
+        private final ObservationBuffer buffer;
+        private final Random random;
+        long turns, games;
+        final int[] wins = new int[3];
+        String error;
+
+        Consumer(ObservationBuffer buffer, long seed) {
+            this.buffer = buffer;
+            this.random = new Random(seed);
+        }
+
+        /**
+         * Runs until the server is done and every slot is answered.
+         *
+         * @return false on an inconsistent observation, see {@link #error}
+         */
+        boolean run() {
+            int[] seen = new int[buffer.slots];
+            int words = (buffer.actions + 63) / 64;
+            int idle = 0;
+            while (true) {
+                boolean done = buffer.isDone();
+                boolean answered = false;
+                for (int slot = 0; slot < buffer.slots; ++slot) {
+                    int sequence = buffer.observationSequence(slot);
+                    if (sequence == seen[slot]) {
+                        continue;
+                    }
+                    seen[slot] = sequence;
+                    answered = true;
+                    if ((buffer.getInt(slot, FLAGS) & OVER) != 0) {
+                        int a = buffer.getInt(slot, SCORE_0), b = buffer.getInt(slot, SCORE_1);
+                        wins[a > b ? 0 : a < b ? 1 : 2]++;
+                        games++;
+                        buffer.answer(slot, sequence, -1);
+                        continue;
+                    }
+                    error = check(slot, words);
+                    if (error != null) {
+                        error = "slot " + slot + ", game " + buffer.getInt(slot, GAME) + ", round " + buffer.getInt(slot, ROUND) + ": " + error;
+                        return false;
+                    }
+                    buffer.answer(slot, sequence, choose(slot));
+                    turns++;
+                }
+                if (done && !answered) {
+                    return true;
+                }
+                idle = answered ? 0 : idle + 1;
+                idle(idle);
+            }
+        }
+
+        /**
+         * @return what is wrong with the observation, or null
+         */
+        private String check(int slot, int words) {
+            int bits = 0;
+            for (int w = 0; w < words; ++w) {
+                bits += Long.bitCount(buffer.getMask(slot, w));
+            }
+            if (bits != buffer.getInt(slot, LEGAL_COUNT)) {
+                return bits + " bits in the mask for " + buffer.getInt(slot, LEGAL_COUNT) + " legal actions";
+            }
+            int size = buffer.getInt(slot, GRID_SIZE);
+            int own = 0, other = 0;
+            for (int y = 0; y < buffer.width; ++y) {
+                for (int x = 0; x < buffer.width; ++x) {
+                    int level = buffer.getPlane(slot, 0, x, y);
+                    if ((x >= size || y >= size) && level != -1 || level < -1 || level > Referee.FINAL_HEIGHT) {
+                        return "height " + level + " at " + x + " " + y;
+                    }
+                    for (int plane = 1; plane <= 2; ++plane) {
+                        int unit = buffer.getPlane(slot, plane, x, y);
+                        if (unit != 0 && (level == -1 || unit > buffer.units)) {
+                            return "unit " + unit + " at " + x + " " + y + " of height " + level;
+                        }
+                        if (unit != 0) {
+                            if (plane == 1) {
+                                own++;
+                            } else {
+                                other++;
+                            }
+                        }
+                    }
+                }
+            }
+            if (own != buffer.units || other > buffer.units) {
+                return own + " own units and " + other + " other units";
+            }
+            return null;
+        }
+
+        /**
+         * @return a random legal action of the observation, -1 if there is none
+         */
+        int choose(int slot) {
+            int count = buffer.getInt(slot, LEGAL_COUNT);
+            return count == 0 ? -1 : nth(slot, random.nextInt(count));
+        }
+
+        private int nth(int slot, int n) {
+            for (int w = 0;; ++w) {
+                long word = buffer.getMask(slot, w);
+                int bits = Long.bitCount(word);
+                if (n < bits) {
+                    for (; n > 0; --n) {
+                        word &= word - 1;
+                    }
+                    return w * 64 + Long.numberOfTrailingZeros(word);
+                }
+                n -= bits;
+            }
+        }
+    }
+
+    public static void main(String... args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Properties p = new Properties();
+        for (int i = 1; i < args.length; ++i) {
+            int eq = args[i].indexOf('=');
+            if (eq > 0) {
+                p.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        switch (args[0]) {
+        case "serve":
+            if (p.getProperty("file") == null) {
+                usage();
+                return;
+            }
+            serve(p);
+            break;
+        case "consume":
+            if (p.getProperty("file") == null) {
+                usage();
+                return;
+            }
+            if (!consume(p)) {
+                System.exit(1);
+            }
+            break;
+        case "bench":
+            if (!bench(p)) {
+                System.exit(1);
+            }
+            break;
+        default:
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: ObservationBuffer serve file=<file> [slots=64] [games=10000] [seed=0] [threads=1]");
+        System.err.println("       ObservationBuffer consume file=<file> [seed=0]");
+        System.err.println("       ObservationBuffer bench [slots=64] [games=2000]");
+    }
+
+    /**
+     * Serves the games on threads, each with its share of the slots.
+     *
+     * @return the number of turns played
+     */
+    private static long serve(ObservationBuffer buffer, int games, long seed, int threads) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong turns = new AtomicLong();
+        List<Thread> servers = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            Thread server = new Thread(new Server(buffer, t, threads, seed, games, next, turns), "observation-server-" + t);
+            server.start();
+            servers.add(server);
+        }
+        for (Thread server : servers) {
+            server.join();
+        }
+        buffer.setDone();
+        return turns.get();
+    }
+
+    private static void serve(Properties p) throws Exception {
+        int games = Integer.parseInt(p.getProperty("games", "10000"));
+        int threads = Integer.parseInt(p.getProperty("threads", "1"));
+        long start = System.nanoTime();
+        try (ObservationBuffer buffer = create(new File(p.getProperty("file")), Integer.parseInt(p.getProperty("slots", "64")), 7)) {
+            long turns = serve(buffer, games, Long.parseLong(p.getProperty("seed", "0")), Math.min(threads, buffer.slots));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("%d games, %d turns in %.1f s, %.0f turns/s", games, turns, seconds, turns / seconds));
+        }
+    }
+
+    private static boolean consume(Properties p) throws Exception {
+        File path = new File(p.getProperty("file"));
+        // the server may not have created the file yet, or not written its header
+        ObservationBuffer opened = null;
+        for (long waited = 0; opened == null; waited += 10) {
+            try {
+                opened = open(path);
+            } catch (IOException e) {
+                if (waited > 10_000) {
+                    throw e;
+                }
+                Thread.sleep(10);
+            }
+        }
+        try (ObservationBuffer buffer = opened) {
+            return report(new Consumer(buffer, Long.parseLong(p.getProperty("seed", "0"))), System.nanoTime());
+        }
+    }
+
+    private static boolean report(Consumer consumer, long start) {
+        boolean ok = consumer.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (!ok) {
+            System.out.println(consumer.error);
+        }
+        System.out.println(String.format("%d games (%d/%d/%d wins/losses/draws of player 0), %d turns in %.1f s, %.0f turns/s: %s", consumer.games,
+                consumer.wins[0], consumer.wins[1], consumer.wins[2], consumer.turns, seconds, consumer.turns / seconds, ok ? "consistent" : "INCONSISTENT"));
+        return ok;
+    }
+
+    /**
+     * The server and the stand-in trainer in this process, on a temporary file; then the same games on one thread, with
+     * the observation written and read in turn, against the text input of the referee parsed into planes and a mask.
+     * The one thread runs show what the observations cost without the handoff between the server and the trainer.
+     */
+    private static boolean bench(Properties p) throws Exception {
+        int games = Integer.parseInt(p.getProperty("games", "2000"));
+        File path = File.createTempFile("observations", ".buf");
+        path.deleteOnExit();
+        boolean ok;
+        try (ObservationBuffer buffer = create(path, Integer.parseInt(p.getProperty("slots", "64")), 7)) {
+            Thread server = new Thread(() -> {
+                try {
+                    serve(buffer, games, 0, 1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "observation-server");
+            long start = System.nanoTime();
+            server.start();
+            System.out.print("mapped, 2 threads: ");
+            ok = report(new Consumer(buffer, 0), start);
+            server.join();
+
+            Consumer consumer = new Consumer(buffer, 0);
+            String[] outputs = new String[1];
+            long turns = 0;
+            start = System.nanoTime();
+            for (int game = 0; game < games; ++game) {
+                Referee referee = new Referee(DISCARD, DISCARD, Tournament.init(0, game, false));
+                referee.initGame();
+                referee.beginGame();
+                while (referee.nextTurn()) {
+                    buffer.publish(0, referee, game, false);
+                    int action = consumer.choose(0);
+                    outputs[0] = action < 0 ? "ACCEPT-DEFEAT" : referee.getActions()[action].toPlayerString();
+                    referee.playTurn(outputs);
+                    turns++;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("mapped, 1 thread:  %d games, %d turns in %.1f s, %.0f turns/s", games, turns, seconds, turns / seconds));
+        }
+
+        // what a trainer reading the text does: parse it into the same planes and mask
+        Referee.applyGameVersion();
+        Referee.Action[] actions = Referee.Action.all(Referee.UNITS_PER_PLAYER, Referee.CAN_PUSH);
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < actions.length; ++i) {
+            indexes.put(actions[i].toPlayerString(), i);
+        }
+        int width = 7;
+        byte[] planes = new byte[3 * width * width];
+        long[] mask = new long[(actions.length + 63) / 64];
+        Random random = new Random(0);
+        String[] outputs = new String[1];
+        long turns = 0;
+        long start = System.nanoTime();
+        for (int game = 0; game < games; ++game) {
+            Referee referee = new Referee(DISCARD, DISCARD, Tournament.init(0, game, false));
+            referee.initGame();
+            referee.beginGame();
+            int size = 0, units = 0;
+            while (referee.nextTurn()) {
+                List<String> input = referee.getNextInput();
+                int line = 0;
+                if (referee.getRound() == 0) {
+                    size = Integer.parseInt(input.get(line++));
+                    units = Integer.parseInt(input.get(line++));
+                }
+                Arrays.fill(planes, (byte) 0);
+                for (int y = 0; y < width; ++y) {
+                    String row = y < size ? input.get(line++) : "";
+                    for (int x = 0; x < width; ++x) {
+                        char c = x < row.length() ? row.charAt(x) : '.';
+                        planes[y * width + x] = (byte) (c == '.' ? -1 : c - '0');
+                    }
+                }
+                for (int plane = 1; plane <= 2; ++plane) {
+                    for (int u = 0; u < units; ++u) {
+                        String[] position = input.get(line++).split(" ");
+                        int x = Integer.parseInt(position[0]), y = Integer.parseInt(position[1]);
+                        if (x >= 0) {
+                            planes[plane * width * width + y * width + x] = (byte) (u + 1);
+                        }
+                    }
+                }
+                int count = Integer.parseInt(input.get(line++));
+                Arrays.fill(mask, 0);
+                for (int i = 0; i < count; ++i) {
+                    int action = indexes.get(input.get(line++));
+                    mask[action >>> 6] |= 1L << action;
+                }
+                outputs[0] = count == 0 ? "ACCEPT-DEFEAT" : input.get(line - count + random.nextInt(count));
+                referee.playTurn(outputs);
+                turns++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("text, 1 thread:    %d games, %d turns in %.1f s, %.0f turns/s (input parsed to planes)", games, turns,
+                seconds, turns / seconds));
+        return ok;
+    }
+}
@@ -1,25 +1,27 @@
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
-import java.util.function.BiConsumer;
-import java.util.function.BinaryOperator;
-import java.util.function.Function;
-import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collector;
-
-import static java.util.stream.Stream.of;
-import static java.util.stream.Collectors.joining;
 
 class Referee extends MultiReferee {
     public static int GAME_VERSION = 3;
 
-    static final Pattern PLAYER_PATTERN = Pattern.compile(
-            "^(?<action>MOVE\\&BUILD|PUSH\\&BUILD)\\s+(?<index>\\d)\\s+(?<move>N|S|W|E|NW|NE|SW|SE)\\s+(?<place>N|S|W|E|NW|NE|SW|SE)(?:\\s+)?(?:\\s+(?<message>.+))?",
-            Pattern.CASE_INSENSITIVE);
-    static final Pattern ACCEPT_DEFEAT_PATTERN = Pattern.compile(
-            "^ACCEPT-DEFEAT(?:\\s+)?(?:\\s+(?<message>.+))?",
-            Pattern.CASE_INSENSITIVE);
+    /**
+     * Compiled when the first player output is read, not while the referee starts up.
+     */
+    static class Patterns {
+        static final Pattern PLAYER_PATTERN = Pattern.compile(
+                "^(?<action>MOVE\\&BUILD|PUSH\\&BUILD)\\s+(?<index>\\d)\\s+(?<move>N|S|W|E|NW|NE|SW|SE)\\s+(?<place>N|S|W|E|NW|NE|SW|SE)(?:\\s+)?(?:\\s+(?<message>.+))?",
+                Pattern.CASE_INSENSITIVE);
+        // the stress variant has more than 10 units per player
+        static final Pattern STRESS_PLAYER_PATTERN = Pattern.compile(
+                "^(?<action>MOVE\\&BUILD|PUSH\\&BUILD)\\s+(?<index>\\d{1,2})\\s+(?<move>N|S|W|E|NW|NE|SW|SE)\\s+(?<place>N|S|W|E|NW|NE|SW|SE)(?:\\s+)?(?:\\s+(?<message>.+))?",
+                Pattern.CASE_INSENSITIVE);
+        static final Pattern ACCEPT_DEFEAT_PATTERN = Pattern.compile(
+                "^ACCEPT-DEFEAT(?:\\s+)?(?:\\s+(?<message>.+))?",
+                Pattern.CASE_INSENSITIVE);
+    }
 
     public static final int GOT_PUSHED = 2;
     public static final int DID_PUSH = 1;
@@ -27,17 +29,28 @@ class Referee extends MultiReferee {
     public static final int FINAL_HEIGHT = 4;
     public static final int VIEW_DISTANCE = 1;
     public static final int GENERATED_MAP_SIZE = 6;
+    public static final int MAX_BOARD_SIZE = 64;
+    public static final int MAX_UNITS_PER_PLAYER = 32;
     public static boolean WIN_ON_MAX_HEIGHT = true;
     public static boolean FOG_OF_WAR = false;
     public static boolean CAN_PUSH = false;
     public static int UNITS_PER_PLAYER = 1;
 
+    // position of the units a player cannot see
+    static final String HIDDEN = "-1 -1";
+    private static volatile String[] numbers = new String[0];
+    // the games playing with a "live" name, see watch()
+    private static final Map<String, Referee> LIVE = new java.util.concurrent.ConcurrentHashMap<>();
+
     public static void main(String... args) throws IOException {
-        new Referee(System.in, System.out, System.err);
+        new Referee(System.in, System.out, System.err, args);
     }
 
     static class Point {
+        private static final String[] COORDINATES = new String[(MAX_BOARD_SIZE + 2) * (MAX_BOARD_SIZE + 2)];
+
         final int x, y;
+        private String text;
 
         public Point(int x, int y) {
             this.x = x;
@@ -70,6 +83,32 @@ class Referee extends MultiReferee {
         int distance(Point other) {
             return Math.max(Math.abs(x - other.x), Math.abs(y - other.y));
         }
+
+        /**
+         * @return "x y", as sent to the players
+         */
+        String toPlayerString() {
+            if (text == null) {
+                text = coordinates(x, y);
+            }
+            return text;
+        }
+
+        /**
+         * Coordinates on and around the largest board are only built once, for all games.
+         */
+        private static String coordinates(int x, int y) {
+            if (x < -1 || y < -1 || x > MAX_BOARD_SIZE || y > MAX_BOARD_SIZE) {
+                return x + " " + y;
+            }
+            int i = (y + 1) * (MAX_BOARD_SIZE + 2) + x + 1;
+            // racing threads can only build equal strings
+            String text = COORDINATES[i];
+            if (text == null) {
+                text = COORDINATES[i] = x + " " + y;
+            }
+            return text;
+        }
     }
 
     static class Unit {
@@ -78,6 +117,8 @@ class Referee extends MultiReferee {
         Point position;
         boolean gotPushed;
         ActionResult did;
+        // reused for the action of every turn, did points to it once the unit acted
+        final ActionResult result = new ActionResult();
 
         public Unit(Player player, int index) {
             this.player = player;
@@ -108,9 +149,35 @@ class Referee extends MultiReferee {
         public boolean scorePoint;
         public String type;
         public Unit unit;
+        // set when the action is not legal, with the reason the player loses
+        public TurnOutcome failure;
+
+        // failure of actions that are only checked, not played
+        static final TurnOutcome ILLEGAL = TurnOutcome.lost("Illegal");
+
+        void clear() {
+            moveTarget = null;
+            placeTarget = null;
+            placeValid = false;
+            moveValid = false;
+            scorePoint = false;
+            type = null;
+            unit = null;
+            failure = null;
+        }
 
-        public ActionResult(String type) {
-            this.type = type;
+        /**
+         * Marks the action as not legal. The reason is only built when it is explained to the player, so checking
+         * actions does not allocate.
+         */
+        ActionResult fail(boolean explain, String reasonCode, Object value) {
+            failure = explain ? TurnOutcome.lost(reasonCode, value) : ILLEGAL;
+            return this;
+        }
+
+        ActionResult fail(boolean explain, String reasonCode, Object value1, Object value2) {
+            failure = explain ? TurnOutcome.lost(reasonCode, value1, value2) : ILLEGAL;
+            return this;
         }
 
     }
@@ -119,25 +186,118 @@ class Referee extends MultiReferee {
         public static String MOVE = "MOVE&BUILD";
         public static String PUSH = "PUSH&BUILD";
 
-        int index;
-        Direction move;
-        Direction place;
-        String command;
+        private static final Action[][][] TABLES = new Action[2][MAX_UNITS_PER_PLAYER + 1][];
+        private static final int[][][] CODES = new int[2][MAX_UNITS_PER_PLAYER + 1][];
+
+        final int index;
+        final Direction move;
+        final Direction place;
+        final String command;
+        private final String text;
 
         public Action(String command, int index, Direction move, Direction place) {
             this.index = index;
             this.move = move;
             this.place = place;
             this.command = command;
+            this.text = command + " " + index + " " + move + " " + place;
         }
 
         public String toPlayerString() {
-            return command + " " + index + " " + move + " " + place;
+            return text;
+        }
+
+        /**
+         * @return every action of a player with the given number of units, sorted like the legal actions sent to the
+         *         players. The table is shared by all games, do not modify it.
+         */
+        static synchronized Action[] all(int units, boolean canPush) {
+            Action[] table = TABLES[canPush ? 1 : 0][units];
+            if (table == null) {
+                List<Action> actions = new ArrayList<>();
+                for (int index = 0; index < units; ++index) {
+                    for (Direction dir1 : Direction.ALL) {
+                        for (Direction dir2 : Direction.ALL) {
+                            actions.add(new Action(MOVE, index, dir1, dir2));
+                            if (canPush) {
+                                actions.add(new Action(PUSH, index, dir1, dir2));
+                            }
+                        }
+                    }
+                }
+                // not a lambda, which would bootstrap the lambda machinery at startup
+                actions.sort(new Comparator<Action>() {
+                    @Override
+                    public int compare(Action a, Action b) {
+                        return a.toPlayerString().compareTo(b.toPlayerString());
+                    }
+                });
+                table = actions.toArray(new Action[actions.size()]);
+                TABLES[canPush ? 1 : 0][units] = table;
+            }
+            return table;
+        }
+
+        /**
+         * @return the code of an action, its index in the space of command x unit x move x build
+         */
+        static int code(boolean push, int index, Direction move, Direction place) {
+            return ((index * 2 + (push ? 1 : 0)) * 8 + move.ordinal()) * 8 + place.ordinal();
+        }
+
+        /**
+         * @return the index in {@link #all(int, boolean)} of every action by its {@link #code code}, -1 for the pushes of
+         *         a table without pushes. Shared by all games, do not modify it.
+         */
+        static synchronized int[] codes(int units, boolean canPush) {
+            int[] codes = CODES[canPush ? 1 : 0][units];
+            if (codes == null) {
+                Action[] table = all(units, canPush);
+                codes = new int[units * 2 * 64];
+                Arrays.fill(codes, -1);
+                for (int i = 0; i < table.length; ++i) {
+                    codes[code(table[i].command.equals(PUSH), table[i].index, table[i].move, table[i].place)] = i;
+                }
+                CODES[canPush ? 1 : 0][units] = codes;
+            }
+            return codes;
+        }
+
+        /**
+         * @return the index of the action written exactly as text in a table of {@link #all(int, boolean)}, or -1
+         */
+        static int find(Action[] table, String text) {
+            int low = 0, high = table.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int c = table[mid].text.compareTo(text);
+                if (c < 0) {
+                    low = mid + 1;
+                } else if (c > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
         }
     }
 
     static class Grid {
+        private static final int NO_CELL = -1;
+
+        // only used while the map is being built, see index()
         private Map<Point, Integer> map;
+        // heights by cell id once indexed, NO_CELL for holes
+        private int[] heights;
+        private int[][] viewMasks;
+        private int[] mirrors;
+        private int cellCount;
+        // shared points for the cells and their direct neighbours outside the board
+        private Point[] points;
+        // player input rows, rebuilt after a build on the row
+        private String[] rows;
+        private char[] rowBuffer;
         int size;
 
         public Grid() {
@@ -145,12 +305,22 @@ class Referee extends MultiReferee {
         }
 
         public Integer get(int x, int y) {
-            return get(new Point(x, y));
+            if (heights == null) {
+                return map.get(new Point(x, y));
+            }
+            if (x < 0 || y < 0 || x >= size || y >= size) {
+                return null;
+            }
+            int level = heights[y * size + x];
+            return level == NO_CELL ? null : level;
         }
 
         public Integer get(Point p) {
-            Integer level = map.get(p);
-            return level;
+            return get(p.x, p.y);
+        }
+
+        public boolean contains(Point p) {
+            return p.x >= 0 && p.y >= 0 && p.x < size && p.y < size && heights[id(p)] != NO_CELL;
         }
 
         public void create(Point point) {
@@ -162,7 +332,137 @@ class Referee extends MultiReferee {
         }
 
         public void place(Point placeAt) {
-            map.put(placeAt, map.get(placeAt) + 1);
+            heights[id(placeAt)]++;
+            rows[placeAt.y] = null;
+        }
+
+        /**
+         * Takes back a {@link #place(Point)}, for bots that search.
+         */
+        void unplace(Point placeAt) {
+            heights[id(placeAt)]--;
+            rows[placeAt.y] = null;
+        }
+
+        public int id(Point p) {
+            return p.y * size + p.x;
+        }
+
+        /**
+         * Switches to array storage once the map is complete, as cell ids depend on the final size, and precomputes the
+         * view masks and mirrors.
+         */
+        public void index() {
+            heights = new int[size * size];
+            Arrays.fill(heights, NO_CELL);
+            for (Map.Entry<Point, Integer> cell : map.entrySet()) {
+                heights[id(cell.getKey())] = cell.getValue();
+            }
+            cellCount = map.size();
+            map = null;
+            points = new Point[(size + 2) * (size + 2)];
+            for (int i = 0; i < points.length; ++i) {
+                points[i] = new Point(i % (size + 2) - 1, i / (size + 2) - 1);
+            }
+            rows = new String[size];
+            rowBuffer = new char[size];
+            computeViewMasks();
+            computeMirrors();
+        }
+
+        /**
+         * Precomputes for every cell the ids of all cells within {@link Referee#VIEW_DISTANCE}.
+         */
+        private void computeViewMasks() {
+            viewMasks = new int[size * size][];
+            int[] mask = new int[(2 * VIEW_DISTANCE + 1) * (2 * VIEW_DISTANCE + 1)];
+            for (int id = 0; id < heights.length; ++id) {
+                if (heights[id] == NO_CELL) {
+                    continue;
+                }
+                int count = 0;
+                for (int y = id / size - VIEW_DISTANCE; y <= id / size + VIEW_DISTANCE; ++y) {
+                    for (int x = id % size - VIEW_DISTANCE; x <= id % size + VIEW_DISTANCE; ++x) {
+                        if (x >= 0 && y >= 0 && x < size && y < size) {
+                            mask[count++] = y * size + x;
+                        }
+                    }
+                }
+                viewMasks[id] = Arrays.copyOf(mask, count);
+            }
+        }
+
+        public int[] viewMask(Point p) {
+            return viewMasks[id(p)];
+        }
+
+        public Point point(int id) {
+            return point(id % size, id / size);
+        }
+
+        /**
+         * @return the shared point for cells of the board and their direct neighbours, a new one further away
+         */
+        public Point point(int x, int y) {
+            if (x < -1 || y < -1 || x > size || y > size) {
+                return new Point(x, y);
+            }
+            return points[(y + 1) * (size + 2) + x + 1];
+        }
+
+        /**
+         * @return a row as sent to the players: the height of each cell, '.' for holes
+         */
+        public String row(int y) {
+            String row = rows[y];
+            if (row == null) {
+                for (int x = 0; x < size; ++x) {
+                    int level = heights[y * size + x];
+                    rowBuffer[x] = level == NO_CELL ? '.' : (char) ('0' + level);
+                }
+                row = rows[y] = new String(rowBuffer, 0, size);
+            }
+            return row;
+        }
+
+        public int cellCount() {
+            return cellCount;
+        }
+
+        /**
+         * Precomputes the mirror of every cell on the vertical axis, see {@link #mirror(int)}.
+         */
+        private void computeMirrors() {
+            mirrors = new int[size * size];
+            for (int y = 0; y < size; ++y) {
+                for (int x = 0; x < size; ++x) {
+                    mirrors[y * size + x] = get(size - 1 - x, y) != null ? y * size + size - 1 - x : -1;
+                }
+            }
+        }
+
+        /**
+         * @return the id of the cell mirrored on the vertical axis, or -1 if it is not part of the map
+         */
+        public int mirror(int id) {
+            return mirrors[id];
+        }
+
+        void writeHeights(DataOutput out) throws IOException {
+            for (int level : heights) {
+                out.writeByte(level);
+            }
+        }
+
+        void readHeights(DataInput in) throws IOException {
+            for (int id = 0; id < heights.length; ++id) {
+                int level = in.readByte();
+                if ((level == NO_CELL) != (heights[id] == NO_CELL)) {
+                    throw new IOException("The snapshot is not of this map");
+                }
+                heights[id] = level;
+            }
+            Arrays.fill(rows, null);
         }
     }
 
@@ -170,6 +470,8 @@ class Referee extends MultiReferee {
         int index, score;
         boolean dead, won;
         List<Unit> units;
+        // number of own units seeing each cell, indexed by cell id
+        int[] sight;
         private String message;
 
         public Player(int index) {
@@ -188,7 +490,26 @@ class Referee extends MultiReferee {
 
         public void reset() {
             message = null;
-            units.stream().forEach(Unit::reset);
+            for (int i = 0; i < units.size(); ++i) {
+                units.get(i).reset();
+            }
+        }
+
+        /**
+         * Forgets the last game, before the units are placed on a board of that many cells.
+         */
+        void begin(int cells) {
+            score = 0;
+            dead = won = false;
+            if (sight == null || sight.length != cells) {
+                sight = new int[cells];
+            } else {
+                Arrays.fill(sight, 0);
+            }
+            for (int i = 0; i < units.size(); ++i) {
+                units.get(i).position = null;
+            }
+            reset();
         }
 
         public String getMessage() {
@@ -212,11 +533,50 @@ class Referee extends MultiReferee {
     private List<Unit> units;
     private int mapIndex;
     private String expected;
+    // stress variant: size of the generated board, 0 for the regular maps
+    private int boardSize;
+    private int unitsPerPlayer;
+    // unit on each cell, indexed by cell id
+    private Unit[] occupants;
+    // the turn loop reuses these instead of allocating, see getInputForPlayer and handlePlayerOutput
+    private Action[] actions;
+    private int[] legalActions;
+    // bits of legalActions, for observations, the binary protocol and checking answers
+    private long[] legalMask;
+    // the player whose legal actions are in legalMask plus one, 0 once the game changed since they were computed
+    private int legalMaskOwner, legalCount;
+    private ActionResult scratch;
+    private Matcher acceptDefeatMatcher, playerMatcher;
+    // the name spectators watch the game by, see watch(), null if they cannot
+    private String liveName;
+    private String[] liveAnswers;
+    private int liveSequence;
+    private volatile LiveView liveView;
+    // adjudicate(): whether to, the connected part of the board of every cell, and the exact search of small parts
+    private boolean adjudicate;
+    private int[] parts, partQueue;
+    private Map<String, Integer> solved;
+    private ActionResult[] searchResults;
+    private int searchBudget;
 
     public Referee(InputStream is, PrintStream out, PrintStream err) throws IOException {
         super(is, out, err);
     }
 
+    /**
+     * @param init init properties, one "key=value" per line, e.g. "seed=42" or "headless=true"
+     */
+    public Referee(InputStream is, PrintStream out, PrintStream err, String[] init) throws IOException {
+        super(is, out, err, init);
+    }
+
+    /**
+     * A referee driven turn by turn by the caller, see {@link AbstractReferee#nextTurn()}.
+     */
+    public Referee(PrintStream out, PrintStream err, String[] init) {
+        super(out, err, init);
+    }
+
     @Override
     protected boolean isTurnBasedGame() {
         return true;
@@ -243,21 +603,7 @@ class Referee extends MultiReferee {
 
     @Override
     protected void initReferee(int playerCount, Properties prop) throws InvalidFormatException {
-        String seed = prop.getProperty("seed", String.valueOf(new Random(System.currentTimeMillis()).nextLong()));
-        String mapIndex = prop.getProperty("mapIndex", "-1");
-        String symmetric = prop.getProperty("symmetric", "false");
-
-        if (GAME_VERSION >= 1) {
-            WIN_ON_MAX_HEIGHT = false;
-        }
-        if (GAME_VERSION >= 2) {
-            UNITS_PER_PLAYER = 2;
-            CAN_PUSH = true;
-        }
-
-        if (GAME_VERSION >= 3) {
-            FOG_OF_WAR = true;
-        }
+        applyGameVersion();
 
         expected = "MOVE&BUILD";
         if (CAN_PUSH) {
@@ -265,547 +611,1608 @@ class Referee extends MultiReferee {
         }
         expected += " <index> <direction> <direction>";
 
-        try {
-            this.mapIndex = Integer.valueOf(mapIndex);
-        } catch (NumberFormatException e) {
-            this.mapIndex = -1;
-        }
-        this.seed = new Random(System.currentTimeMillis()).nextLong();
-        try {
-            this.seed = Long.valueOf(seed);
-        } catch (NumberFormatException e) {
-        }
-        try {
-            this.symmetric = Boolean.valueOf(symmetric);
-        } catch (NumberFormatException e) {
-            this.symmetric = false;
-        }
-
-        random = new Random(this.seed);
-        grid = initGrid();
-        players = new ArrayList<Player>(playerCount);
-        units = new ArrayList<Unit>(playerCount * UNITS_PER_PLAYER);
-        for (int idx = 0; idx < playerCount; ++idx) {
-            Player player = new Player(idx);
-            for (int i = 0; i < UNITS_PER_PLAYER; ++i) {
-                Unit u = new Unit(player, i);
-                player.units.add(u);
-                units.add(u);
-            }
-            players.add(player);
-        }
-
-        LinkedList<Point> points = new LinkedList<>(grid.map.keySet());
-        // Remove random from unordered set
-        Collections.sort(points, (a, b) -> (a.x == b.x) ? a.y - b.y : a.x - b.x);
-        // Introduce random from seed
-        Collections.shuffle(points, random);
-
-        if (this.symmetric) {
-            Player one = players.get(0);
-            Player two = players.get(1);
-            Queue<Point> queue = (Queue<Point>) points;
-            for (Unit u : one.units) {
-                boolean okay = false;
-                while (!okay) {
-                    Point a = queue.poll();
-                    Point b = new Point(grid.size - 1 - a.x, a.y);
-                    boolean removed = queue.remove(b);
-                    if (removed) {
-                        okay = true;
-                        u.position = a;
-                        two.units.get(u.index).position = b;
-                    }
-                }
-            }
-
+        Setup setup = Setup.take(Setup.key(playerCount, prop));
+        if (setup == null) {
+            setup = Setup.create(playerCount, prop);
+        }
+        seed = setup.seed;
+        mapIndex = setup.mapIndex;
+        symmetric = setup.symmetric;
+        boardSize = setup.boardSize;
+        unitsPerPlayer = setup.unitsPerPlayer;
+        random = setup.random;
+        grid = setup.grid;
+        // after a reset, the objects of the last game are reused if they fit
+        int cells = grid.size * grid.size;
+        if (occupants == null || occupants.length != cells) {
+            occupants = new Unit[cells];
         } else {
-            for (Unit u : units) {
-                u.position = ((Queue<Point>) points).poll();
+            Arrays.fill(occupants, null);
+        }
+        if (players == null || players.size() != playerCount || units.size() != playerCount * unitsPerPlayer) {
+            players = new ArrayList<Player>(playerCount);
+            units = new ArrayList<Unit>(playerCount * unitsPerPlayer);
+            for (int idx = 0; idx < playerCount; ++idx) {
+                Player player = new Player(idx);
+                for (int i = 0; i < unitsPerPlayer; ++i) {
+                    Unit u = new Unit(player, i);
+                    player.units.add(u);
+                    units.add(u);
+                }
+                players.add(player);
             }
-
         }
-    }
-
-    /**
-     * There is no good reason to create a custom Collector just for instantiating a Point. I just wanted to try it out.
-     *
-     * @author julien
-     */
-    static class PointCollector implements Collector<Integer, List<Integer>, Point> {
-        @Override
-        public Set<java.util.stream.Collector.Characteristics> characteristics() {
-            return new HashSet<>();
+        for (int i = 0; i < players.size(); ++i) {
+            players.get(i).begin(cells);
         }
-
-        @Override
-        public Supplier<List<Integer>> supplier() {
-            return LinkedList<Integer>::new;
+        for (int i = 0; i < units.size(); ++i) {
+            moveUnit(units.get(i), setup.positions[i]);
         }
-
-        @Override
-        public BiConsumer<List<Integer>, Integer> accumulator() {
-            return (list, value) -> list.add(value);
+        actions = Action.all(unitsPerPlayer, CAN_PUSH);
+        if (legalActions == null || legalActions.length != actions.length) {
+            legalActions = new int[actions.length];
         }
-
-        @Override
-        public BinaryOperator<List<Integer>> combiner() {
-            return (a, b) -> {
-                a.addAll(b);
-                return a;
-            };
+        if (scratch == null) {
+            scratch = new ActionResult();
         }
-
-        @Override
-        public Function<List<Integer>, Point> finisher() {
-            return list -> new Point(list.get(0), list.get(1));
+        if (playerMatcher != null && playerMatcher.pattern() != (boardSize > 0 ? Patterns.STRESS_PLAYER_PATTERN : Patterns.PLAYER_PATTERN)) {
+            playerMatcher = null;
         }
 
+        liveName = prop.getProperty("live");
+        liveAnswers = liveName == null ? null : new String[playerCount];
+        adjudicate = Boolean.parseBoolean(prop.getProperty("adjudicate", "false"));
     }
 
-    private PointCollector toPoint() {
-        return new PointCollector();
+    @Override
+    public void reset(Properties init) {
+        unpublish();
+        super.reset(init);
+        legalMaskOwner = 0;
+        liveSequence = 0;
+        liveView = null;
+        solved = null;
     }
 
-    private Grid initGrid() {
-        Grid grid = new Grid();
-        List<String> maps = new ArrayList<>();
-        maps.add("0 0;1 0;2 0;3 0;4 0;0 1;1 1;2 1;3 1;4 1;0 2;1 2;2 2;3 2;4 2;0 3;1 3;2 3;3 3;4 3;0 4;1 4;2 4;3 4;4 4"); // Square
-        maps.add("3 0;2 1;3 1;4 1;1 2;2 2;3 2;4 2;5 2;0 3;1 3;2 3;3 3;4 3;5 3;6 3;1 4;2 4;3 4;4 4;5 4;2 5;3 5;4 5;3 6"); // Diamond
-        maps.add(generateRandomMap());
-
-        int randomMapIndex = random.nextInt(maps.size());
-        if (mapIndex < 0 || mapIndex >= maps.size()) {
-            mapIndex = randomMapIndex;
-        }
-        String[] coords = maps.get(mapIndex).split(";");
-        of(coords)
-                .map(coord -> of(coord.split(" "))
-                        .map(Integer::valueOf)
-                        .collect(toPoint()))
-                .forEach(point -> grid.create(point));
-        return grid;
+    /**
+     * Sets the rules of {@link #GAME_VERSION}, every one of them, so that a lower version after a higher one in the
+     * same process plays its own rules.
+     */
+    static void applyGameVersion() {
+        WIN_ON_MAX_HEIGHT = GAME_VERSION < 1;
+        UNITS_PER_PLAYER = GAME_VERSION >= 2 ? 2 : 1;
+        CAN_PUSH = GAME_VERSION >= 2;
+        FOG_OF_WAR = GAME_VERSION >= 3;
     }
 
-    private String generateRandomMap() {
-        Set<String> coords = new HashSet<>();
-        int size = GENERATED_MAP_SIZE;
-        int iterations = 0;
-        int cells = 25 + random.nextInt(10);
-        int islands = 0;
-        Grid g = new Grid();
-        while ((coords.size() < cells || islands > 1) && iterations < 1_000) {
-            int x = random.nextInt(size);
-            int y = random.nextInt(size);
-            Point point = new Point(x, y);
-            Point mirror = new Point((size - 1 - x), y);
-
-            coords.add(point.x + " " + point.y);
-            coords.add(mirror.x + " " + mirror.y);
-            g.create(point);
-            g.create(mirror);
-
-            islands = countIslands(g, size);
-            iterations++;
+    private static int intProperty(Properties prop, String key, int defaultValue) {
+        try {
+            return Integer.valueOf(prop.getProperty(key, String.valueOf(defaultValue)));
+        } catch (NumberFormatException e) {
+            return defaultValue;
         }
-        return coords.stream().collect(joining(";"));
     }
 
-    private int countIslands(Grid grid, int size) {
-        Set<Point> computed = new HashSet<>();
+    private static final int SNAPSHOT_MAGIC = 0x57575353; // "WWSS"
+    private static final int SNAPSHOT_VERSION = 1;
 
-        int total = 0;
-        for (Point p : grid.map.keySet()) {
-            if (!computed.contains(p)) {
-                total++;
-                Queue<Point> fifo = new LinkedList<>();
-                fifo.add(p);
-                while (!fifo.isEmpty()) {
-                    Point e = fifo.poll();
-                    for (Direction d : Direction.values()) {
-                        Point n = getNeighbor(d.name(), e, size);
-                        if (!computed.contains(n) && grid.get(n) != null) {
-                            fifo.add(n);
-                        }
-                    }
-                    computed.add(e);
+    /**
+     * Saves the state of the game, between two turns or after {@link #nextTurn()}: the configuration it was created
+     * with, the turn loop, the random generator, the heights, the players and the units.
+     *
+     * @return a few hundred bytes on the regular maps
+     */
+    public byte[] snapshot() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeShort(SNAPSHOT_VERSION);
+            out.writeByte(GAME_VERSION);
+            Properties init = getConfiguration();
+            if (isHeadless()) {
+                init.put("headless", true);
+            }
+            out.writeByte(init.size());
+            for (Map.Entry<Object, Object> e : init.entrySet()) {
+                out.writeUTF(e.getKey() + "=" + e.getValue());
+            }
+            writeLoopState(out);
+
+            ByteArrayOutputStream rng = new ByteArrayOutputStream();
+            try (ObjectOutputStream o = new ObjectOutputStream(rng)) {
+                o.writeObject(random);
+            }
+            out.writeShort(rng.size());
+            rng.writeTo(out);
+
+            grid.writeHeights(out);
+            for (Player player : players) {
+                out.writeShort(player.score);
+                out.writeBoolean(player.dead);
+                out.writeBoolean(player.won);
+                writeString(out, player.message);
+            }
+            for (Unit unit : units) {
+                out.writeShort(grid.id(unit.position));
+                out.writeBoolean(unit.gotPushed);
+                ActionResult did = unit.did;
+                out.writeByte(did == null ? 0 : did.type == Action.MOVE ? 1 : 2);
+                if (did != null) {
+                    out.writeShort(grid.id(did.moveTarget));
+                    out.writeShort(grid.id(did.placeTarget));
+                    out.writeBoolean(did.moveValid);
+                    out.writeBoolean(did.placeValid);
+                    out.writeBoolean(did.scorePoint);
+                    out.writeShort(did.unit.player.index * unitsPerPlayer + did.unit.index);
                 }
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return total;
-    }
-
-    static enum Direction {
-        NW, N, NE, W, E, SW, S, SE
+        return bytes.toByteArray();
     }
 
-    @Override
-    protected Properties getConfiguration() {
-        Properties p = new Properties();
-        p.put("seed", seed);
-        p.put("mapIndex", mapIndex);
-        if (symmetric) {
-            p.put("symmetric", true);
+    /**
+     * Recreates a game from a {@link #snapshot()}, as a referee driven by the caller, see
+     * {@link AbstractReferee#nextTurn()}. It continues exactly like the game the snapshot was taken of.
+     */
+    public static Referee restore(byte[] snapshot, PrintStream out, PrintStream err) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        if (in.readInt() != SNAPSHOT_MAGIC || in.readShort() != SNAPSHOT_VERSION) {
+            throw new IOException("Not a game snapshot");
+        }
+        int version = in.readByte();
+        if (version != GAME_VERSION) {
+            throw new IOException("Snapshot of game version " + version + ", this is version " + GAME_VERSION);
+        }
+        String[] init = new String[in.readByte()];
+        for (int i = 0; i < init.length; ++i) {
+            init[i] = in.readUTF();
+        }
+        Referee referee = new Referee(out, err, init);
+        if (!referee.initGame()) {
+            throw new IOException("Invalid configuration in snapshot");
+        }
+        referee.beginGame();
+        referee.readLoopState(in);
+
+        byte[] rng = new byte[in.readUnsignedShort()];
+        in.readFully(rng);
+        try (ObjectInputStream o = new ObjectInputStream(new ByteArrayInputStream(rng))) {
+            referee.random = (Random) o.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+
+        Grid grid = referee.grid;
+        grid.readHeights(in);
+        for (Player player : referee.players) {
+            player.score = in.readShort();
+            player.dead = in.readBoolean();
+            player.won = in.readBoolean();
+            player.message = readString(in);
+        }
+        for (Unit unit : referee.units) {
+            referee.moveUnit(unit, grid.point(in.readShort()));
+            unit.gotPushed = in.readBoolean();
+            int type = in.readByte();
+            unit.did = null;
+            if (type != 0) {
+                ActionResult did = unit.result;
+                did.clear();
+                did.type = type == 1 ? Action.MOVE : Action.PUSH;
+                did.moveTarget = grid.point(in.readShort());
+                did.placeTarget = grid.point(in.readShort());
+                did.moveValid = in.readBoolean();
+                did.placeValid = in.readBoolean();
+                did.scorePoint = in.readBoolean();
+                did.unit = referee.units.get(in.readShort());
+                unit.did = did;
+            }
         }
-        return p;
+        return referee;
     }
 
-    @Override
-    protected String[] getInitInputForPlayer(int playerIdx) {
-        List<String> lines = new ArrayList<>();
-        lines.add(String.valueOf(grid.size));
-        lines.add(String.valueOf(UNITS_PER_PLAYER));
-        return lines.toArray(new String[lines.size()]);
+    /**
+     * @return an independent copy of the game, see {@link #restore(byte[], PrintStream, PrintStream)}
+     */
+    public Referee fork(PrintStream out, PrintStream err) throws IOException {
+        return restore(snapshot(), out, err);
     }
 
-    @Override
-    protected String[] getInputForPlayer(int round, int playerIdx) {
-        List<String> lines = new ArrayList<>();
-        Player self = players.get(playerIdx);
-        Player other = players.get((playerIdx + 1) % 2);
-
-        for (int y = 0; y < grid.size; ++y) {
-            StringBuilder row = new StringBuilder();
-            for (int x = 0; x < grid.size; ++x) {
-                Integer height = grid.get(x, y);
-                if (height == null) {
-                    row.append(".");
-                } else {
-                    row.append(height);
+    /**
+     * The game as a player sees it in its turn input, for bots that search with the rules of the referee, see
+     * {@link #play(int, int, ActionResult)}. The player is player 0, the units of the other player that it does not see
+     * are left out, scores start at 0 and the rules are those of {@link #GAME_VERSION}.
+     *
+     * @param offset the index of the first row in the input
+     */
+    static Referee observe(String[] input, int offset, int size, int unitsPerPlayer) {
+        applyGameVersion();
+        Referee referee = new Referee(null, null, new String[0]);
+        Grid grid = new Grid();
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                if (input[offset + y].charAt(x) != '.') {
+                    grid.create(new Point(x, y));
                 }
             }
-            lines.add(row.toString());
         }
-
-        of(self, other).forEach(p -> {
-            for (Unit u : p.units) {
-                if (p == other && !unitVisibleToPlayer(u, self)) {
-                    lines.add("-1 -1");
-                } else {
-                    lines.add(u.position.x + " " + u.position.y);
+        // a row or column of holes at the edge still counts
+        grid.size = size;
+        grid.index();
+        for (int y = 0; y < size; ++y) {
+            for (int x = 0; x < size; ++x) {
+                char c = input[offset + y].charAt(x);
+                if (c != '.') {
+                    grid.heights[y * size + x] = c - '0';
                 }
             }
-        });
-
-        List<Action> legalActions = getLegalActions(self);
-        lines.add(String.valueOf(legalActions.size()));
-        for (Action action : legalActions) {
-            lines.add(action.toPlayerString());
         }
-        return lines.toArray(new String[lines.size()]);
+        referee.grid = grid;
+        referee.unitsPerPlayer = unitsPerPlayer;
+        referee.occupants = new Unit[size * size];
+        referee.players = new ArrayList<>(2);
+        referee.units = new ArrayList<>(2 * unitsPerPlayer);
+        int line = offset + size;
+        for (int idx = 0; idx < 2; ++idx) {
+            Player player = new Player(idx);
+            player.sight = new int[size * size];
+            for (int i = 0; i < unitsPerPlayer; ++i, ++line) {
+                Unit unit = new Unit(player, i);
+                player.units.add(unit);
+                referee.units.add(unit);
+                String position = input[line];
+                int space = position.indexOf(' ');
+                int x = Integer.parseInt(position.substring(0, space));
+                if (x >= 0) {
+                    referee.moveUnit(unit, grid.point(x, Integer.parseInt(position.substring(space + 1))));
+                }
+            }
+            referee.players.add(player);
+        }
+        referee.actions = Action.all(unitsPerPlayer, CAN_PUSH);
+        referee.legalActions = new int[referee.actions.length];
+        referee.scratch = new ActionResult();
+        return referee;
     }
 
-    private boolean unitVisibleToPlayer(Unit unit, Player player) {
-        if (!FOG_OF_WAR)
-            return true;
-        for (Unit u : player.units) {
-            if (u.position.distance(unit.position) <= VIEW_DISTANCE) {
-                return true;
+    /**
+     * @return every action, by the indexes of {@link #legalActions(int, int[])}; shared, do not modify
+     */
+    Action[] getActions() {
+        return actions;
+    }
+
+    Grid getGrid() {
+        return grid;
+    }
+
+    Player getPlayer(int playerIdx) {
+        return players.get(playerIdx);
+    }
+
+    /**
+     * Moves the units of the other player that a player does not see to random cells it does not see, so that the game
+     * is one of those the player cannot tell apart from it. Without fog of war every unit is seen, nothing moves.
+     */
+    void determinize(int playerIdx, Random random) {
+        Player self = players.get(playerIdx);
+        List<Unit> hidden = new ArrayList<>();
+        for (Unit unit : units) {
+            if (unit.player != self && !unitVisibleToPlayer(unit, self)) {
+                hidden.add(unit);
             }
         }
-        return false;
+        if (hidden.isEmpty()) {
+            return;
+        }
+        // the cells a hidden unit may stand on, as far as the player knows: where they stand now is no different
+        List<Point> cells = new ArrayList<>();
+        for (int id = 0; id < grid.size * grid.size; ++id) {
+            int level = grid.heights[id];
+            if (level != Grid.NO_CELL && level < FINAL_HEIGHT && self.sight[id] == 0
+                    && (occupants[id] == null || hidden.contains(occupants[id]))) {
+                cells.add(grid.point(id));
+            }
+        }
+        for (Unit unit : hidden) {
+            moveUnit(unit, cells.remove(random.nextInt(cells.size())));
+        }
+        legalMaskOwner = 0;
     }
 
-    private ActionResult computeMove(Unit unit, String dir1, String dir2) throws LostException {
+    /**
+     * @param into at least as long as {@link #getActions()}
+     * @return the count of legal actions of the player, whose indexes are written to into
+     */
+    int legalActions(int playerIdx, int[] into) {
+        return computeLegalActions(players.get(playerIdx), into);
+    }
 
-        Point target = getNeighbor(dir1, unit.position);
-        Integer targetHeight = grid.get(target);
-        if (targetHeight == null) {
-            throw new LostException("BadCoords", target.x, target.y);
+    /**
+     * Writes what the player sees in its turn input without text, for {@link ObservationBuffer}: a plane of heights, -1
+     * for holes and cells off the map, a plane of its units and a plane of the units of the other player that it sees,
+     * a unit being its index plus one, then its legal actions as bits over {@link #getActions()}, in longs. The planes
+     * are row by row, width bytes each.
+     *
+     * @param width the width of the planes, at least the size of the grid
+     * @return the count of legal actions
+     */
+    int writeObservation(int playerIdx, ByteBuffer buffer, int planes, int width, int mask) {
+        Player self = players.get(playerIdx);
+        Player other = players.get((playerIdx + 1) % 2);
+        int plane = width * width;
+        for (int y = 0; y < width; ++y) {
+            for (int x = 0; x < width; ++x) {
+                int level = x < grid.size && y < grid.size ? grid.heights[y * grid.size + x] : Grid.NO_CELL;
+                buffer.put(planes + y * width + x, (byte) level);
+                buffer.put(planes + plane + y * width + x, (byte) 0);
+                buffer.put(planes + 2 * plane + y * width + x, (byte) 0);
+            }
         }
-        int currentHeight = grid.get(unit.position);
-        if (targetHeight > currentHeight + 1) {
-            throw new LostException("InvalidMove", currentHeight, targetHeight);
+        for (int i = 0; i < self.units.size(); ++i) {
+            Point p = self.units.get(i).position;
+            buffer.put(planes + plane + p.y * width + p.x, (byte) (i + 1));
         }
-        if (targetHeight >= FINAL_HEIGHT) {
-            throw new LostException("MoveTooHigh", target.x, target.y);
+        for (int i = 0; i < other.units.size(); ++i) {
+            Unit u = other.units.get(i);
+            if (unitVisibleToPlayer(u, self)) {
+                buffer.put(planes + 2 * plane + u.position.y * width + u.position.x, (byte) (i + 1));
+            }
         }
-        if (getUnitOnPoint(target).isPresent()) {
-            throw new LostException("MoveOnUnit", target.x, target.y);
+        int count = computeLegalMask(self);
+        for (int w = 0; w < legalMask.length; ++w) {
+            buffer.putLong(mask + 8 * w, legalMask[w]);
         }
+        return count;
+    }
 
-        Point placeTarget = getNeighbor(dir2, target);
-        Integer placeTargetHeight = grid.get(placeTarget);
-        if (placeTargetHeight == null) {
-            throw new LostException("InvalidPlace", placeTarget.x, placeTarget.y);
+    /**
+     * Fills {@link #legalMask} with the legal actions of the player, bit i for the action i of {@link #actions}.
+     *
+     * @return their count
+     */
+    private int computeLegalMask(Player player) {
+        if (legalMaskOwner == player.index + 1) {
+            return legalCount;
         }
-        if (placeTargetHeight >= FINAL_HEIGHT) {
-            throw new LostException("PlaceTooHigh", targetHeight);
+        if (legalMask == null || legalMask.length != (actions.length + 63) / 64) {
+            legalMask = new long[(actions.length + 63) / 64];
         }
+        Arrays.fill(legalMask, 0);
+        int count = computeLegalActions(player);
+        for (int i = 0; i < count; ++i) {
+            legalMask[legalActions[i] >>> 6] |= 1L << legalActions[i];
+        }
+        legalMaskOwner = player.index + 1;
+        legalCount = count;
+        return count;
+    }
 
-        ActionResult result = new ActionResult(Action.MOVE);
-        result.moveTarget = target;
-        result.placeTarget = placeTarget;
-
-        Optional<Unit> possibleUnit = getUnitOnPoint(placeTarget).filter(u -> !u.equals(unit));
-        if (!possibleUnit.isPresent()) {
-            result.placeValid = true;
-            result.moveValid = true;
-        } else if (FOG_OF_WAR && !unitVisibleToPlayer(possibleUnit.get(), unit.player)) {
-            result.placeValid = false;
-            result.moveValid = true;
-        } else {
-            throw new LostException("PlaceOnUnit", placeTarget.x, placeTarget.y);
+    /**
+     * @return the legal actions of the player in the game as it is, as bits over {@link #getActions()}, bit i of long
+     *         i / 64 for action i; shared and only valid until the game changes, do not modify
+     */
+    long[] getLegalMask(int playerIdx) {
+        computeLegalMask(players.get(playerIdx));
+        return legalMask;
+    }
+
+    /**
+     * @param action an index of {@link #getActions()}
+     */
+    boolean isLegal(int playerIdx, int action) {
+        computeLegalMask(players.get(playerIdx));
+        return (legalMask[action >>> 6] & 1L << action) != 0;
+    }
+
+    /**
+     * @return whether the action is known legal from the legal actions computed for the input of the player
+     */
+    private boolean knownLegal(int playerIdx, int action) {
+        return action >= 0 && legalMaskOwner == playerIdx + 1 && (legalMask[action >>> 6] & 1L << action) != 0;
+    }
+
+    @Override
+    protected boolean supportsBinaryProtocol() {
+        return true;
+    }
+
+    /**
+     * The grid size and the units per player as bytes, then the number of actions as a short and every action as a
+     * string, in the order of the bits of the legal action masks.
+     */
+    @Override
+    protected void writeBinaryGameInfo(DataOutput out) throws IOException {
+        out.writeByte(grid.size);
+        out.writeByte(unitsPerPlayer);
+        out.writeShort(actions.length);
+        for (Action action : actions) {
+            out.writeUTF(action.toPlayerString());
         }
+    }
 
-        if (targetHeight == FINAL_HEIGHT - 1) {
-            result.scorePoint = true;
+    /**
+     * The height of every cell as a byte, row by row, -1 for holes; the units of the player then those of the other
+     * player as shorts, x in the high byte and y in the low byte, -1 for units it does not see; the number of legal
+     * actions as a short and their mask as longs, bit i of long i / 64 for action i.
+     */
+    @Override
+    protected void writeBinaryInput(int round, int playerIdx, DataOutput out) throws IOException {
+        Player self = players.get(playerIdx);
+        Player other = players.get((playerIdx + 1) % 2);
+        for (int id = 0; id < grid.heights.length; ++id) {
+            out.writeByte(grid.heights[id]);
+        }
+        for (int i = 0; i < self.units.size(); ++i) {
+            Point p = self.units.get(i).position;
+            out.writeShort(p.x << 8 | p.y);
+        }
+        for (int i = 0; i < other.units.size(); ++i) {
+            Unit u = other.units.get(i);
+            out.writeShort(unitVisibleToPlayer(u, self) ? u.position.x << 8 | u.position.y : -1);
+        }
+        out.writeShort(computeLegalMask(self));
+        for (long word : legalMask) {
+            out.writeLong(word);
         }
-        result.unit = unit;
-        return result;
     }
 
-    private Optional<Unit> getUnitOnPoint(Point target) {
-        Optional<Unit> potentialUnit = units.stream().filter(u -> u.position.equals(target)).findFirst();
-        return potentialUnit;
+    /**
+     * @param action an action index, followed by the text as a message if there is one; otherwise the text is the
+     *        output line, e.g. ACCEPT-DEFEAT
+     */
+    @Override
+    protected String readBinaryAnswer(int action, String text) {
+        if (action < 0 || action >= actions.length) {
+            return text;
+        }
+        return text.isEmpty() ? actions[action].toPlayerString() : actions[action].toPlayerString() + " " + text;
     }
 
-    private ActionResult computePush(Unit unit, String dir1, String dir2) throws LostException {
-        if (!validPushDirection(dir1, dir2)) {
-            throw new LostException("PushInvalid", dir1, dir2);
+    /**
+     * Plays a legal action like a player's output, without checking who is to play and without messages.
+     *
+     * @param result filled with the effects of the action, kept for {@link #undo(int, ActionResult, Point)}
+     * @return where the moved or pushed unit was
+     */
+    Point play(int playerIdx, int action, ActionResult result) {
+        Action a = actions[action];
+        Player player = players.get(playerIdx);
+        computeAction(a.command, player.units.get(a.index), a.move, a.place, result, false);
+        Point from = result.unit.position;
+        if (result.moveValid) {
+            moveUnit(result.unit, result.moveTarget);
         }
-        Point target = getNeighbor(dir1, unit.position);
-        Optional<Unit> maybePushed = getUnitOnPoint(target);
-        if (!maybePushed.isPresent()) {
-            throw new LostException("PushVoid", target.x, target.y);
+        if (result.placeValid) {
+            grid.place(result.placeTarget);
         }
-        Unit pushed = maybePushed.get();
-
-        if (pushed.player == unit.player) {
-            throw new LostException("FriendlyFire", unit.index, pushed.index);
+        if (result.scorePoint) {
+            player.score++;
         }
+        legalMaskOwner = 0;
+        return from;
+    }
 
-        Point pushTo = getNeighbor(dir2, pushed.position);
-        Integer toHeight = grid.get(pushTo);
-        int fromHeight = grid.get(target);
+    void undo(int playerIdx, ActionResult result, Point from) {
+        if (result.scorePoint) {
+            players.get(playerIdx).score--;
+        }
+        if (result.placeValid) {
+            grid.unplace(result.placeTarget);
+        }
+        if (result.moveValid) {
+            moveUnit(result.unit, from);
+        }
+        legalMaskOwner = 0;
+    }
 
-        if (toHeight == null || toHeight >= FINAL_HEIGHT || toHeight > fromHeight + 1) {
-            throw new LostException("PushInvalid", dir1, dir2);
+    /**
+     * What a spectator sees of a game between two turns, see {@link Referee#watch(String)}. It is never modified once
+     * published, so any number of threads can read it without locks while the game plays on.
+     */
+    static final class LiveView {
+        // counts the views of a game, from 0
+        final int sequence;
+        final int round;
+        final int size;
+        // by cell, y * size + x, -1 for holes
+        final byte[] heights;
+        // every unit as x << 8 | y, all units of player 0, then player 1
+        final int[] units;
+        final int[] scores;
+        final boolean[] lost;
+        // the last answer of every player, null before its first
+        final String[] answers;
+        final boolean over;
+
+        private LiveView(int sequence, int round, int size, byte[] heights, int[] units, int[] scores, boolean[] lost, String[] answers,
+                boolean over) {
+            this.sequence = sequence;
+            this.round = round;
+            this.size = size;
+            this.heights = heights;
+            this.units = units;
+            this.scores = scores;
+            this.lost = lost;
+            this.answers = answers;
+            this.over = over;
+        }
+
+        int height(int x, int y) {
+            return heights[y * size + x];
         }
 
-        ActionResult result = new ActionResult(Action.PUSH);
-        result.moveTarget = pushTo;
-        result.placeTarget = target;
+        @Override
+        public String toString() {
+            return "round " + round + (over ? " over" : "") + ", scores " + Arrays.toString(scores) + ", last answers " + Arrays.toString(answers);
+        }
+    }
 
-        Optional<Unit> possibleUnit = getUnitOnPoint(pushTo);
-        if (!possibleUnit.isPresent()) {
-            result.placeValid = true;
-            result.moveValid = true;
-        } else if (FOG_OF_WAR && !unitVisibleToPlayer(possibleUnit.get(), unit.player)) {
-            result.placeValid = false;
-            result.moveValid = false;
+    /**
+     * @return the last view of the game playing with the init property "live=name", or null if there is none
+     */
+    static LiveView watch(String name) {
+        Referee referee = LIVE.get(name);
+        return referee == null ? null : referee.liveView;
+    }
 
-        } else {
-            throw new LostException("PushOnUnit", dir1, dir2);
-        }
+    /**
+     * @return the names of the games that can be watched, see {@link #watch(String)}. A game stops being watchable once
+     *         its last view, the one of its end, is published, or once it is abandoned, see {@link #unpublish()}.
+     */
+    static Set<String> liveGames() {
+        return new TreeSet<>(LIVE.keySet());
+    }
 
-        result.unit = pushed;
+    /**
+     * @return the last view of this game, null unless it has a "live" name
+     */
+    LiveView getLiveView() {
+        return liveView;
+    }
 
-        return result;
+    @Override
+    protected void publish() {
+        if (liveName == null) {
+            return;
+        }
+        byte[] heights = new byte[grid.size * grid.size];
+        for (int i = 0; i < heights.length; ++i) {
+            heights[i] = (byte) grid.heights[i];
+        }
+        int[] positions = new int[units.size()];
+        for (int i = 0; i < positions.length; ++i) {
+            Point position = units.get(i).position;
+            positions[i] = position.x << 8 | position.y;
+        }
+        int[] scores = new int[players.size()];
+        boolean[] lost = new boolean[players.size()];
+        for (int i = 0; i < scores.length; ++i) {
+            scores[i] = getScore(i);
+            lost[i] = players.get(i).dead;
+        }
+        LiveView view = new LiveView(liveSequence++, getRound(), grid.size, heights, positions, scores, lost, liveAnswers.clone(), isOver());
+        // the only write observers synchronize with: they see the whole view or the previous one
+        liveView = view;
+        if (view.sequence == 0) {
+            LIVE.put(liveName, this);
+        }
+        if (view.over) {
+            unpublish();
+        }
     }
 
-    private ActionResult computeAction(String command, Unit unit, String dir1, String dir2) throws LostException {
-        if (command.equalsIgnoreCase(Action.MOVE)) {
-            return computeMove(unit, dir1, dir2);
-        } else if (CAN_PUSH && command.equals(Action.PUSH)) {
-            return computePush(unit, dir1, dir2);
-        } else {
-            throw new LostException("InvalidCommand", command);
+    @Override
+    protected void unpublish() {
+        if (liveName != null) {
+            LIVE.remove(liveName, this);
         }
     }
 
-    private List<Action> getLegalActions(Player player) {
-        List<Action> actions = new LinkedList<>();
-        for (Unit unit : player.units) {
-            for (Direction dir1 : Direction.values()) {
-                for (Direction dir2 : Direction.values()) {
+    /**
+     * Everything that is decided before the first turn: the map and the start position of every unit. Building it only
+     * depends on the seed and the init properties, so it can be done without a running game.
+     */
+    static class Setup {
+        // the init properties a setup depends on, besides the number of players and the rules
+        private static final String[] PROPERTIES = { "seed", "mapIndex", "symmetric", "boardSize", "units" };
+        // the setup the next referee created on a thread may use instead of building its own, see prepare
+        private static final ThreadLocal<Setup> PREPARED = new ThreadLocal<>();
+
+        final long seed;
+        final boolean symmetric;
+        final int mapIndex;
+        // 0 on the regular maps
+        final int boardSize;
+        final int unitsPerPlayer;
+        final Random random;
+        final Grid grid;
+        // start positions in the order of Referee.units: all units of player 0, then player 1
+        final Point[] positions;
+        // see key, null if it is not known
+        private String key;
+
+        private Setup(long seed, int mapIndex, boolean symmetric, int boardSize, Random random, Grid grid, Point[] positions, int playerCount) {
+            this.seed = seed;
+            this.mapIndex = mapIndex;
+            this.symmetric = symmetric;
+            this.boardSize = boardSize;
+            this.unitsPerPlayer = positions.length / playerCount;
+            this.random = random;
+            this.grid = grid;
+            this.positions = positions;
+        }
+
+        /**
+         * The setup of a game with these init properties, the way the referee reads them: a random seed if there is none,
+         * the stress variant if there is a "boardSize" or "units".
+         */
+        static Setup create(int playerCount, Properties prop) {
+            // the number of units depends on the rules, which no referee may have applied yet on another thread
+            applyGameVersion();
+            long seed = new Random(System.currentTimeMillis()).nextLong();
+            try {
+                seed = Long.valueOf(prop.getProperty("seed", String.valueOf(seed)));
+            } catch (NumberFormatException e) {
+            }
+            int mapIndex = intProperty(prop, "mapIndex", -1);
+            boolean symmetric = Boolean.valueOf(prop.getProperty("symmetric", "false"));
+
+            Setup setup;
+            if (prop.getProperty("boardSize") != null || prop.getProperty("units") != null) {
+                int boardSize = Math.max(4, Math.min(MAX_BOARD_SIZE, intProperty(prop, "boardSize", GENERATED_MAP_SIZE)));
+                int unitsPerPlayer = Math.max(1, Math.min(MAX_UNITS_PER_PLAYER, intProperty(prop, "units", UNITS_PER_PLAYER)));
+                while (boardSize * boardSize < minStressCells(boardSize, unitsPerPlayer)) {
+                    boardSize++;
+                }
+                setup = createStress(seed, boardSize, symmetric, playerCount, unitsPerPlayer);
+            } else {
+                setup = create(seed, mapIndex, symmetric, playerCount, UNITS_PER_PLAYER);
+            }
+            setup.key = key(playerCount, prop);
+            return setup;
+        }
+
+        /**
+         * @return what the setup of a game with these init properties depends on, so that games with equal keys have
+         *         equal setups, or null if it has a random seed
+         */
+        static String key(int playerCount, Properties prop) {
+            if (prop.getProperty("seed") == null) {
+                return null;
+            }
+            StringBuilder key = new StringBuilder().append(GAME_VERSION).append(' ').append(playerCount);
+            for (String name : PROPERTIES) {
+                key.append(' ').append(name).append('=').append(prop.getProperty(name));
+            }
+            return key.toString();
+        }
+
+        /**
+         * Hands a setup built ahead of time to the next referee created on the calling thread, which uses it if its init
+         * properties have the same key, and builds its own otherwise. Call it with null once the referee is created.
+         */
+        static void prepare(Setup setup) {
+            if (setup == null) {
+                PREPARED.remove();
+            } else {
+                PREPARED.set(setup);
+            }
+        }
+
+        /**
+         * @return the prepared setup if it has this key, or null; it is no longer prepared either way
+         */
+        static Setup take(String key) {
+            Setup setup = PREPARED.get();
+            if (setup == null) {
+                return null;
+            }
+            PREPARED.remove();
+            return key != null && key.equals(setup.key) ? setup : null;
+        }
+
+        static Setup create(long seed, int mapIndex, boolean symmetric, int playerCount, int unitsPerPlayer) {
+            Random random = new Random(seed);
+            List<String> maps = new ArrayList<>();
+            maps.add("0 0;1 0;2 0;3 0;4 0;0 1;1 1;2 1;3 1;4 1;0 2;1 2;2 2;3 2;4 2;0 3;1 3;2 3;3 3;4 3;0 4;1 4;2 4;3 4;4 4"); // Square
+            maps.add("3 0;2 1;3 1;4 1;1 2;2 2;3 2;4 2;5 2;0 3;1 3;2 3;3 3;4 3;5 3;6 3;1 4;2 4;3 4;4 4;5 4;2 5;3 5;4 5;3 6"); // Diamond
+            maps.add(generateRandomMap(random));
 
-                    try {
-                        computeAction(Action.MOVE, unit, dir1.name(), dir2.name());
-                        actions.add(new Action(Action.MOVE, unit.index, dir1, dir2));
-                    } catch (LostException eMove) {
+            int randomMapIndex = random.nextInt(maps.size());
+            if (mapIndex < 0 || mapIndex >= maps.size()) {
+                mapIndex = randomMapIndex;
+            }
+            Grid grid = initGrid(maps.get(mapIndex));
+            grid.index();
+            Point[] positions = placeUnits(grid, random, symmetric, playerCount, unitsPerPlayer);
+            return new Setup(seed, mapIndex, symmetric, 0, random, grid, positions, playerCount);
+        }
+
+        /**
+         * Setup of the stress variant: a generated map of the given size, with room for the given number of units.
+         */
+        static Setup createStress(long seed, int boardSize, boolean symmetric, int playerCount, int unitsPerPlayer) {
+            Random random = new Random(seed);
+            Grid grid = generateStressMap(random, boardSize, minStressCells(boardSize, unitsPerPlayer));
+            grid.index();
+            Point[] positions = placeUnits(grid, random, symmetric, playerCount, unitsPerPlayer);
+            return new Setup(seed, -1, symmetric, boardSize, random, grid, positions, playerCount);
+        }
+
+        /**
+         * Enough cells for every unit, even when symmetric placement wastes the cells of the middle column.
+         */
+        static int minStressCells(int boardSize, int unitsPerPlayer) {
+            return 4 * unitsPerPlayer + boardSize;
+        }
+
+        private static Point[] placeUnits(Grid grid, Random random, boolean symmetric, int playerCount, int unitsPerPlayer) {
+            Point[] positions = new Point[playerCount * unitsPerPlayer];
+            // Remove random from unordered set: cell ids ordered by x, then y
+            int[] cells = new int[grid.cellCount()];
+            int count = 0;
+            for (int x = 0; x < grid.size; ++x) {
+                for (int y = 0; y < grid.size; ++y) {
+                    if (grid.get(x, y) != null) {
+                        cells[count++] = y * grid.size + x;
                     }
-                    if (CAN_PUSH) {
-                        try {
-                            computeAction(Action.PUSH, unit, dir1.name(), dir2.name());
-                            actions.add(new Action(Action.PUSH, unit.index, dir1, dir2));
-                        } catch (LostException ePush) {
+                }
+            }
+            // Introduce random from seed, drawing exactly like Collections.shuffle
+            for (int i = cells.length; i > 1; --i) {
+                int j = random.nextInt(i);
+                int tmp = cells[i - 1];
+                cells[i - 1] = cells[j];
+                cells[j] = tmp;
+            }
+
+            if (symmetric) {
+                // cells that have been handed out or paired, the rest is what is left to draw from
+                boolean[] taken = new boolean[grid.size * grid.size];
+                int next = 0;
+                for (int i = 0; i < unitsPerPlayer; ++i) {
+                    boolean okay = false;
+                    while (!okay) {
+                        while (taken[cells[next]]) {
+                            next++;
+                        }
+                        int a = cells[next++];
+                        taken[a] = true;
+                        int b = grid.mirror(a);
+                        if (b >= 0 && !taken[b]) {
+                            taken[b] = true;
+                            okay = true;
+                            positions[i] = grid.point(a);
+                            positions[unitsPerPlayer + i] = grid.point(b);
                         }
                     }
+                }
 
+            } else {
+                for (int i = 0; i < positions.length; ++i) {
+                    positions[i] = grid.point(cells[i]);
                 }
 
             }
+            return positions;
         }
-        actions.sort((a, b) -> a.toPlayerString().compareTo(b.toPlayerString()));
-        return actions;
-    }
-
-    @Override
-    protected void prepare(int round) {
-        players.stream().forEach(Player::reset);
     }
 
-    @Override
-    protected int getExpectedOutputLineCountForPlayer(int playerIdx) {
-        return 1;
+    private static Grid initGrid(String map) {
+        Grid grid = new Grid();
+        for (String coord : map.split(";")) {
+            String[] xy = coord.split(" ");
+            grid.create(new Point(Integer.parseInt(xy[0]), Integer.parseInt(xy[1])));
+        }
+        return grid;
     }
 
-    private void matchMessage(Player player, Matcher match) {
-        player.setMessage(match.group("message"));
-    }
+    private static String generateRandomMap(Random random) {
+        Set<String> coords = new HashSet<>();
+        int size = GENERATED_MAP_SIZE;
+        int iterations = 0;
+        int cells = 25 + random.nextInt(10);
+        int islands = 0;
+        Grid g = new Grid();
+        while ((coords.size() < cells || islands > 1) && iterations < 1_000) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            Point point = new Point(x, y);
+            Point mirror = new Point((size - 1 - x), y);
 
-    private Point getNeighbor(String direction, Point position) {
-        return getNeighbor(direction, position, grid.size);
-    }
+            coords.add(point.x + " " + point.y);
+            coords.add(mirror.x + " " + mirror.y);
+            g.create(point);
+            g.create(mirror);
 
-    private Point getNeighbor(String direction, Point position, int size) {
-        int x = position.x;
-        int y = position.y;
-        if (direction.contains("E")) {
-            x++;
-        } else if (direction.contains("W")) {
-            x--;
+            islands = countIslands(g, size);
+            iterations++;
         }
-        if (direction.contains("S")) {
-            y++;
-        } else if (direction.contains("N")) {
-            y--;
+        StringBuilder map = new StringBuilder();
+        for (String coord : coords) {
+            if (map.length() > 0) {
+                map.append(';');
+            }
+            map.append(coord);
         }
-        return new Point(x, y);
+        return map.toString();
     }
 
-    @Override
-    protected void handlePlayerOutput(int frame, int round, int playerIdx, String[] outputs)
-            throws WinException, LostException, InvalidInputException {
-        String line = outputs[0];
-        Player player = players.get(playerIdx);
-
-        try {
-            Matcher match = ACCEPT_DEFEAT_PATTERN.matcher(line);
-            if (match.matches()) {
-                player.die(round);
-                //Message
-                matchMessage(player, match);
-                throw new LostException("selfDestruct", player.index);
-            }
-            match = PLAYER_PATTERN.matcher(line);
-            if (match.matches()) {
-                String action = match.group("action");
-                String indexString = match.group("index");
-                String dir1 = match.group("move").toUpperCase();
-                String dir2 = match.group("place").toUpperCase();
-                int index = Integer.valueOf(indexString);
-                Unit unit = player.units.get(index);
-
-                ActionResult ar = computeAction(action, unit, dir1, dir2);
-                unit.did = ar;
-                if (ar.moveValid) {
-                    ar.unit.position = ar.moveTarget;
-                }
-                if (ar.placeValid) {
-                    grid.place(ar.placeTarget);
+    /**
+     * Grows a connected map, symmetric on the vertical axis, from the middle of the board by repeatedly adding a random
+     * neighbour of the cells already on it, together with its mirror. Unlike {@link #generateRandomMap(Random)}, this
+     * never needs to count islands, so it scales to large boards.
+     */
+    private static Grid generateStressMap(Random random, int size, int minCells) {
+        int target = Math.min(size * size, Math.max(minCells, size * size * (60 + random.nextInt(31)) / 100));
+        boolean[] on = new boolean[size * size];
+        int[] frontier = new int[8 * size * size + 16];
+        int frontierSize = 0;
+        int count = 0;
+        int next = random.nextInt(size) * size + (size - 1) / 2;
+        while (next >= 0) {
+            int y = next / size;
+            int x = next % size;
+            for (int cell : new int[] { next, y * size + size - 1 - x }) {
+                if (on[cell]) {
+                    continue;
                 }
-                if (ar.scorePoint) {
-                    player.score++;
+                on[cell] = true;
+                count++;
+                for (int ny = cell / size - 1; ny <= cell / size + 1; ++ny) {
+                    for (int nx = cell % size - 1; nx <= cell % size + 1; ++nx) {
+                        if (nx >= 0 && ny >= 0 && nx < size && ny < size && !on[ny * size + nx]) {
+                            frontier[frontierSize++] = ny * size + nx;
+                        }
+                    }
                 }
-                if (ar.type.equals(Action.PUSH)) {
-                    ar.unit.gotPushed = true;
+            }
+            next = -1;
+            while (next < 0 && count < target && frontierSize > 0) {
+                int i = random.nextInt(frontierSize);
+                if (!on[frontier[i]]) {
+                    next = frontier[i];
                 }
-
-                //Message
-                matchMessage(player, match);
-                return;
+                frontier[i] = frontier[--frontierSize];
             }
-
-            throw new InvalidInputException(expected, line);
-
-        } catch (LostException | InvalidInputException e) {
-            player.die(round);
-            throw e;
-        } catch (Exception e) {
-            StringWriter errors = new StringWriter();
-            e.printStackTrace(new PrintWriter(errors));
-            printError(e.getMessage() + "\n" + errors.toString());
-            player.die(round);
-            throw new InvalidInputException(expected, line);
         }
 
+        Grid grid = new Grid();
+        for (int cell = 0; cell < on.length; ++cell) {
+            if (on[cell]) {
+                grid.create(new Point(cell % size, cell / size));
+            }
+        }
+        // mirrors are computed on the full width, even if the border columns stayed empty
+        grid.size = size;
+        return grid;
     }
 
-    private boolean validPushDirection(String target, String push) {
-        if (target.length() == 2) {
-            return push.equals(target) || push.equals(target.substring(0, 1)) || push.equals(target.substring(1, 2));
-        } else {
-            return push.contains(target);
+    private static int countIslands(Grid grid, int size) {
+        boolean[] on = new boolean[size * size];
+        for (Point p : grid.map.keySet()) {
+            on[p.y * size + p.x] = true;
         }
-    }
+        boolean[] computed = new boolean[size * size];
+        int[] fifo = new int[size * size];
 
-    @Override
-    protected void updateGame(int round) throws GameOverException {
-        for (Unit unit : units) {
-            if (WIN_ON_MAX_HEIGHT && grid.get(unit.position).equals(FINAL_HEIGHT - 1)) {
-                unit.player.win();
+        int total = 0;
+        for (int cell = 0; cell < on.length; ++cell) {
+            if (on[cell] && !computed[cell]) {
+                total++;
+                int head = 0, tail = 0;
+                fifo[tail++] = cell;
+                computed[cell] = true;
+                while (head < tail) {
+                    int e = fifo[head++];
+                    for (Direction d : Direction.ALL) {
+                        int x = e % size + d.dx;
+                        int y = e / size + d.dy;
+                        if (x >= 0 && y >= 0 && x < size && y < size && on[y * size + x] && !computed[y * size + x]) {
+                            computed[y * size + x] = true;
+                            fifo[tail++] = y * size + x;
+                        }
+                    }
+                }
             }
         }
+        return total;
     }
 
-    @Override
-    protected void populateMessages(Properties p) {
-        //Error messages
-        p.put("PlaceOnUnit", "Trying to build on a unit at position (%d,%d).");
-        p.put("PushVoid", "Nobody to push at position (%d, %d).");
-        p.put("PlaceTooHigh", "Cannot build at height %d.");
-        p.put("InvalidMove", "Cannot move from height %d to %d.");
-        p.put("MoveOnUnit", "Trying to move onto an occupied cell at (%d,%d).");
-        p.put("BadCoords", "Cannot move to position (%d,%d).");
-        p.put("MoveTooHigh", "Cannot move to position (%d,%d).");
-        p.put("InvalidPlace", "Cannot build on position (%d,%d).");
-        p.put("PushInvalid", "Not a valid push: %s + %s.");
-        p.put("FriendlyFire", "Unit %d is tried to push friendly unit %d.");
-        p.put("PushOnUnit", "Trying to push onto another unit: %s + %s.");
-        p.put("selfDestruct", "$%d accepts defeat!");
+    static enum Direction {
+        NW(-1, -1), N(0, -1), NE(1, -1), W(-1, 0), E(1, 0), SW(-1, 1), S(0, 1), SE(1, 1);
+
+        static final Direction[] ALL = values();
+        // PUSHES[target][push]: a unit can be pushed straight away or in one of the two directions next to it
+        private static final boolean[][] PUSHES = new boolean[ALL.length][ALL.length];
+
+        static {
+            for (Direction target : ALL) {
+                for (Direction push : ALL) {
+                    String t = target.name();
+                    String p = push.name();
+                    if (t.length() == 2) {
+                        PUSHES[target.ordinal()][push.ordinal()] = p.equals(t) || p.equals(t.substring(0, 1)) || p.equals(t.substring(1, 2));
+                    } else {
+                        PUSHES[target.ordinal()][push.ordinal()] = p.contains(t);
+                    }
+                }
+            }
+        }
 
-        //Tooltip error messages
-        p.put("PlaceOnUnitTooltip", "Invalid build (%d,%d)");
-        p.put("PushVoidTooltip", "Invalid push (%d, %d)");
-        p.put("PlaceTooHighTooltip", "Invalid build (%d,%d)");
-        p.put("InvalidMoveTooltip", "Invalid move (%d to %d)");
-        p.put("MoveOnUnitTooltip", "Invalid move (%d,%d)");
-        p.put("BadCoordsTooltip", "Invalid move (%d,%d)");
-        p.put("MoveTooHighTooltip", "Invalid move (%d,%d)");
-        p.put("InvalidPlaceTooltip", "Invalid build (%d,%d)");
-        p.put("PushInvalidTooltip", "Invalid push (%s + %s)");
-        p.put("FriendlyFireTooltip", "Friendly fire!");
-        p.put("PushOnUnitTooltip", "Invalid push (%s + %s)");
-        p.put("selfDestructTooltip", "accepted defeat!");
+        final int dx, dy;
 
-        //Status messages
-        p.put("MoveValid", "$%d moved unit %d to (%d,%d).");
-        p.put("PlaceValid", "...and builds on (%d,%d).");
-        p.put("CancelledPlace", "...and cannot build on (%d,%d)!");
-        p.put("PushToPlaceOn", "$%d made unit %d push a unit to (%d,%d) and builds on (%d,%d).");
-        p.put("CancelledPush", "$%d attempted to make unit %d push the unit on (%d, %d), but could not.");
-        p.put("Wins", "...and wins the game!");
-        p.put("Scores", "...and scores a point!");
+        Direction(int dx, int dy) {
+            this.dx = dx;
+            this.dy = dy;
+        }
 
-    }
+        boolean canPush(Direction push) {
+            return PUSHES[ordinal()][push.ordinal()];
+        }
 
-    @Override
-    protected String[] getInitDataForView() {
-        List<String> lines = new ArrayList<>();
-        lines.add(String.valueOf(grid.size));
-        lines.add(String.valueOf(GAME_VERSION));
-        lines.add(String.valueOf(UNITS_PER_PLAYER));
-        lines.add(0, String.valueOf(lines.size() + 1));
-        return lines.toArray(new String[lines.size()]);
+        /**
+         * @return the direction written, in any case, between start and end of the text, or null
+         */
+        static Direction parse(String text, int start, int end) {
+            for (Direction d : ALL) {
+                if (d.name().length() == end - start && text.regionMatches(true, start, d.name(), 0, end - start)) {
+                    return d;
+                }
+            }
+            return null;
+        }
     }
 
     @Override
-    protected String[] getFrameDataForView(int round, int frame, boolean keyFrame) {
-        List<String> lines = new ArrayList<>();
-
-        units.stream().forEach(u -> {
+    protected Properties getConfiguration() {
+        Properties p = new Properties();
+        p.put("seed", seed);
+        if (boardSize > 0) {
+            p.put("boardSize", boardSize);
+            p.put("units", unitsPerPlayer);
+        } else {
+            p.put("mapIndex", mapIndex);
+        }
+        if (symmetric) {
+            p.put("symmetric", true);
+        }
+        if (adjudicate) {
+            p.put("adjudicate", true);
+        }
+        return p;
+    }
+
+    @Override
+    protected String[] getInitInputForPlayer(int playerIdx) {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.valueOf(grid.size));
+        lines.add(String.valueOf(unitsPerPlayer));
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    protected String[] getInputForPlayer(int round, int playerIdx) {
+        List<String> lines = new ArrayList<>();
+        writeInputForPlayer(round, playerIdx, lines);
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    /**
+     * Only adds cached strings, so that a turn does not allocate beyond the rows that changed.
+     */
+    @Override
+    protected void writeInputForPlayer(int round, int playerIdx, List<String> lines) {
+        Player self = players.get(playerIdx);
+        Player other = players.get((playerIdx + 1) % 2);
+
+        for (int y = 0; y < grid.size; ++y) {
+            lines.add(grid.row(y));
+        }
+        for (int i = 0; i < self.units.size(); ++i) {
+            lines.add(self.units.get(i).position.toPlayerString());
+        }
+        for (int i = 0; i < other.units.size(); ++i) {
+            Unit u = other.units.get(i);
+            lines.add(unitVisibleToPlayer(u, self) ? u.position.toPlayerString() : HIDDEN);
+        }
+
+        int count = computeLegalMask(self);
+        lines.add(number(count));
+        for (int i = 0; i < count; ++i) {
+            lines.add(actions[legalActions[i]].toPlayerString());
+        }
+    }
+
+    /**
+     * @return the decimal string of a non-negative number, shared by all games
+     */
+    static String number(int n) {
+        String[] cache = numbers;
+        if (n >= cache.length) {
+            String[] grown = Arrays.copyOf(cache, Math.max(n + 1, 2 * cache.length));
+            for (int i = cache.length; i < grown.length; ++i) {
+                grown[i] = String.valueOf(i);
+            }
+            numbers = cache = grown;
+        }
+        return cache[n];
+    }
+
+    private boolean unitVisibleToPlayer(Unit unit, Player player) {
+        if (!FOG_OF_WAR)
+            return true;
+        return player.sight[grid.id(unit.position)] > 0;
+    }
+
+    /**
+     * Moves a unit and keeps the owner's sight counters in sync, so that visibility checks stay a single lookup.
+     */
+    private void moveUnit(Unit unit, Point to) {
+        if (FOG_OF_WAR) {
+            int[] sight = unit.player.sight;
+            if (unit.position != null) {
+                for (int id : grid.viewMask(unit.position)) {
+                    sight[id]--;
+                }
+            }
+            for (int id : grid.viewMask(to)) {
+                sight[id]++;
+            }
+        }
+        if (unit.position != null && occupants[grid.id(unit.position)] == unit) {
+            occupants[grid.id(unit.position)] = null;
+        }
+        occupants[grid.id(to)] = unit;
+        unit.position = to;
+    }
+
+    private ActionResult computeMove(Unit unit, Direction dir1, Direction dir2, ActionResult result, boolean explain) {
+        result.clear();
+        Point target = getNeighbor(dir1, unit.position);
+        Integer targetHeight = grid.get(target);
+        if (targetHeight == null) {
+            return result.fail(explain, "BadCoords", target.x, target.y);
+        }
+        int currentHeight = grid.get(unit.position);
+        if (targetHeight > currentHeight + 1) {
+            return result.fail(explain, "InvalidMove", currentHeight, targetHeight);
+        }
+        if (targetHeight >= FINAL_HEIGHT) {
+            return result.fail(explain, "MoveTooHigh", target.x, target.y);
+        }
+        if (getUnitOnPoint(target) != null) {
+            return result.fail(explain, "MoveOnUnit", target.x, target.y);
+        }
+
+        Point placeTarget = getNeighbor(dir2, target);
+        Integer placeTargetHeight = grid.get(placeTarget);
+        if (placeTargetHeight == null) {
+            return result.fail(explain, "InvalidPlace", placeTarget.x, placeTarget.y);
+        }
+        if (placeTargetHeight >= FINAL_HEIGHT) {
+            return result.fail(explain, "PlaceTooHigh", targetHeight);
+        }
+
+        result.type = Action.MOVE;
+        result.moveTarget = target;
+        result.placeTarget = placeTarget;
+
+        Unit possibleUnit = getUnitOnPoint(placeTarget);
+        if (possibleUnit == null || possibleUnit == unit) {
+            result.placeValid = true;
+            result.moveValid = true;
+        } else if (FOG_OF_WAR && !unitVisibleToPlayer(possibleUnit, unit.player)) {
+            result.placeValid = false;
+            result.moveValid = true;
+        } else {
+            return result.fail(explain, "PlaceOnUnit", placeTarget.x, placeTarget.y);
+        }
+
+        if (targetHeight == FINAL_HEIGHT - 1) {
+            result.scorePoint = true;
+        }
+        result.unit = unit;
+        return result;
+    }
+
+    /**
+     * @return the unit on the point, or null
+     */
+    private Unit getUnitOnPoint(Point target) {
+        if (target.x < 0 || target.y < 0 || target.x >= grid.size || target.y >= grid.size) {
+            return null;
+        }
+        return occupants[grid.id(target)];
+    }
+
+    private ActionResult computePush(Unit unit, Direction dir1, Direction dir2, ActionResult result, boolean explain) {
+        result.clear();
+        if (!dir1.canPush(dir2)) {
+            return result.fail(explain, "PushInvalid", dir1.name(), dir2.name());
+        }
+        Point target = getNeighbor(dir1, unit.position);
+        Unit pushed = getUnitOnPoint(target);
+        if (pushed == null) {
+            return result.fail(explain, "PushVoid", target.x, target.y);
+        }
+
+        if (pushed.player == unit.player) {
+            return result.fail(explain, "FriendlyFire", unit.index, pushed.index);
+        }
+
+        Point pushTo = getNeighbor(dir2, pushed.position);
+        Integer toHeight = grid.get(pushTo);
+        int fromHeight = grid.get(target);
+
+        if (toHeight == null || toHeight >= FINAL_HEIGHT || toHeight > fromHeight + 1) {
+            return result.fail(explain, "PushInvalid", dir1.name(), dir2.name());
+        }
+
+        result.type = Action.PUSH;
+        result.moveTarget = pushTo;
+        result.placeTarget = target;
+
+        Unit possibleUnit = getUnitOnPoint(pushTo);
+        if (possibleUnit == null) {
+            result.placeValid = true;
+            result.moveValid = true;
+        } else if (FOG_OF_WAR && !unitVisibleToPlayer(possibleUnit, unit.player)) {
+            result.placeValid = false;
+            result.moveValid = false;
+
+        } else {
+            return result.fail(explain, "PushOnUnit", dir1.name(), dir2.name());
+        }
+
+        result.unit = pushed;
+
+        return result;
+    }
+
+    /**
+     * Checks an action and fills result with its effects.
+     *
+     * @param explain whether to build the reason of a failure, for the player, or only mark the action as not legal
+     * @return result
+     */
+    private ActionResult computeAction(String command, Unit unit, Direction dir1, Direction dir2, ActionResult result, boolean explain) {
+        if (command.equalsIgnoreCase(Action.MOVE)) {
+            return computeMove(unit, dir1, dir2, result, explain);
+        } else if (CAN_PUSH && command.equals(Action.PUSH)) {
+            return computePush(unit, dir1, dir2, result, explain);
+        } else {
+            result.clear();
+            return result.fail(explain, "InvalidCommand", command);
+        }
+    }
+
+    /**
+     * Fills {@link #legalActions} with the indexes in {@link #actions} of the legal actions of the player, in the order
+     * they are sent to it.
+     *
+     * @return their count
+     */
+    private int computeLegalActions(Player player) {
+        return computeLegalActions(player, legalActions);
+    }
+
+    private int computeLegalActions(Player player, int[] into) {
+        int count = 0;
+        for (int i = 0; i < actions.length; ++i) {
+            Action action = actions[i];
+            Unit unit = player.units.get(action.index);
+            // units a bot does not see have no position, see observe()
+            if (unit.position != null && computeAction(action.command, unit, action.move, action.place, scratch, false).failure == null) {
+                into[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    protected void prepare(int round) {
+        for (int i = 0; i < players.size(); ++i) {
+            players.get(i).reset();
+        }
+    }
+
+    @Override
+    protected int getExpectedOutputLineCountForPlayer(int playerIdx) {
+        return 1;
+    }
+
+    private void matchMessage(Player player, Matcher match) {
+        player.setMessage(match.group("message"));
+    }
+
+    private Point getNeighbor(Direction direction, Point position) {
+        return grid.point(position.x + direction.dx, position.y + direction.dy);
+    }
+
+    @Override
+    protected TurnOutcome handlePlayerOutput(int frame, int round, int playerIdx, String[] outputs) {
+        String line = outputs[0];
+        Player player = players.get(playerIdx);
+        if (liveAnswers != null) {
+            liveAnswers[playerIdx] = line;
+        }
+
+        // the usual answer is one of the legal actions as they were sent: found by its text and accepted by a bit test,
+        // without matching the patterns
+        if (legalMaskOwner == playerIdx + 1) {
+            int known = Action.find(actions, line);
+            if (knownLegal(playerIdx, known)) {
+                Action a = actions[known];
+                Unit unit = player.units.get(a.index);
+                accept(player, unit, computeAction(a.command, unit, a.move, a.place, unit.result, false));
+                if (!isHeadless()) {
+                    player.setMessage(null);
+                }
+                return TurnOutcome.OK;
+            }
+        }
+
+        if (playerMatcher == null) {
+            acceptDefeatMatcher = Patterns.ACCEPT_DEFEAT_PATTERN.matcher("");
+            playerMatcher = (boardSize > 0 ? Patterns.STRESS_PLAYER_PATTERN : Patterns.PLAYER_PATTERN).matcher("");
+        }
+        Matcher match = acceptDefeatMatcher.reset(line);
+        if (match.matches()) {
+            player.die(round);
+            //Message
+            if (!isHeadless()) {
+                matchMessage(player, match);
+            }
+            return TurnOutcome.lost("selfDestruct", player.index);
+        }
+        match = playerMatcher.reset(line);
+        if (match.matches()) {
+            // read the groups in place, only the actions no player can play cost a substring
+            int start = match.start("action");
+            String action;
+            if (line.regionMatches(true, start, Action.MOVE, 0, Action.MOVE.length())) {
+                action = Action.MOVE;
+            } else if (line.startsWith(Action.PUSH, start)) {
+                action = Action.PUSH;
+            } else {
+                action = match.group("action");
+            }
+            Direction dir1 = Direction.parse(line, match.start("move"), match.end("move"));
+            Direction dir2 = Direction.parse(line, match.start("place"), match.end("place"));
+            int index = 0;
+            for (int i = match.start("index"); i < match.end("index"); ++i) {
+                index = 10 * index + line.charAt(i) - '0';
+            }
+            if (index >= player.units.size()) {
+                player.die(round);
+                return TurnOutcome.invalidInput(expected, line);
+            }
+            Unit unit = player.units.get(index);
+
+            // a legal action known from the input only needs its effects, the reason of a failure is only built for
+            // the actions that are not
+            int known = -1;
+            if (legalMaskOwner == playerIdx + 1 && (action == Action.MOVE || action == Action.PUSH && CAN_PUSH)) {
+                known = Action.codes(unitsPerPlayer, CAN_PUSH)[Action.code(action == Action.PUSH, index, dir1, dir2)];
+            }
+            ActionResult ar = computeAction(action, unit, dir1, dir2, unit.result, !knownLegal(playerIdx, known));
+            if (ar.failure != null) {
+                player.die(round);
+                return ar.failure;
+            }
+            accept(player, unit, ar);
+
+            //Message
+            if (!isHeadless()) {
+                matchMessage(player, match);
+            }
+            return TurnOutcome.OK;
+        }
+
+        player.die(round);
+        return TurnOutcome.invalidInput(expected, line);
+    }
+
+    private void accept(Player player, Unit unit, ActionResult ar) {
+        unit.did = ar;
+        if (ar.moveValid) {
+            moveUnit(ar.unit, ar.moveTarget);
+        }
+        if (ar.placeValid) {
+            grid.place(ar.placeTarget);
+        }
+        if (ar.scorePoint) {
+            player.score++;
+        }
+        if (ar.type.equals(Action.PUSH)) {
+            ar.unit.gotPushed = true;
+        }
+        legalMaskOwner = 0;
+    }
+
+    @Override
+    protected void updateGame(int round) {
+        for (int i = 0; i < units.size(); ++i) {
+            Unit unit = units.get(i);
+            if (WIN_ON_MAX_HEIGHT && grid.get(unit.position) == FINAL_HEIGHT - 1) {
+                unit.player.win();
+            }
+        }
+    }
+
+    // parts of the board at most this big are searched exactly, see adjudicate()
+    private static final int SEARCH_CELLS = 10;
+    private static final int SEARCH_BUDGET = 1_000;
+    private static final int SOLVED_LIMIT = 100_000;
+
+    /**
+     * With "adjudicate=true", ends the game as soon as its ranking is proven, when the player behind can no longer make
+     * up its difference in points or when neither player can score anymore. Only the points versions are adjudicated.
+     * <p>
+     * A point is a move onto height 3, so a player scores at most once per turn until the last round, and never again
+     * once it lost. Units only move, push and build within their connected part of the board, the cells below height 4,
+     * and parts only ever split. In a part without units of the other player, dead or alive, every turn builds, since
+     * only a hidden unit cancels a build: the player scores there at most as often as the part can still be built on,
+     * or exactly as often as the search of all its turns there finds, for small parts.
+     */
+    @Override
+    protected String adjudicate() {
+        if (!adjudicate || WIN_ON_MAX_HEIGHT) {
+            return null;
+        }
+        int score0 = players.get(0).score, score1 = players.get(1).score;
+        labelParts();
+        int gain0 = maxGain(players.get(0), score1 - score0), gain1 = maxGain(players.get(1), score0 - score1);
+        if (score0 > score1 + gain1 || score1 > score0 + gain0 || gain0 == 0 && gain1 == 0) {
+            return "adjudicated";
+        }
+        return null;
+    }
+
+    /**
+     * @param behind how many points the player is behind
+     * @return at least the points the player can still score, once the parts of the board are labelled. The small parts
+     *         are only searched when that can decide the game.
+     */
+    private int maxGain(Player player, int behind) {
+        if (player.dead) {
+            return 0;
+        }
+        int turns = getMaxRoundCount(players.size()) - Math.max(getRound(), 0);
+        long gain = 0;
+        boolean search = false;
+        for (int i = 0; i < player.units.size(); ++i) {
+            int part = ownPart(player, i);
+            if (part == -1) {
+                continue;
+            }
+            for (Unit unit : units) {
+                if (unit.player != player && parts[grid.id(unit.position)] == part) {
+                    return turns;
+                }
+            }
+            int cells = 0;
+            for (int c = 0; c < parts.length; ++c) {
+                if (parts[c] == part) {
+                    cells++;
+                    gain += FINAL_HEIGHT - grid.heights[c];
+                }
+            }
+            search |= cells <= SEARCH_CELLS;
+        }
+        if (!search || behind < 0 || gain < behind) {
+            return (int) Math.min(turns, gain);
+        }
+        gain = 0;
+        for (int i = 0; i < player.units.size(); ++i) {
+            int part = ownPart(player, i);
+            if (part != -1) {
+                gain += partGain(player, part, Math.max(behind, 1));
+            }
+        }
+        return (int) Math.min(turns, gain);
+    }
+
+    /**
+     * @return the part of the board of the unit, or -1 if a unit before it is in the same part
+     */
+    private int ownPart(Player player, int unit) {
+        int part = parts[grid.id(player.units.get(unit).position)];
+        for (int i = 0; i < unit; ++i) {
+            if (parts[grid.id(player.units.get(i).position)] == part) {
+                return -1;
+            }
+        }
+        return part;
+    }
+
+    /**
+     * Labels every cell with its connected part of the board, -1 for holes and cells of height 4.
+     */
+    private void labelParts() {
+        int cells = grid.size * grid.size;
+        if (parts == null || parts.length != cells) {
+            parts = new int[cells];
+            partQueue = new int[cells];
+        }
+        Arrays.fill(parts, -2);
+        int label = 0;
+        for (int start = 0; start < cells; ++start) {
+            if (parts[start] != -2) {
+                continue;
+            }
+            if (grid.heights[start] == Grid.NO_CELL || grid.heights[start] >= FINAL_HEIGHT) {
+                parts[start] = -1;
+                continue;
+            }
+            int head = 0, tail = 0;
+            partQueue[tail++] = start;
+            parts[start] = label;
+            while (head < tail) {
+                int cell = partQueue[head++];
+                int x = cell % grid.size, y = cell / grid.size;
+                for (Direction d : Direction.ALL) {
+                    int nx = x + d.dx, ny = y + d.dy;
+                    if (nx < 0 || ny < 0 || nx >= grid.size || ny >= grid.size) {
+                        continue;
+                    }
+                    int next = ny * grid.size + nx;
+                    if (parts[next] == -2 && grid.heights[next] != Grid.NO_CELL && grid.heights[next] < FINAL_HEIGHT) {
+                        parts[next] = label;
+                        partQueue[tail++] = next;
+                    }
+                }
+            }
+            label++;
+        }
+    }
+
+    /**
+     * @param enough points that are enough to keep the game open, the search stops once it finds them
+     * @return at least the points the player can score in a part of the board without units of the other player, or
+     *         at least enough if it can score that many
+     */
+    private int partGain(Player player, int part, int enough) {
+        int cells = 0, capacity = 0;
+        for (int i = 0; i < parts.length; ++i) {
+            if (parts[i] == part) {
+                cells++;
+                capacity += FINAL_HEIGHT - grid.heights[i];
+            }
+        }
+        if (cells > SEARCH_CELLS) {
+            return capacity;
+        }
+        // solved positions stay solved, a part only changes when its player plays in it
+        if (solved == null || solved.size() > SOLVED_LIMIT) {
+            solved = new HashMap<>();
+        }
+        searchBudget = SEARCH_BUDGET;
+        int points = searchPart(player, part, 0, enough);
+        return points < 0 ? capacity : points;
+    }
+
+    /**
+     * @return the most points the player can score with its turns in the part, at least enough once it found that many
+     *         without searching further, or -1 if the search of the position is over budget, now or in an earlier turn
+     */
+    private int searchPart(Player player, int part, int depth, int enough) {
+        StringBuilder key = new StringBuilder();
+        key.append((char) player.index);
+        for (int i = 0; i < parts.length; ++i) {
+            if (parts[i] == part) {
+                key.append((char) i).append((char) grid.heights[i]);
+            }
+        }
+        for (Unit unit : player.units) {
+            if (parts[grid.id(unit.position)] == part) {
+                key.append((char) unit.index).append((char) grid.id(unit.position));
+            }
+        }
+        Integer known = solved.get(key.toString());
+        if (known != null) {
+            return known;
+        }
+        if (--searchBudget < 0) {
+            return -1;
+        }
+        if (searchResults == null || searchResults.length <= depth) {
+            searchResults = Arrays.copyOf(searchResults == null ? new ActionResult[0] : searchResults, depth + 8);
+        }
+        if (searchResults[depth] == null) {
+            searchResults[depth] = new ActionResult();
+        }
+        ActionResult result = searchResults[depth];
+        int[] codes = Action.codes(unitsPerPlayer, CAN_PUSH);
+        int best = 0;
+        // without units of the other player there is nobody to push
+        for (int u = 0; u < player.units.size() && best >= 0 && best < enough; ++u) {
+            Unit unit = player.units.get(u);
+            if (parts[grid.id(unit.position)] != part) {
+                continue;
+            }
+            for (int m = 0; m < Direction.ALL.length && best >= 0 && best < enough; ++m) {
+                for (int b = 0; b < Direction.ALL.length && best >= 0 && best < enough; ++b) {
+                    if (computeMove(unit, Direction.ALL[m], Direction.ALL[b], result, false).failure != null) {
+                        continue;
+                    }
+                    Point from = play(player.index, codes[Action.code(false, u, Direction.ALL[m], Direction.ALL[b])], result);
+                    int point = result.scorePoint ? 1 : 0;
+                    int points = searchPart(player, part, depth + 1, enough - point);
+                    undo(player.index, result, from);
+                    best = points < 0 ? -1 : Math.max(best, points + point);
+                }
+            }
+        }
+        // only what was searched to the end is known exactly
+        if (best >= 0 && best < enough || best < 0 && depth == 0) {
+            solved.put(key.toString(), best);
+        }
+        return best;
+    }
+
+    @Override
+    protected void populateMessages(Properties p) {
+        //Error messages
+        p.put("PlaceOnUnit", "Trying to build on a unit at position (%d,%d).");
+        p.put("PushVoid", "Nobody to push at position (%d, %d).");
+        p.put("PlaceTooHigh", "Cannot build at height %d.");
+        p.put("InvalidMove", "Cannot move from height %d to %d.");
+        p.put("MoveOnUnit", "Trying to move onto an occupied cell at (%d,%d).");
+        p.put("BadCoords", "Cannot move to position (%d,%d).");
+        p.put("MoveTooHigh", "Cannot move to position (%d,%d).");
+        p.put("InvalidPlace", "Cannot build on position (%d,%d).");
+        p.put("PushInvalid", "Not a valid push: %s + %s.");
+        p.put("FriendlyFire", "Unit %d is tried to push friendly unit %d.");
+        p.put("PushOnUnit", "Trying to push onto another unit: %s + %s.");
+        p.put("selfDestruct", "$%d accepts defeat!");
+        p.put("timeout", "$%d: timeout!");
+        p.put("adjudicated", "The ranking can no longer change, the game is adjudicated.");
+
+        //Tooltip error messages
+        p.put("PlaceOnUnitTooltip", "Invalid build (%d,%d)");
+        p.put("PushVoidTooltip", "Invalid push (%d, %d)");
+        p.put("PlaceTooHighTooltip", "Invalid build (%d,%d)");
+        p.put("InvalidMoveTooltip", "Invalid move (%d to %d)");
+        p.put("MoveOnUnitTooltip", "Invalid move (%d,%d)");
+        p.put("BadCoordsTooltip", "Invalid move (%d,%d)");
+        p.put("MoveTooHighTooltip", "Invalid move (%d,%d)");
+        p.put("InvalidPlaceTooltip", "Invalid build (%d,%d)");
+        p.put("PushInvalidTooltip", "Invalid push (%s + %s)");
+        p.put("FriendlyFireTooltip", "Friendly fire!");
+        p.put("PushOnUnitTooltip", "Invalid push (%s + %s)");
+        p.put("selfDestructTooltip", "accepted defeat!");
+
+        //Status messages
+        p.put("MoveValid", "$%d moved unit %d to (%d,%d).");
+        p.put("PlaceValid", "...and builds on (%d,%d).");
+        p.put("CancelledPlace", "...and cannot build on (%d,%d)!");
+        p.put("PushToPlaceOn", "$%d made unit %d push a unit to (%d,%d) and builds on (%d,%d).");
+        p.put("CancelledPush", "$%d attempted to make unit %d push the unit on (%d, %d), but could not.");
+        p.put("Wins", "...and wins the game!");
+        p.put("Scores", "...and scores a point!");
+
+    }
+
+    @Override
+    protected String[] getInitDataForView() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.valueOf(grid.size));
+        lines.add(String.valueOf(GAME_VERSION));
+        lines.add(String.valueOf(unitsPerPlayer));
+        lines.add(0, String.valueOf(lines.size() + 1));
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    protected String[] getFrameDataForView(int round, int frame, boolean keyFrame) {
+        List<String> lines = new ArrayList<>();
+
+        units.stream().forEach(u -> {
             int pushCode = NO_PUSH;
             if (u.pushed()) {
                 pushCode = DID_PUSH;
@@ -813,480 +2220,1216 @@ class Referee extends MultiReferee {
                 pushCode = GOT_PUSHED;
             }
 
-            lines.add(u.position.x + " " + u.position.y + " " + pushCode);
+            lines.add(u.position.x + " " + u.position.y + " " + pushCode);
+
+        });
+        for (int y = 0; y < grid.size; ++y) {
+            lines.add(grid.row(y));
+        }
+        for (Player p : players) {
+            lines.add(String.valueOf(getScore(p.index)) + " " + (p.dead ? 0 : 1) + ";" + (p.message == null ? "" : p.message));
+        }
+        lines.add(String.valueOf(whoJustPlayed()));
+
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    private int whoJustPlayed() {
+        Optional<Player> opt = units.stream().filter(u -> u.did != null).map(u -> u.player).findFirst();
+        Player p = opt.orElse(players.get(0));
+        return p.index;
+    }
+
+    @Override
+    protected String getGameName() {
+        return "WondevWoman";
+    }
+
+    @Override
+    protected String getHeadlineAtGameStartForConsole() {
+        return null;
+    }
+
+    @Override
+    protected int getMinimumPlayerCount() {
+        return 2;
+    }
+
+    @Override
+    protected boolean showTooltips() {
+        return true;
+    }
+
+    @Override
+    protected String[] getPlayerActions(int playerIdx, int round) {
+        return new String[0];
+    }
+
+    @Override
+    protected boolean isPlayerDead(int playerIdx) {
+        if (GAME_VERSION == 0) {
+            return players.get(playerIdx).dead;
+        }
+        return false;
+    }
+
+    @Override
+    protected String getDeathReason(int playerIdx) {
+        return "$" + playerIdx + ": Eliminated!";
+    }
+
+    @Override
+    protected int getScore(int playerIdx) {
+        Player p = players.get(playerIdx);
+        if (WIN_ON_MAX_HEIGHT) {
+            if (p.dead)
+                return -1;
+            if (p.won)
+                return 1;
+            return 0;
+        }
+        return p.score;
+    }
+
+    @Override
+    protected String[] getGameSummary(int round) {
+        List<String> lines = new ArrayList<>();
+        for (Unit u : units) {
+            if (u.moved()) {
+                if (u.did.moveValid) {
+                    lines.add(translate("MoveValid", u.player.index, u.index, u.did.moveTarget.x, u.did.moveTarget.y));
+                } else {
+                    printError("impossible");
+                }
+                if (u.did.placeValid) {
+                    lines.add(translate("PlaceValid", u.did.placeTarget.x, u.did.placeTarget.y));
+                } else {
+                    lines.add(translate("CancelledPlace", u.did.placeTarget.x, u.did.placeTarget.y));
+                }
+                if (u.did.scorePoint) {
+                    if (WIN_ON_MAX_HEIGHT) {
+                        lines.add(translate("Wins"));
+                    } else {
+                        lines.add(translate("Scores"));
+                    }
+
+                }
+            } else if (u.pushed()) {
+                if (u.did.moveValid && u.did.placeValid) {
+                    lines.add(translate("PushToPlaceOn", u.player.index, u.index, u.did.moveTarget.x, u.did.moveTarget.y, u.did.placeTarget.x,
+                            u.did.placeTarget.y));
+                } else if (!u.did.moveValid && !u.did.placeValid) {
+                    lines.add(translate("CancelledPush", u.player.index, u.index, u.did.placeTarget.x, u.did.placeTarget.y));
+                } else {
+                    printError("also impossible");
+                }
+            }
+
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    protected void setPlayerTimeout(int frame, int round, int playerIdx) {
+        players.get(playerIdx).die(round);
+    }
+
+    @Override
+    protected int getMaxRoundCount(int playerCount) {
+        return 200;
+    }
+
+}
+
+// ------------------------------------------------------------------------------------------------------------
+
+abstract class MultiReferee extends AbstractReferee {
+    private Properties properties;
+    private boolean headless, deadlines;
+    // where start() logs the game, or null
+    private String transcripts;
+    private int transcriptBuffer, transcriptFiles;
+    private static final java.util.concurrent.atomic.AtomicInteger TRANSCRIPTS = new java.util.concurrent.atomic.AtomicInteger();
+
+    public MultiReferee(InputStream is, PrintStream out, PrintStream err) throws IOException {
+        super(is, out, err);
+    }
+
+    public MultiReferee(InputStream is, PrintStream out, PrintStream err, String[] init) throws IOException {
+        super(is, out, err, init);
+    }
+
+    public MultiReferee(PrintStream out, PrintStream err, String[] init) {
+        super(out, err, init);
+    }
+
+    /**
+     * @return the init properties, one "key=value" per line, as the referee reads them
+     */
+    static Properties properties(String[] init) {
+        Properties properties = new Properties();
+        try {
+            for (String s : init) {
+                properties.load(new StringReader(s));
+            }
+        } catch (IOException e) {
+        }
+        return properties;
+    }
+
+    @Override
+    protected final void handleInitInputForReferee(int playerCount, String[] init) throws InvalidFormatException {
+        handleInitInputForReferee(playerCount, properties(init));
+    }
+
+    @Override
+    protected final void handleInitInputForReferee(int playerCount, Properties init) throws InvalidFormatException {
+        properties = init;
+        headless = Boolean.valueOf(properties.getProperty("headless", "false"));
+        deadlines = Boolean.valueOf(properties.getProperty("deadlines", "false"));
+        transcripts = properties.getProperty("transcript");
+        transcriptBuffer = Integer.parseInt(properties.getProperty("transcriptBuffer", "1048576"));
+        transcriptFiles = Integer.parseInt(properties.getProperty("transcriptFiles", "1000"));
+        initReferee(playerCount, properties);
+        properties = getConfiguration();
+    }
+
+    @Override
+    protected boolean isHeadless() {
+        return headless;
+    }
+
+    @Override
+    protected boolean enforcesDeadlines() {
+        return deadlines;
+    }
+
+    @Override
+    protected TranscriptWriter openTranscripts() throws IOException {
+        if (transcripts == null) {
+            return null;
+        }
+        // the transcripts of earlier referees count, each process only writes one
+        return new TranscriptWriter(new File(transcripts), transcriptBuffer, transcriptFiles, true);
+    }
+
+    @Override
+    protected String getTranscriptName() {
+        // unique across the processes and the referees of a process
+        String process = java.lang.management.ManagementFactory.getRuntimeMXBean().getName();
+        return "game-" + properties.get("seed") + "-" + process.substring(0, Math.max(0, process.indexOf('@'))) + "-"
+                + TRANSCRIPTS.incrementAndGet();
+    }
+
+    abstract protected void initReferee(int playerCount, Properties prop) throws InvalidFormatException;
+
+    abstract protected Properties getConfiguration();
+
+    protected void appendDataToEnd(PrintStream stream) throws IOException {
+        stream.println(OutputCommand.UINPUT.format(properties.size()));
+        for (Map.Entry<Object, Object> t : properties.entrySet()) {
+            stream.println(t.getKey() + "=" + t.getValue());
+        }
+    }
+}
+
+abstract class AbstractReferee {
+    private static final String LOST_PARSING_REASON_CODE = "INPUT";
+    private static final String LOST_PARSING_REASON = "Failure: invalid input";
+
+    protected static class PlayerStatus {
+        private int id;
+        private int score;
+        private boolean lost, win;
+        private String info;
+        private String reasonCode;
+        private String[] nextInput;
+
+        public PlayerStatus(int id) {
+            this.id = id;
+            lost = false;
+            info = null;
+        }
+
+        private void clear() {
+            score = 0;
+            lost = win = false;
+            info = null;
+            reasonCode = null;
+            nextInput = null;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        public boolean isLost() {
+            return lost;
+        }
+
+        public String getInfo() {
+            return info;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getReasonCode() {
+            return reasonCode;
+        }
+
+        public String[] getNextInput() {
+            return nextInput;
+        }
+    }
+
+    // the messages of every referee class, see populateMessages
+    private static final Map<Class<?>, Properties> MESSAGES = new java.util.concurrent.ConcurrentHashMap<>();
+    private final Properties messages;
+
+    @SuppressWarnings("serial")
+    final class InvalidFormatException extends Exception {
+        public InvalidFormatException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Outcome of a player's turn: either {@link #OK}, or a win or loss with a reason code and its translation arguments.
+     */
+    protected static final class TurnOutcome {
+        static final TurnOutcome OK = new TurnOutcome(false, false, null, null, new Object[0]);
+
+        private final boolean win, lost;
+        private final String reasonCode, tooltipCode;
+        private final Object[] values;
+
+        private TurnOutcome(boolean win, boolean lost, String reasonCode, String tooltipCode, Object[] values) {
+            this.win = win;
+            this.lost = lost;
+            this.reasonCode = reasonCode;
+            this.tooltipCode = tooltipCode;
+            this.values = values;
+        }
+
+        static TurnOutcome lost(String reasonCode, Object... values) {
+            return new TurnOutcome(false, true, reasonCode, null, values);
+        }
+
+        static TurnOutcome win(String reasonCode, Object... values) {
+            return new TurnOutcome(true, false, reasonCode, null, values);
+        }
+
+        static TurnOutcome invalidInput(String expected, String found) {
+            return lost("InvalidInput", expected, found);
+        }
+
+        TurnOutcome withTooltip(String tooltipCode) {
+            return new TurnOutcome(win, lost, reasonCode, tooltipCode, values);
+        }
+
+        public boolean isWin() {
+            return win;
+        }
+
+        public boolean isLost() {
+            return lost;
+        }
+
+        public String getReasonCode() {
+            return reasonCode;
+        }
+
+        public Object[] getValues() {
+            return values;
+        }
+
+        public String getTooltipCode() {
+            if (tooltipCode != null) {
+                return tooltipCode;
+            }
+            return getReasonCode();
+        }
+    }
+
+    @SuppressWarnings("serial")
+    class GameErrorException extends Exception {
+        public GameErrorException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    public static enum InputCommand {
+        INIT, GET_GAME_INFO, SET_PLAYER_OUTPUT, SET_PLAYER_TIMEOUT
+    }
+
+    public static enum OutputCommand {
+        VIEW, INFOS, NEXT_PLAYER_INPUT, NEXT_PLAYER_INFO, SCORES, UINPUT, TOOLTIP, SUMMARY;
+
+        public String format(int lineCount) {
+            return String.format("[[%s] %d]", this.name(), lineCount);
+        }
+    }
+
+    @SuppressWarnings("serial")
+    public static class OutputData extends LinkedList<String> {
+        private OutputCommand command;
+
+        public OutputData(OutputCommand command) {
+            this.command = command;
+        }
+
+        public boolean add(String s) {
+            if (s != null)
+                return super.add(s);
+            return false;
+        }
+
+        public void addAll(String[] data) {
+            if (data != null)
+                super.addAll(Arrays.asList(data));
+        }
+
+        @Override
+        public String toString() {
+            StringWriter writer = new StringWriter();
+            PrintWriter out = new PrintWriter(writer);
+            out.println(this.command.format(this.size()));
+            for (String line : this) {
+                out.println(line);
+            }
+            return writer.toString().trim();
+        }
+    }
+
+    /**
+     * Reads lines like {@link Scanner#nextLine()}, with the same line separators and the same end of input, but without
+     * loading the regular expressions and lambdas Scanner needs, which took most of the time to the first input.
+     */
+    private static class LineReader implements Closeable {
+        private static final int NONE = -2;
+
+        private final Reader in;
+        private final StringBuilder line = new StringBuilder();
+        // read after a '\r' that was not followed by '\n'
+        private int pending = NONE;
+
+        LineReader(InputStream is) {
+            in = new BufferedReader(new InputStreamReader(is));
+        }
+
+        private int read() {
+            if (pending != NONE) {
+                int c = pending;
+                pending = NONE;
+                return c;
+            }
+            try {
+                return in.read();
+            } catch (IOException e) {
+                // like Scanner, a failing source is the end of the input
+                return -1;
+            }
+        }
 
-        });
-        for (int y = 0; y < grid.size; ++y) {
-            StringBuilder row = new StringBuilder();
-            for (int x = 0; x < grid.size; ++x) {
-                Integer height = grid.get(x, y);
-                if (height == null) {
-                    row.append(".");
-                } else {
-                    row.append(height);
+        String nextLine() {
+            int c = read();
+            if (c == -1) {
+                throw new NoSuchElementException("No line found");
+            }
+            line.setLength(0);
+            while (c != -1 && c != '\n' && c != '\r' && c != '\u2028' && c != '\u2029' && c != '\u0085') {
+                line.append((char) c);
+                c = read();
+            }
+            if (c == '\r') {
+                int next = read();
+                if (next != '\n') {
+                    pending = next;
                 }
             }
-            lines.add(row.toString());
+            return line.toString();
         }
-        for (Player p : players) {
-            lines.add(String.valueOf(getScore(p.index)) + " " + (p.dead ? 0 : 1) + ";" + (p.message == null ? "" : p.message));
-        }
-        lines.add(String.valueOf(whoJustPlayed()));
 
-        return lines.toArray(new String[lines.size()]);
-    }
-
-    private int whoJustPlayed() {
-        Optional<Player> opt = units.stream().filter(u -> u.did != null).map(u -> u.player).findFirst();
-        Player p = opt.orElse(players.get(0));
-        return p.index;
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
     }
 
-    @Override
-    protected String getGameName() {
-        return "WondevWoman";
-    }
+    /**
+     * Response times of a player, in buckets of 1/8 of a power of two microseconds: percentiles are within 12.5%, and
+     * recording never allocates.
+     */
+    public static final class LatencyHistogram {
+        private static final int SUB_BUCKETS = 8;
+        private static final int MAX_EXPONENT = 40;
 
-    @Override
-    protected String getHeadlineAtGameStartForConsole() {
-        return null;
-    }
+        private final long[] counts = new long[(MAX_EXPONENT - 1) * SUB_BUCKETS];
+        private long count, max;
+        private int timeouts;
 
-    @Override
-    protected int getMinimumPlayerCount() {
-        return 2;
-    }
+        private static int bucket(long micros) {
+            if (micros < SUB_BUCKETS) {
+                return (int) micros;
+            }
+            int shift = 60 - Long.numberOfLeadingZeros(micros);
+            return (shift + 1) * SUB_BUCKETS + (int) (micros >> shift) - SUB_BUCKETS;
+        }
 
-    @Override
-    protected boolean showTooltips() {
-        return true;
-    }
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = bucket / SUB_BUCKETS - 1;
+            return ((long) (SUB_BUCKETS + bucket % SUB_BUCKETS + 1) << shift) - 1;
+        }
 
-    @Override
-    protected String[] getPlayerActions(int playerIdx, int round) {
-        return new String[0];
-    }
+        void record(long nanos) {
+            long micros = Math.min(Math.max(0, nanos / 1000), (1L << MAX_EXPONENT) - 1);
+            counts[bucket(micros)]++;
+            count++;
+            max = Math.max(max, micros);
+        }
 
-    @Override
-    protected boolean isPlayerDead(int playerIdx) {
-        if (GAME_VERSION == 0) {
-            return players.get(playerIdx).dead;
+        void timeout() {
+            timeouts++;
         }
-        return false;
-    }
 
-    @Override
-    protected String getDeathReason(int playerIdx) {
-        return "$" + playerIdx + ": Eliminated!";
-    }
+        /**
+         * Adds the samples of another histogram, e.g. to sum up a bot over many games.
+         */
+        public void add(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; ++i) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+            timeouts += other.timeouts;
+        }
 
-    @Override
-    protected int getScore(int playerIdx) {
-        Player p = players.get(playerIdx);
-        if (WIN_ON_MAX_HEIGHT) {
-            if (p.dead)
-                return -1;
-            if (p.won)
-                return 1;
-            return 0;
+        public long getCount() {
+            return count;
         }
-        return p.score;
-    }
 
-    @Override
-    protected String[] getGameSummary(int round) {
-        List<String> lines = new ArrayList<>();
-        for (Unit u : units) {
-            if (u.moved()) {
-                if (u.did.moveValid) {
-                    lines.add(translate("MoveValid", u.player.index, u.index, u.did.moveTarget.x, u.did.moveTarget.y));
-                } else {
-                    printError("impossible");
-                }
-                if (u.did.placeValid) {
-                    lines.add(translate("PlaceValid", u.did.placeTarget.x, u.did.placeTarget.y));
-                } else {
-                    lines.add(translate("CancelledPlace", u.did.placeTarget.x, u.did.placeTarget.y));
-                }
-                if (u.did.scorePoint) {
-                    if (WIN_ON_MAX_HEIGHT) {
-                        lines.add(translate("Wins"));
-                    } else {
-                        lines.add(translate("Scores"));
-                    }
+        public int getTimeouts() {
+            return timeouts;
+        }
 
-                }
-            } else if (u.pushed()) {
-                if (u.did.moveValid && u.did.placeValid) {
-                    lines.add(translate("PushToPlaceOn", u.player.index, u.index, u.did.moveTarget.x, u.did.moveTarget.y, u.did.placeTarget.x,
-                            u.did.placeTarget.y));
-                } else if (!u.did.moveValid && !u.did.placeValid) {
-                    lines.add(translate("CancelledPush", u.player.index, u.index, u.did.placeTarget.x, u.did.placeTarget.y));
-                } else {
-                    printError("also impossible");
+        /**
+         * @return the response time in microseconds that the given share of the samples do not exceed, rounded up to
+         *         its bucket
+         */
+        public long percentile(double share) {
+            long rank = Math.max(1, (long) Math.ceil(share * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; ++i) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max);
                 }
             }
+            return max;
+        }
 
+        public long getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d p50=%.1fms p99=%.1fms max=%.1fms timeouts=%d", count, percentile(0.5) / 1000.0,
+                    percentile(0.99) / 1000.0, max / 1000.0, timeouts);
         }
-        return lines.toArray(new String[lines.size()]);
     }
 
-    @Override
-    protected void setPlayerTimeout(int frame, int round, int playerIdx) {
-        players.get(playerIdx).die(round);
+    private static class Tooltip {
+        int player;
+        String message;
+
+        public Tooltip(int player, String message) {
+            this.player = player;
+            this.message = message;
+        }
     }
 
-    @Override
-    protected int getMaxRoundCount(int playerCount) {
-        return 200;
+    private Set<Tooltip> tooltips;
+    private int playerCount, alivePlayerCount;
+    private int currentPlayer, nextPlayer;
+    private PlayerStatus lastPlayer, playerStatus;
+    private int frame, round;
+    private PlayerStatus[] players;
+    private String[] initLines;
+    // the init properties of the next game after a reset, read instead of the init lines
+    private Properties initProperties;
+    private boolean newRound, over;
+    private String reasonCode, reason;
+    // reused every turn
+    private List<String> inputLines;
+    private String[] outputs;
+    private String[] inputHeaders, outputHeaders;
+    private int[] outputHeaderCounts;
+    // per player, the first round then the other rounds; only once a turn was timed
+    private LatencyHistogram[][] latencies;
+
+    private InputStream is;
+    private PrintStream out;
+    private PrintStream err;
+    // where start() logs the game, see openTranscripts()
+    private TranscriptWriter.Game transcript;
+
+    public AbstractReferee(InputStream is, PrintStream out, PrintStream err) throws IOException {
+        this(is, out, err, new String[0]);
     }
 
-}
+    public AbstractReferee(InputStream is, PrintStream out, PrintStream err, String[] initLines) throws IOException {
+        this(out, err, initLines);
+        this.is = is;
+        start();
+    }
 
-// ------------------------------------------------------------------------------------------------------------
+    /**
+     * Creates a referee that is driven by the caller instead of reading its input stream: {@link #initGame()} and
+     * {@link #beginGame()}, then {@link #getNextInput()} and {@link #playTurn(String[])} as long as {@link #nextTurn()}
+     * returns true. The end of the game is still printed to out.
+     */
+    public AbstractReferee(PrintStream out, PrintStream err, String[] initLines) {
+        tooltips = new HashSet<>();
+        inputLines = new ArrayList<>();
+        messages = messages();
+        this.initLines = initLines;
+        this.out = out;
+        this.err = err;
+    }
 
-abstract class MultiReferee extends AbstractReferee {
-    private Properties properties;
+    /**
+     * @return the messages of the class, which {@link #populateMessages(Properties)} fills once for all its referees
+     */
+    private Properties messages() {
+        Properties messages = MESSAGES.get(getClass());
+        if (messages == null) {
+            messages = new Properties();
+            populateMessages(messages);
+            Properties shared = MESSAGES.putIfAbsent(getClass(), messages);
+            if (shared != null) {
+                messages = shared;
+            }
+        }
+        return messages;
+    }
 
-    public MultiReferee(InputStream is, PrintStream out, PrintStream err) throws IOException {
-        super(is, out, err);
+    /**
+     * Makes a referee driven by the caller ready for another game, in place of creating a new referee:
+     * {@link #initGame()} reads these init properties instead of the init lines, then the game is played like the game
+     * of a new referee. The objects of the last game are reused where the new game has the same shape.
+     */
+    public void reset(Properties init) {
+        initLines = null;
+        initProperties = init;
+        lastPlayer = null;
+        frame = 0;
+        reasonCode = null;
+        reason = null;
+        tooltips.clear();
+        inputLines.clear();
     }
 
-    @Override
-    protected final void handleInitInputForReferee(int playerCount, String[] init) throws InvalidFormatException {
-        properties = new Properties();
+    /**
+     * Plays the game on the input and output streams. The driver starts with "###Start 2", then gets an ###Input block
+     * and an ###Output header per turn, answers with the output lines, and gets "###End" and the ranking.
+     * <p>
+     * A driver that starts with "###Start 2 binary" gets the binary protocol instead, if the referee
+     * {@link #supportsBinaryProtocol() supports it}: a "###Binary 1" line, then frames of an int length, a type byte
+     * and the payload of that length minus one, all big endian like {@link DataOutput}. The referee sends a
+     * {@link #FRAME_HELLO} frame, then per turn an {@link #FRAME_INPUT} frame, answered by as many
+     * {@link #FRAME_ANSWER} frames as the turn expects output lines, and finally an {@link #FRAME_END} frame. A referee
+     * without binary support answers "###Start 2 binary" with the text protocol.
+     */
+    public void start() throws IOException {
+        if (!initGame()) {
+            return;
+        }
+        TranscriptWriter transcripts = openTranscripts();
+        transcript = transcripts == null ? null : transcripts.open(getTranscriptName());
         try {
-            for (String s : init) {
-                properties.load(new StringReader(s));
+            playStreams();
+        } finally {
+            // also when the game ends by an exception, without publishing its end
+            unpublish();
+            if (transcripts != null) {
+                transcript.end();
+                transcript = null;
+                transcripts.finish();
             }
-        } catch (IOException e) {
         }
-        initReferee(playerCount, properties);
-        properties = getConfiguration();
     }
 
-    abstract protected void initReferee(int playerCount, Properties prop) throws InvalidFormatException;
+    /**
+     * Adds a line sent or received by {@link #start()} to the transcript of the game, if there is one.
+     */
+    private void log(String line) {
+        if (transcript != null) {
+            transcript.line(line);
+        }
+    }
+
+    private void playStreams() throws IOException {
+        PushbackInputStream in = new PushbackInputStream(is, 1);
+        // read before anything is buffered, the binary protocol reads the rest of the stream as bytes
+        String start = readStartLine(in);
+        if (start != null) {
+            log(start);
+        }
+        if (start != null && start.endsWith(" binary") && supportsBinaryProtocol()) {
+            DataInputStream s = new DataInputStream(new BufferedInputStream(in));
+            try {
+                beginGame();
+                playBinary(s);
+            } finally {
+                s.close();
+            }
+            return;
+        }
 
-    abstract protected Properties getConfiguration();
+        LineReader s = new LineReader(in);
 
-    protected void appendDataToEnd(PrintStream stream) throws IOException {
-        stream.println(OutputCommand.UINPUT.format(properties.size()));
-        for (Map.Entry<Object, Object> t : properties.entrySet()) {
-            stream.println(t.getKey() + "=" + t.getValue());
+        try {
+            // Read ###Start 2
+            if (start == null) {
+                log(s.nextLine());
+            }
+            beginGame();
+
+            while (nextTurn()) {
+                List<String> input = getNextInput();
+                out.println(inputHeaders[nextPlayer]);
+                log(inputHeaders[nextPlayer]);
+                for (int i = 0; i < input.size(); ++i) {
+                    out.println(input.get(i));
+                    log(input.get(i));
+                }
+
+                String[] outputs = outputBuffer(getExpectedOutputLineCountForPlayer(nextPlayer));
+                // the input is sent with its ###Output header, the driver only forwards complete blocks
+                long sent = enforcesDeadlines() ? System.nanoTime() : 0;
+                out.println(outputHeader(outputs.length));
+                log(outputHeader(outputs.length));
+                for (int i = 0; i < outputs.length; i++) {
+                    outputs[i] = s.nextLine();
+                    log(outputs[i]);
+                }
+                if (enforcesDeadlines()) {
+                    playTurn(outputs, System.nanoTime() - sent);
+                } else {
+                    playTurn(outputs);
+                }
+            }
+        } finally {
+            s.close();
         }
     }
-}
 
-abstract class AbstractReferee {
-    private static final Pattern HEADER_PATTERN = Pattern.compile("\\[\\[(?<cmd>.+)\\] ?(?<lineCount>[0-9]+)\\]");
-    private static final String LOST_PARSING_REASON_CODE = "INPUT";
-    private static final String LOST_PARSING_REASON = "Failure: invalid input";
+    /**
+     * @return the first line, without its line break, or null if the input is empty
+     */
+    private static String readStartLine(PushbackInputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c = in.read();
+        if (c == -1) {
+            return null;
+        }
+        while (c != -1 && c != '\n' && c != '\r') {
+            line.append((char) c);
+            c = in.read();
+        }
+        if (c == '\r') {
+            int next = in.read();
+            if (next != '\n' && next != -1) {
+                in.unread(next);
+            }
+        }
+        return line.toString();
+    }
 
-    protected static class PlayerStatus {
-        private int id;
-        private int score;
-        private boolean lost, win;
-        private String info;
-        private String reasonCode;
-        private String[] nextInput;
+    static final int BINARY_VERSION = 1;
+    /**
+     * Referee to driver, once: the player count as a byte, then what {@link #writeBinaryGameInfo(DataOutput)} writes.
+     */
+    static final byte FRAME_HELLO = 1;
+    /**
+     * Referee to driver, every turn: the player as a byte, the round as a short, the expected output line count as a
+     * byte, then what {@link #writeBinaryInput(int, int, DataOutput)} writes.
+     */
+    static final byte FRAME_INPUT = 2;
+    /**
+     * Driver to referee, per output line: an action as a short, see {@link #readBinaryAnswer(int, String)}, then a
+     * string as {@link DataOutput#writeUTF(String)} writes it.
+     */
+    static final byte FRAME_ANSWER = 3;
+    /**
+     * Referee to driver, last: the player count as a byte, the score of every player as an int, then the ranking of
+     * the "###End" line as a string, e.g. "0 1", or "01" for a draw.
+     */
+    static final byte FRAME_END = 4;
 
-        public PlayerStatus(int id) {
-            this.id = id;
-            lost = false;
-            info = null;
-        }
+    private Frames frames;
+    private Answers answers;
 
-        public int getScore() {
-            return score;
-        }
+    /**
+     * Builds frames in a reused buffer and writes them whole to the output stream.
+     */
+    private static final class Frames extends ByteArrayOutputStream {
+        final DataOutputStream data = new DataOutputStream(this);
 
-        public boolean isLost() {
-            return lost;
+        DataOutputStream begin(byte type) {
+            reset();
+            // length, filled in by send
+            write(0);
+            write(0);
+            write(0);
+            write(0);
+            write(type);
+            return data;
         }
 
-        public String getInfo() {
-            return info;
+        void send(PrintStream out) {
+            int length = count - 4;
+            buf[0] = (byte) (length >>> 24);
+            buf[1] = (byte) (length >>> 16);
+            buf[2] = (byte) (length >>> 8);
+            buf[3] = (byte) length;
+            out.write(buf, 0, count);
         }
+    }
 
-        public int getId() {
-            return id;
+    /**
+     * Holds the payload of an answer frame in a reused buffer, so that a frame is read whole whatever it holds.
+     */
+    private static final class Answers extends ByteArrayInputStream {
+        final DataInputStream data = new DataInputStream(this);
+
+        Answers() {
+            super(new byte[64]);
         }
 
-        public String getReasonCode() {
-            return reasonCode;
+        DataInputStream read(DataInputStream in, int length) throws IOException {
+            if (buf.length < length) {
+                buf = new byte[Math.max(length, 2 * buf.length)];
+            }
+            in.readFully(buf, 0, length);
+            pos = 0;
+            count = length;
+            return data;
+        }
+    }
+
+    private void playBinary(DataInputStream in) throws IOException {
+        frames = new Frames();
+        answers = new Answers();
+        out.println("###Binary " + BINARY_VERSION);
+        log("###Binary " + BINARY_VERSION);
+        DataOutputStream frame = frames.begin(FRAME_HELLO);
+        frame.writeByte(playerCount);
+        writeBinaryGameInfo(frame);
+        frames.send(out);
+        while (nextTurn()) {
+            String[] outputs = outputBuffer(getExpectedOutputLineCountForPlayer(nextPlayer));
+            frame = frames.begin(FRAME_INPUT);
+            frame.writeByte(nextPlayer);
+            frame.writeShort(round);
+            frame.writeByte(outputs.length);
+            writeBinaryInput(round, nextPlayer, frame);
+            if (transcript != null) {
+                // the frame as the lines of the text protocol it stands for
+                log(inputHeaders[nextPlayer]);
+                for (String line : getNextInput()) {
+                    log(line);
+                }
+                log(outputHeader(outputs.length));
+            }
+            long sent = enforcesDeadlines() ? System.nanoTime() : 0;
+            frames.send(out);
+            out.flush();
+            for (int i = 0; i < outputs.length; i++) {
+                int length = in.readInt();
+                // a short and a string of at most 65535 bytes after the type
+                if (length < 1 || length > 1 + 2 + 2 + 65535 || in.readByte() != FRAME_ANSWER) {
+                    throw new IOException("Expected an answer frame");
+                }
+                DataInputStream answer = answers.read(in, length - 1);
+                try {
+                    outputs[i] = readBinaryAnswer(answer.readShort(), answer.readUTF());
+                } catch (EOFException | UTFDataFormatException e) {
+                    throw new IOException("Malformed answer frame", e);
+                }
+                log(outputs[i]);
+                if (answers.available() > 0) {
+                    throw new IOException("Malformed answer frame: " + answers.available() + " bytes too many");
+                }
+            }
+            if (enforcesDeadlines()) {
+                playTurn(outputs, System.nanoTime() - sent);
+            } else {
+                playTurn(outputs);
+            }
         }
+    }
 
-        public String[] getNextInput() {
-            return nextInput;
+    /**
+     * @return false if the init input is not valid, there is no game then
+     */
+    public boolean initGame() {
+        try {
+            if (initProperties != null) {
+                handleInitInputForReferee(2, initProperties);
+            } else {
+                handleInitInputForReferee(2, initLines);
+            }
+            return true;
+        } catch (InvalidFormatException e) {
+            return false;
         }
     }
 
-    private Properties messages = new Properties();
-
-    @SuppressWarnings("serial")
-    final class InvalidFormatException extends Exception {
-        public InvalidFormatException(String message) {
-            super(message);
+    public void beginGame() {
+        playerCount = alivePlayerCount = 2;
+        if (players == null) {
+            players = new PlayerStatus[2];
+            players[0] = new PlayerStatus(0);
+            players[1] = new PlayerStatus(1);
+            inputHeaders = new String[2];
+            outputHeaders = new String[2];
+            outputHeaderCounts = new int[2];
+            for (int i = 0; i < 2; ++i) {
+                inputHeaders[i] = "###Input " + i;
+            }
+        } else {
+            // after a reset
+            for (PlayerStatus player : players) {
+                player.clear();
+            }
         }
+        playerStatus = players[0];
+        currentPlayer = nextPlayer = 1;
+        round = -1;
+        newRound = true;
+        over = false;
+        latencies = null;
     }
 
-    @SuppressWarnings("serial")
-    abstract class GameException extends Exception {
-        private String reasonCode, tooltipCode;
-        private Object[] values;
-
-        public GameException(String reasonCode, Object... values) {
-            this.reasonCode = reasonCode;
-            this.values = values;
+    /**
+     * Moves on to the next player, or ends the game.
+     *
+     * @return false once the game is over
+     */
+    public boolean nextTurn() {
+        if (over) {
+            return false;
         }
-
-        public void setTooltipCode(String tooltipCode) {
-            this.tooltipCode = tooltipCode;
+        lastPlayer = playerStatus;
+        PlayerStatus next = nextPlayer();
+        if (next == null) {
+            endGame(null);
+            return false;
         }
+        playerStatus = next;
 
-        public String getReason() {
-            if (reasonCode != null) {
-                return translate(reasonCode, values);
-            } else {
-                return null;
-            }
+        if (this.round >= getMaxRoundCount(this.playerCount)) {
+            endGame("maxRoundsCountReached");
+            return false;
         }
-
-        public String getReasonCode() {
-            return reasonCode;
+        String decided = adjudicate();
+        if (decided != null) {
+            endGame(decided);
+            return false;
         }
 
-        public String getTooltipCode() {
-            if (tooltipCode != null) {
-                return tooltipCode;
+        if (newRound) {
+            prepare(round);
+            if (!this.isTurnBasedGame()) {
+                for (PlayerStatus player : this.players) {
+                    if (!player.lost) {
+                        player.nextInput = getInputForPlayer(round, player.id);
+                    } else {
+                        player.nextInput = null;
+                    }
+                }
             }
-            return getReasonCode();
         }
+        return true;
     }
 
-    @SuppressWarnings("serial")
-    class LostException extends GameException {
-        public LostException(String reasonCode, Object... values) {
-            super(reasonCode, values);
-        }
+    /**
+     * @return the player to play, once {@link #nextTurn()} returned true
+     */
+    public int getNextPlayer() {
+        return nextPlayer;
     }
 
-    @SuppressWarnings("serial")
-    class WinException extends GameException {
-        public WinException(String reasonCode, Object... values) {
-            super(reasonCode, values);
-        }
+    /**
+     * @return the round being played, from 0
+     */
+    public int getRound() {
+        return round;
     }
 
-    @SuppressWarnings("serial")
-    class InvalidInputException extends GameException {
-        public InvalidInputException(String expected, String found) {
-            super("InvalidInput", expected, found);
-        }
+    public int getExpectedOutputLineCount() {
+        return getExpectedOutputLineCountForPlayer(nextPlayer);
     }
 
-    @SuppressWarnings("serial")
-    class GameOverException extends GameException {
-        public GameOverException(String reasonCode, Object... values) {
-            super(reasonCode, values);
-        }
+    public boolean isOver() {
+        return over;
     }
 
-    @SuppressWarnings("serial")
-    class GameErrorException extends Exception {
-        public GameErrorException(Throwable cause) {
-            super(cause);
-        }
+    /**
+     * @return why the game ended when it was not the players, e.g. "maxRoundsCountReached", or null
+     */
+    public String getReasonCode() {
+        return reasonCode;
     }
 
-    public static enum InputCommand {
-        INIT, GET_GAME_INFO, SET_PLAYER_OUTPUT, SET_PLAYER_TIMEOUT
+    /**
+     * @return the lines to send to the player to play: the init input on the first round, then its turn input. The
+     *         list is reused by the next turn.
+     */
+    public List<String> getNextInput() {
+        inputLines.clear();
+        if (this.round == 0) {
+            Collections.addAll(inputLines, getInitInputForPlayer(nextPlayer));
+        }
+        if (this.isTurnBasedGame()) {
+            writeInputForPlayer(round, nextPlayer, inputLines);
+        } else {
+            Collections.addAll(inputLines, this.players[nextPlayer].nextInput);
+        }
+        return inputLines;
     }
 
-    public static enum OutputCommand {
-        VIEW, INFOS, NEXT_PLAYER_INPUT, NEXT_PLAYER_INFO, SCORES, UINPUT, TOOLTIP, SUMMARY;
+    /**
+     * Plays the output of the player to play, and ends the game if that decides it.
+     */
+    public TurnOutcome playTurn(String[] outputs) {
+        return endTurn(handlePlayerOutput(0, round, nextPlayer, outputs));
+    }
 
-        public String format(int lineCount) {
-            return String.format("[[%s] %d]", this.name(), lineCount);
+    /**
+     * Plays the output of the player to play, if it came within {@link #getMillisTimeForFirstRound()} or
+     * {@link #getMillisTimeForRound()}. Otherwise the player times out like with a driver's SET_PLAYER_TIMEOUT, and its
+     * output is ignored. The response time goes to the {@link #getLatencies(int, boolean) histograms} of the player.
+     *
+     * @param latencyNanos the time from sending the input to receiving the last output line
+     */
+    public TurnOutcome playTurn(String[] outputs, long latencyNanos) {
+        if (latencies == null) {
+            latencies = new LatencyHistogram[playerCount][];
+            for (int i = 0; i < playerCount; ++i) {
+                latencies[i] = new LatencyHistogram[] { new LatencyHistogram(), new LatencyHistogram() };
+            }
+        }
+        LatencyHistogram histogram = latencies[nextPlayer][round == 0 ? 0 : 1];
+        histogram.record(latencyNanos);
+        long deadline = round == 0 ? getMillisTimeForFirstRound() : getMillisTimeForRound();
+        if (latencyNanos <= deadline * 1_000_000L) {
+            return playTurn(outputs);
         }
+        histogram.timeout();
+        setPlayerTimeout(0, round, nextPlayer);
+        return endTurn(TurnOutcome.lost("timeout", nextPlayer));
     }
 
-    @SuppressWarnings("serial")
-    public static class OutputData extends LinkedList<String> {
-        private OutputCommand command;
-
-        public OutputData(OutputCommand command) {
-            this.command = command;
+    /**
+     * @param firstRound the response to the init input, which has a deadline of its own, or the other rounds
+     * @return the response times of the player so far, or null if no turn was timed
+     */
+    public LatencyHistogram getLatencies(int player, boolean firstRound) {
+        return latencies == null ? null : latencies[player][firstRound ? 0 : 1];
+    }
+
+    private TurnOutcome endTurn(TurnOutcome outcome) {
+        if (outcome.isWin()) {
+            playerStatus.score = getScore(nextPlayer);
+            playerStatus.win = true;
+            playerStatus.info = isHeadless() ? null : getReason(outcome);
+            playerStatus.reasonCode = outcome.getReasonCode();
+            lastPlayer = playerStatus;
+            endGame(null);
+        } else if (outcome.isLost()) {
+            playerStatus.score = getScore(nextPlayer);
+            playerStatus.lost = true;
+            playerStatus.info = isHeadless() ? null : getReason(outcome);
+            playerStatus.reasonCode = outcome.getReasonCode();
+            boolean otherPlayerIsDead = lastPlayer.lost;
+            lastPlayer = playerStatus;
+            //only end the game, if both players are dead
+            if (otherPlayerIsDead) {
+                endGame(null);
+            }
         }
-
-        public boolean add(String s) {
-            if (s != null)
-                return super.add(s);
-            return false;
+        if (!over) {
+            publish();
         }
+        return outcome;
+    }
 
-        public void addAll(String[] data) {
-            if (data != null)
-                super.addAll(Arrays.asList(data));
+    /**
+     * Writes the state of the turn loop, for snapshots of a game.
+     */
+    protected final void writeLoopState(DataOutput out) throws IOException {
+        out.writeByte(playerCount);
+        out.writeByte(alivePlayerCount);
+        out.writeByte(currentPlayer);
+        out.writeByte(nextPlayer);
+        out.writeByte(lastPlayer == null ? -1 : lastPlayer.id);
+        out.writeByte(playerStatus == null ? -1 : playerStatus.id);
+        out.writeInt(frame);
+        out.writeInt(round);
+        out.writeBoolean(newRound);
+        out.writeBoolean(over);
+        writeString(out, reasonCode);
+        writeString(out, reason);
+        for (PlayerStatus player : players) {
+            out.writeInt(player.score);
+            out.writeBoolean(player.lost);
+            out.writeBoolean(player.win);
+            writeString(out, player.info);
+            writeString(out, player.reasonCode);
+            out.writeInt(player.nextInput == null ? -1 : player.nextInput.length);
+            if (player.nextInput != null) {
+                for (String line : player.nextInput) {
+                    out.writeUTF(line);
+                }
+            }
         }
+        out.writeShort(tooltips.size());
+        for (Tooltip t : tooltips) {
+            out.writeByte(t.player);
+            writeString(out, t.message);
+        }
+    }
 
-        @Override
-        public String toString() {
-            StringWriter writer = new StringWriter();
-            PrintWriter out = new PrintWriter(writer);
-            out.println(this.command.format(this.size()));
-            for (String line : this) {
-                out.println(line);
+    /**
+     * Reads what {@link #writeLoopState(DataOutput)} wrote, after {@link #beginGame()}.
+     */
+    protected final void readLoopState(DataInput in) throws IOException {
+        if (in.readByte() != playerCount) {
+            throw new IOException("Snapshot of a game with another player count");
+        }
+        alivePlayerCount = in.readByte();
+        currentPlayer = in.readByte();
+        nextPlayer = in.readByte();
+        int last = in.readByte();
+        lastPlayer = last < 0 ? null : players[last];
+        int status = in.readByte();
+        playerStatus = status < 0 ? null : players[status];
+        frame = in.readInt();
+        round = in.readInt();
+        newRound = in.readBoolean();
+        over = in.readBoolean();
+        reasonCode = readString(in);
+        reason = readString(in);
+        for (PlayerStatus player : players) {
+            player.score = in.readInt();
+            player.lost = in.readBoolean();
+            player.win = in.readBoolean();
+            player.info = readString(in);
+            player.reasonCode = readString(in);
+            int lines = in.readInt();
+            player.nextInput = lines < 0 ? null : new String[lines];
+            for (int i = 0; i < lines; ++i) {
+                player.nextInput[i] = in.readUTF();
             }
-            return writer.toString().trim();
+        }
+        tooltips.clear();
+        for (int i = in.readShort(); i > 0; --i) {
+            tooltips.add(new Tooltip(in.readByte(), readString(in)));
         }
     }
 
-    private static class Tooltip {
-        int player;
-        String message;
-
-        public Tooltip(int player, String message) {
-            this.player = player;
-            this.message = message;
+    protected static void writeString(DataOutput out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
         }
     }
 
-    private Set<Tooltip> tooltips;
-    private int playerCount, alivePlayerCount;
-    private int currentPlayer, nextPlayer;
-    private PlayerStatus lastPlayer, playerStatus;
-    private int frame, round;
-    private PlayerStatus[] players;
-    private String[] initLines;
-    private boolean newRound;
-    private String reasonCode, reason;
+    protected static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
 
-    private InputStream is;
-    private PrintStream out;
-    private PrintStream err;
+    private String[] outputBuffer(int lineCount) {
+        if (outputs == null || outputs.length != lineCount) {
+            outputs = new String[lineCount];
+        }
+        return outputs;
+    }
 
-    public AbstractReferee(InputStream is, PrintStream out, PrintStream err) throws IOException {
-        tooltips = new HashSet<>();
-        this.is = is;
-        this.out = out;
-        this.err = err;
-        start();
+    private String outputHeader(int lineCount) {
+        if (outputHeaders[nextPlayer] == null || outputHeaderCounts[nextPlayer] != lineCount) {
+            outputHeaders[nextPlayer] = "###Output " + nextPlayer + " " + lineCount;
+            outputHeaderCounts[nextPlayer] = lineCount;
+        }
+        return outputHeaders[nextPlayer];
     }
 
-    @SuppressWarnings("resource")
-    public void start() throws IOException {
-        try {
-            handleInitInputForReferee(2, new String[0]);
-        } catch (InvalidFormatException e) {
+    private void endGame(String reasonCode) {
+        over = true;
+        newRound = true;
+        this.reasonCode = reasonCode;
+        reason = reasonCode != null ? translate(reasonCode) : null;
+        if (!isHeadless()) {
+            err.println(reason);
+        }
+        prepare(round);
+        updateScores();
+        publish();
+        String ranking;
+        if (players[0].score > players[1].score) {
+            ranking = "0 1";
+        } else if (players[0].score < players[1].score) {
+            ranking = "1 0";
+        } else {
+            ranking = "01";
+        }
+        log("###End " + ranking);
+        if (frames == null) {
+            out.println("###End " + ranking);
             return;
         }
-
-        Scanner s = new Scanner(is);
-
         try {
-            // Read ###Start 2
-            s.nextLine();
-            playerCount = alivePlayerCount = 2;
-            players = new PlayerStatus[2];
-            players[0] = new PlayerStatus(0);
-            players[1] = new PlayerStatus(1);
-            playerStatus = players[0];
-            currentPlayer = nextPlayer = 1;
-            round = -1;
-            newRound = true;
-
-            while (true) {
-                lastPlayer = playerStatus;
-                playerStatus = nextPlayer();
-
-                if (this.round >= getMaxRoundCount(this.playerCount)) {
-                    throw new GameOverException("maxRoundsCountReached");
-                }
-
-                if (newRound) {
-                    prepare(round);
-                    if (!this.isTurnBasedGame()) {
-                        for (PlayerStatus player : this.players) {
-                            if (!player.lost) {
-                                player.nextInput = getInputForPlayer(round, player.id);
-                            } else {
-                                player.nextInput = null;
-                            }
-                        }
-                    }
-                }
-
-                out.println("###Input " + nextPlayer);
-                if (this.round == 0) {
-                    for (String line : getInitInputForPlayer(nextPlayer)) {
-                        out.println(line);
-                    }
-                }
-
-                if (this.isTurnBasedGame()) {
-                    for (String line : getInputForPlayer(round, nextPlayer)) {
-                        out.println(line);
-                    }
-                } else {
-                    for (String line : this.players[nextPlayer].nextInput) {
-                        out.println(line);
-                    }
-                }
-
-                int expectedOutputLineCount = getExpectedOutputLineCountForPlayer(nextPlayer);
-                out.println("###Output " + nextPlayer + " " + expectedOutputLineCount);
-                try {
-                    String[] outputs = new String[expectedOutputLineCount];
-                    for (int i = 0; i < expectedOutputLineCount; i++) {
-                        outputs[i] = s.nextLine();
-                    }
-                    handlePlayerOutput(0, round, nextPlayer, outputs);
-                } catch (WinException e) {
-                    playerStatus.score = getScore(nextPlayer);
-                    playerStatus.win = true;
-                    playerStatus.info = e.getReason();
-                    playerStatus.reasonCode = e.getReasonCode();
-                    lastPlayer = playerStatus;
-                    throw new GameOverException(null);
-                } catch (LostException | InvalidInputException e) {
-                    playerStatus.score = getScore(nextPlayer);
-                    playerStatus.lost = true;
-                    playerStatus.info = e.getReason();
-                    playerStatus.reasonCode = e.getReasonCode();
-					boolean otherPlayerIsDead = lastPlayer.lost;
-					lastPlayer = playerStatus;
-					//only end the game, if both players are dead
-					if (otherPlayerIsDead)
-						throw new GameOverException(null);
-                }
-            }
-        } catch (GameOverException e) {
-            newRound = true;
-            reasonCode = e.getReasonCode();
-            reason = e.getReason();
-            err.println(reason);
-            prepare(round);
-            updateScores();
-            if (players[0].score > players[1].score) {
-                out.println("###End 0 1");
-            } else if (players[0].score < players[1].score) {
-                out.println("###End 1 0");
-            } else {
-                out.println("###End 01");
+            DataOutputStream frame = frames.begin(FRAME_END);
+            frame.writeByte(playerCount);
+            for (PlayerStatus player : players) {
+                frame.writeInt(player.score);
             }
-        } finally {
-            s.close();
+            frame.writeUTF(ranking);
+        } catch (IOException e) {
+            // not thrown by a byte array
+        }
+        frames.send(out);
+        out.flush();
+    }
+
+    private String getReason(TurnOutcome outcome) {
+        if (outcome.getReasonCode() != null) {
+            return translate(outcome.getReasonCode(), outcome.getValues());
+        } else {
+            return null;
         }
     }
 
-    private PlayerStatus nextPlayer() throws GameOverException {
+    /**
+     * @return the status of the next player to play, or null if the game is over
+     */
+    private PlayerStatus nextPlayer() {
         currentPlayer = nextPlayer;
         newRound = false;
         do {
             ++nextPlayer;
             if (nextPlayer >= playerCount) {
-                nextRound();
+                if (!nextRound()) {
+                    return null;
+                }
                 nextPlayer = 0;
             }
         } while (this.players[nextPlayer].lost || this.players[nextPlayer].win);
@@ -1401,11 +3544,11 @@ abstract class AbstractReferee {
     }
 
     protected final String translate(String code, Object... values) {
-        try {
-            return String.format((String) messages.get(code), values);
-        } catch (NullPointerException e) {
+        String format = (String) messages.get(code);
+        if (format == null) {
             return code;
         }
+        return String.format(format, values);
     }
 
     protected final void printError(Object message) {
@@ -1424,14 +3567,16 @@ abstract class AbstractReferee {
         return 400;
     }
 
-    private void nextRound() throws GameOverException {
+    /**
+     * @return false if the game is over
+     */
+    private boolean nextRound() {
         newRound = true;
         if (++round > 0) {
             updateGame(round);
         }
-        if (gameOver()) {
-            throw new GameOverException(null);
-        }
+        publish();
+        return !gameOver();
     }
 
     protected boolean gameIsOver() {
@@ -1447,18 +3592,78 @@ abstract class AbstractReferee {
             if (!players[i].lost && isPlayerDead(i)) {
                 alivePlayerCount--;
                 players[i].lost = true;
-                players[i].info = getDeathReason(i);
-                addToolTip(i, players[i].info);
+                if (!isHeadless()) {
+                    players[i].info = getDeathReason(i);
+                    addToolTip(i, players[i].info);
+                }
             }
             players[i].score = getScore(i);
         }
     }
 
     protected void addToolTip(int player, String message) {
-        if (showTooltips())
+        if (showTooltips() && !isHeadless())
             tooltips.add(new Tooltip(player, message));
     }
 
+    /**
+     * Headless games only produce the player inputs and the final result. Messages, reasons and tooltips, which only
+     * feed the view, the summary and the infos, are not computed.
+     */
+    protected boolean isHeadless() {
+        return false;
+    }
+
+    /**
+     * @return a writer of its own for {@link #start()} to log every line of the game to, finished after the game, or
+     *         null to log nothing
+     */
+    protected TranscriptWriter openTranscripts() throws IOException {
+        return null;
+    }
+
+    /**
+     * @return the file name of the transcript of the game, see {@link TranscriptWriter#open(String)}
+     */
+    protected String getTranscriptName() {
+        return "game";
+    }
+
+    /**
+     * Whether a driver may choose the binary protocol, see {@link #start()}, played with
+     * {@link #writeBinaryGameInfo(DataOutput)}, {@link #writeBinaryInput(int, int, DataOutput)} and
+     * {@link #readBinaryAnswer(int, String)}.
+     */
+    protected boolean supportsBinaryProtocol() {
+        return false;
+    }
+
+    /**
+     * Writes what the players learn once, the binary counterpart of the init input.
+     */
+    protected abstract void writeBinaryGameInfo(DataOutput out) throws IOException;
+
+    /**
+     * Writes the input of a turn, the binary counterpart of {@link #writeInputForPlayer(int, int, List)}.
+     */
+    protected abstract void writeBinaryInput(int round, int playerIdx, DataOutput out) throws IOException;
+
+    /**
+     * @param action the action of an answer frame
+     * @param text the string of an answer frame
+     * @return the output line the answer stands for
+     */
+    protected abstract String readBinaryAnswer(int action, String text);
+
+    /**
+     * Whether the referee times the answers it reads from its input stream and times out the players that miss their
+     * deadline, instead of leaving that to the driver. Only meant for drivers that answer in process, where the time
+     * between the ###Output header and the answer is the time the bot took.
+     */
+    protected boolean enforcesDeadlines() {
+        return false;
+    }
+
     /**
      * Add message (key = reasonCode, value = reason)
      *
@@ -1472,6 +3677,8 @@ abstract class AbstractReferee {
 
     protected abstract void handleInitInputForReferee(int playerCount, String[] init) throws InvalidFormatException;
 
+    protected abstract void handleInitInputForReferee(int playerCount, Properties init) throws InvalidFormatException;
+
     protected abstract String[] getInitDataForView();
 
     protected abstract String[] getFrameDataForView(int round, int frame, boolean keyFrame);
@@ -1482,12 +3689,23 @@ abstract class AbstractReferee {
 
     protected abstract void appendDataToEnd(PrintStream stream) throws IOException;
 
-    protected abstract void handlePlayerOutput(int frame, int round, int playerIdx, String[] output) throws WinException, LostException, InvalidInputException;
+    /**
+     * @return {@link TurnOutcome#OK}, or the reason the player wins or loses
+     */
+    protected abstract TurnOutcome handlePlayerOutput(int frame, int round, int playerIdx, String[] output);
 
     protected abstract String[] getInitInputForPlayer(int playerIdx);
 
     protected abstract String[] getInputForPlayer(int round, int playerIdx);
 
+    /**
+     * Adds the input of a player for a round to lines. Overriding it as well as
+     * {@link #getInputForPlayer(int, int)} saves building an array every turn.
+     */
+    protected void writeInputForPlayer(int round, int playerIdx, List<String> lines) {
+        Collections.addAll(lines, getInputForPlayer(round, playerIdx));
+    }
+
     protected abstract String getHeadlineAtGameStartForConsole();
 
     protected abstract int getMinimumPlayerCount();
@@ -1496,10 +3714,30 @@ abstract class AbstractReferee {
 
     /**
      * @param round
-     * @return scores of all players
-     * @throws GameOverException
      */
-    protected abstract void updateGame(int round) throws GameOverException;
+    protected abstract void updateGame(int round);
+
+    /**
+     * Called whenever spectators would see the game change: a new round, a turn played and the end of the game.
+     */
+    protected void publish() {
+    }
+
+    /**
+     * Called once spectators can no longer follow the game: after its end, or when it is abandoned by an exception or a
+     * {@link #reset(Properties)}. A driver that abandons a game otherwise calls it itself.
+     */
+    protected void unpublish() {
+    }
+
+    /**
+     * Called before every turn, to end games whose result is already decided.
+     *
+     * @return the reason code to end the game with, or null to play on
+     */
+    protected String adjudicate() {
+        return null;
+    }
 
     protected abstract void prepare(int round);
 
@@ -0,0 +1,62 @@
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Properties;
+
+/**
+ * Keeps the referees of finished games, driven by the caller, to play the next games in place of new ones, see
+ * {@link AbstractReferee#reset(Properties)}. A game played on a reset referee is the game a new referee would play.
+ */
+class RefereePool {
+    private final PrintStream out, err;
+    private final int size;
+    private final Deque<Referee> idle = new ArrayDeque<>();
+    private long acquired, reused;
+
+    /**
+     * @param out where every referee prints the end of its games
+     * @param size how many idle referees to keep at most
+     */
+    RefereePool(PrintStream out, PrintStream err, int size) {
+        this.out = out;
+        this.err = err;
+        this.size = size;
+    }
+
+    /**
+     * @return a referee for a game with these init properties, to go on with {@link AbstractReferee#initGame()}
+     */
+    Referee acquire(Properties init) {
+        Referee referee;
+        synchronized (idle) {
+            acquired++;
+            referee = idle.pollFirst();
+            if (referee != null) {
+                reused++;
+            }
+        }
+        if (referee == null) {
+            referee = new Referee(out, err, new String[0]);
+        }
+        referee.reset(init);
+        return referee;
+    }
+
+    /**
+     * Takes back a referee once its game is over, or was never begun. The caller no longer uses it.
+     */
+    void release(Referee referee) {
+        synchronized (idle) {
+            if (idle.size() < size) {
+                idle.addFirst(referee);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (idle) {
+            return String.format("%d referees acquired: %d reused (%.1f%%)", acquired, reused, acquired == 0 ? 0 : 100.0 * reused / acquired);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects finished games from any number of threads and keeps win/draw/loss counts, score margins and Elo
+ * differences up to date, broken down by map type and seat. Counters are {@link LongAdder}s, so recording a game never
+ * takes a lock, and the Elo estimates are derived from the counters, so they do not depend on the order games finish.
+ *
+ * <pre>
+ * java -cp cg-ww.jar ResultsAggregator print results.snap
+ * </pre>
+ */
+class ResultsAggregator implements Closeable {
+    private static final int MAGIC = 0x57575241; // "WWRA"
+    private static final int VERSION = 1;
+    static final String ANY = "*";
+
+    /**
+     * Results from the point of view of the first bot of a {@link Key}.
+     */
+    static class Tally {
+        final LongAdder wins = new LongAdder();
+        final LongAdder draws = new LongAdder();
+        final LongAdder losses = new LongAdder();
+        final LongAdder margin = new LongAdder();
+        final LongAdder marginSquares = new LongAdder();
+
+        void add(int outcome, int scoreMargin) {
+            if (outcome > 0) {
+                wins.increment();
+            } else if (outcome < 0) {
+                losses.increment();
+            } else {
+                draws.increment();
+            }
+            margin.add(scoreMargin);
+            marginSquares.add((long) scoreMargin * scoreMargin);
+        }
+
+        long[] values() {
+            return new long[] { wins.sum(), draws.sum(), losses.sum(), margin.sum(), marginSquares.sum() };
+        }
+    }
+
+    /**
+     * Statistics derived from the counters of a tally: {wins, draws, losses, margin sum, squared margin sum}.
+     */
+    static class Stats {
+        final long wins, draws, losses, games;
+        final double score, meanMargin, marginDeviation;
+        final double elo, eloLow, eloHigh;
+
+        Stats(long[] values) {
+            wins = values[0];
+            draws = values[1];
+            losses = values[2];
+            games = wins + draws + losses;
+            score = games == 0 ? 0.5 : (wins + 0.5 * draws) / games;
+            meanMargin = games == 0 ? 0 : (double) values[3] / games;
+            marginDeviation = games == 0 ? 0 : Math.sqrt(Math.max(0, (double) values[4] / games - meanMargin * meanMargin));
+            // 95% interval of the mean game score, mapped to Elo
+            double variance = games == 0 ? 0
+                    : (wins * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2) + losses * Math.pow(score, 2)) / games;
+            double error = games == 0 ? 0 : 1.96 * Math.sqrt(variance / games);
+            elo = elo(score);
+            eloLow = elo(score - error);
+            eloHigh = elo(score + error);
+        }
+
+        private static double elo(double score) {
+            double clamped = Math.max(1e-6, Math.min(1 - 1e-6, score));
+            return -400 * Math.log10(1 / clamped - 1);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%6d games %6d/%d/%-6d score %.3f  elo %+7.1f [%+7.1f, %+7.1f]  margin %+.2f (sd %.2f)", games, wins,
+                    draws, losses, score, elo, eloLow, eloHigh, meanMargin, marginDeviation);
+        }
+    }
+
+    /**
+     * Identifies a breakdown: a bot, against an opponent or {@link #ANY}, on a map type or {@link #ANY}, from a seat or
+     * {@link #ANY}.
+     */
+    static String key(String bot, String opponent, String mapType, String seat) {
+        return bot + '\t' + opponent + '\t' + mapType + '\t' + seat;
+    }
+
+    static String mapType(Properties configuration) {
+        if (configuration.get("boardSize") != null) {
+            return "stress";
+        }
+        switch (String.valueOf(configuration.get("mapIndex"))) {
+        case "0":
+            return "square";
+        case "1":
+            return "diamond";
+        case "2":
+            return "random";
+        default:
+            return "unknown";
+        }
+    }
+
+    private final ConcurrentHashMap<String, Tally> tallies = new ConcurrentHashMap<>();
+    private final File snapshotFile;
+    private ScheduledExecutorService scheduler;
+
+    ResultsAggregator() {
+        this(null, 0);
+    }
+
+    /**
+     * @param snapshotFile where to write snapshots, rewritten atomically every period and on {@link #close()}
+     */
+    ResultsAggregator(File snapshotFile, long periodMillis) {
+        this.snapshotFile = snapshotFile;
+        if (snapshotFile != null && periodMillis > 0) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "results-snapshot");
+                t.setDaemon(true);
+                return t;
+            });
+            scheduler.scheduleAtFixedRate(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.err.println("Cannot write results snapshot: " + e.getMessage());
+                }
+            }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Tally tally(String key) {
+        Tally tally = tallies.get(key);
+        if (tally == null) {
+            tally = tallies.computeIfAbsent(key, k -> new Tally());
+        }
+        return tally;
+    }
+
+    /**
+     * Records a finished game, safe to call from any thread.
+     */
+    void record(String bot0, String bot1, LocalGame.Result result) {
+        record(new String[] { bot0, bot1 }, result.scores, result.winner(), mapType(result.configuration));
+    }
+
+    void record(String[] bots, int[] scores, int winner, String mapType) {
+        for (int seat = 0; seat < 2; ++seat) {
+            String bot = bots[seat];
+            String opponent = bots[1 - seat];
+            int outcome = winner < 0 ? 0 : winner == seat ? 1 : -1;
+            int scoreMargin = scores[seat] - scores[1 - seat];
+            String seatName = String.valueOf(seat);
+            tally(key(bot, ANY, ANY, ANY)).add(outcome, scoreMargin);
+            tally(key(bot, ANY, mapType, ANY)).add(outcome, scoreMargin);
+            tally(key(bot, ANY, ANY, seatName)).add(outcome, scoreMargin);
+            tally(key(bot, opponent, ANY, ANY)).add(outcome, scoreMargin);
+            tally(key(bot, opponent, mapType, ANY)).add(outcome, scoreMargin);
+            tally(key(bot, opponent, ANY, seatName)).add(outcome, scoreMargin);
+        }
+    }
+
+    Stats stats(String key) {
+        Tally tally = tallies.get(key);
+        return new Stats(tally == null ? new long[5] : tally.values());
+    }
+
+    /**
+     * @return a consistent-enough copy of all counters, sorted by key
+     */
+    SortedMap<String, long[]> values() {
+        SortedMap<String, long[]> values = new TreeMap<>();
+        for (Map.Entry<String, Tally> e : tallies.entrySet()) {
+            values.put(e.getKey(), e.getValue().values());
+        }
+        return values;
+    }
+
+    /**
+     * Writes the snapshot file, one writer at a time: they share the temporary file.
+     */
+    synchronized void snapshot() throws IOException {
+        if (snapshotFile == null) {
+            return;
+        }
+        SortedMap<String, long[]> values = values();
+        File tmp = new File(snapshotFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(values.size());
+            for (Map.Entry<String, long[]> e : values.entrySet()) {
+                out.writeUTF(e.getKey());
+                for (long v : e.getValue()) {
+                    out.writeLong(v);
+                }
+            }
+        }
+        if (!tmp.renameTo(snapshotFile)) {
+            snapshotFile.delete();
+            if (!tmp.renameTo(snapshotFile)) {
+                throw new IOException("Cannot replace " + snapshotFile);
+            }
+        }
+    }
+
+    static SortedMap<String, long[]> read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a results snapshot: " + file);
+            }
+            in.readLong();
+            int count = in.readInt();
+            SortedMap<String, long[]> values = new TreeMap<>();
+            for (int i = 0; i < count; ++i) {
+                String key = in.readUTF();
+                long[] v = new long[5];
+                for (int j = 0; j < v.length; ++j) {
+                    v[j] = in.readLong();
+                }
+                values.put(key, v);
+            }
+            return values;
+        }
+    }
+
+    static void print(SortedMap<String, long[]> values, PrintStream out) {
+        for (Map.Entry<String, long[]> e : values.entrySet()) {
+            String[] k = e.getKey().split("\t");
+            out.println(String.format("%-20s vs %-20s map=%-8s seat=%-2s %s", k[0], k[1], k[2], k[3], new Stats(e.getValue())));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            // a periodic snapshot that is being written ends before the last one
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        snapshot();
+    }
+
+    public static void main(String... args) throws IOException {
+        if (args.length != 2 || !args[0].equals("print")) {
+            System.err.println("usage: ResultsAggregator print <snapshot>");
+            return;
+        }
+        print(read(new File(args[1])), System.out);
+    }
+}
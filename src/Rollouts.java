@@ -0,0 +1,300 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Estimates the chances of both players in a game position from playouts to the end of the game, on a thread pool.
+ * Every playout is a copy of the game, see {@link Referee#snapshot()}, driven by its own turn loop with the rules of the
+ * referee, so it ends like a game would. From the view of a player, the units of the other player it does not see are
+ * first moved to random cells it does not see, see {@link Referee#determinize(int, Random)}.
+ *
+ * <pre>
+ * java -cp cg-ww.jar Rollouts [seed=0] [turn=20] [rollouts=10000] [millis=0] [threads=N] [policy=random|greedy]
+ *      [perspective=-1] [rolloutSeed=0] [verify=false]
+ * </pre>
+ *
+ * Playout i only depends on the seed and i, so the estimate of the first n playouts does not depend on the threads.
+ * With a time budget the playouts still running when it is over are left out, along with those after them. The tool
+ * plays random legal moves up to a turn of a game, estimates the position, and prints the playouts per second and the
+ * estimate after every doubling of the playouts. With "verify=true" it estimates again on a single thread and exits
+ * with status 1 if a playout ended differently.
+ */
+class Rollouts implements Closeable {
+    private static final PrintStream DISCARD = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private static final byte NOT_PLAYED = -1, DRAW = 2;
+
+    enum Policy {
+        // a random legal action
+        RANDOM,
+        // the legal action with the best Bots.evaluate value right after it, the first of equal ones in a random order
+        GREEDY
+    }
+
+    /**
+     * The outcome of every playout, in the order of their seeds.
+     */
+    static class Estimate {
+        // the winner of every playout, or DRAW
+        private final byte[] outcomes;
+        final int rollouts;
+        final long nanos;
+
+        private Estimate(byte[] outcomes, int rollouts, long nanos) {
+            this.outcomes = outcomes;
+            this.rollouts = rollouts;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return the share of the first n playouts the player won, a draw counting half
+         */
+        double winProbability(int player, int n) {
+            return points(player, n, false) / n;
+        }
+
+        double winProbability(int player) {
+            return winProbability(player, rollouts);
+        }
+
+        /**
+         * @return the half width of the 95% confidence interval of {@link #winProbability(int, int)}
+         */
+        double margin(int player, int n) {
+            double p = winProbability(player, n);
+            double variance = points(player, n, true) / n - p * p;
+            return 1.96 * Math.sqrt(Math.max(0, variance) / n);
+        }
+
+        /**
+         * @return the share of the first n playouts that ended in a draw
+         */
+        double drawProbability(int n) {
+            int draws = 0;
+            for (int i = 0; i < n; ++i) {
+                if (outcomes[i] == DRAW) {
+                    draws++;
+                }
+            }
+            return (double) draws / n;
+        }
+
+        double rolloutsPerSecond() {
+            return rollouts / (nanos / 1e9);
+        }
+
+        boolean sameOutcomes(Estimate other) {
+            int n = Math.min(rollouts, other.rollouts);
+            for (int i = 0; i < n; ++i) {
+                if (outcomes[i] != other.outcomes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private double points(int player, int n, boolean squared) {
+            double points = 0;
+            for (int i = 0; i < n; ++i) {
+                if (outcomes[i] == player) {
+                    points += 1;
+                } else if (outcomes[i] == DRAW) {
+                    points += squared ? 0.25 : 0.5;
+                }
+            }
+            return points;
+        }
+    }
+
+    private final int threads;
+    private final ExecutorService pool;
+
+    Rollouts(int threads) {
+        this.threads = Math.max(1, threads);
+        pool = Executors.newFixedThreadPool(this.threads);
+    }
+
+    /**
+     * @param game a game between two turns, which is left alone
+     * @param perspective the player whose view the playouts start from, or -1 to start from the game as it is
+     * @param maxMillis when to stop the playouts, or 0 to play all of them
+     */
+    Estimate estimate(Referee game, int perspective, Policy policy, long seed, int maxRollouts, long maxMillis) throws Exception {
+        byte[] snapshot = game.snapshot();
+        byte[] outcomes = new byte[maxRollouts];
+        Arrays.fill(outcomes, NOT_PLAYED);
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        long deadline = maxMillis > 0 ? start + maxMillis * 1_000_000L : Long.MAX_VALUE;
+        List<Future<?>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; ++t) {
+            workers.add(pool.submit(() -> {
+                Random random = new Random();
+                Referee.ActionResult result = new Referee.ActionResult();
+                String[] outputs = new String[1];
+                for (int i = next.getAndIncrement(); i < maxRollouts && System.nanoTime() < deadline; i = next.getAndIncrement()) {
+                    random.setSeed(seed * 1_000_003L + i);
+                    outcomes[i] = rollout(snapshot, perspective, policy, random, result, outputs);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        long nanos = System.nanoTime() - start;
+        int played = 0;
+        while (played < maxRollouts && outcomes[played] != NOT_PLAYED) {
+            played++;
+        }
+        return new Estimate(outcomes, played, nanos);
+    }
+
+    /**
+     * @return the winner of the playout, or DRAW
+     */
+    private static byte rollout(byte[] snapshot, int perspective, Policy policy, Random random, Referee.ActionResult result, String[] outputs)
+            throws IOException {
+        Referee game = Referee.restore(snapshot, DISCARD, DISCARD);
+        if (perspective >= 0) {
+            game.determinize(perspective, random);
+        }
+        Referee.Action[] actions = game.getActions();
+        long[] mask = new long[(actions.length + 63) / 64];
+        while (game.nextTurn()) {
+            int player = game.getNextPlayer();
+            System.arraycopy(game.getLegalMask(player), 0, mask, 0, mask.length);
+            int action = policy == Policy.GREEDY ? greedy(game, player, mask, random, result) : uniform(mask, random);
+            outputs[0] = action < 0 ? "ACCEPT-DEFEAT" : actions[action].toPlayerString();
+            game.playTurn(outputs);
+        }
+        int a = game.getScore(0), b = game.getScore(1);
+        return a > b ? 0 : a < b ? (byte) 1 : DRAW;
+    }
+
+    /**
+     * @return a random legal action, or -1 if there is none
+     */
+    private static int uniform(long[] mask, Random random) {
+        int count = 0;
+        for (long word : mask) {
+            count += Long.bitCount(word);
+        }
+        if (count == 0) {
+            return -1;
+        }
+        int n = random.nextInt(count);
+        for (int w = 0;; ++w) {
+            int bits = Long.bitCount(mask[w]);
+            if (n < bits) {
+                long word = mask[w];
+                for (; n > 0; --n) {
+                    word &= word - 1;
+                }
+                return w * 64 + Long.numberOfTrailingZeros(word);
+            }
+            n -= bits;
+        }
+    }
+
+    /**
+     * @return the legal action with the best value for the player, or -1 if there is none
+     */
+    private static int greedy(Referee game, int player, long[] mask, Random random, Referee.ActionResult result) {
+        int best = -1, bestValue = Integer.MIN_VALUE, ties = 0;
+        for (int w = 0; w < mask.length; ++w) {
+            for (long word = mask[w]; word != 0; word &= word - 1) {
+                int action = w * 64 + Long.numberOfTrailingZeros(word);
+                Referee.Point from = game.play(player, action, result);
+                int value = player == 0 ? Bots.evaluate(game) : -Bots.evaluate(game);
+                game.undo(player, result, from);
+                if (value > bestValue) {
+                    best = action;
+                    bestValue = value;
+                    ties = 1;
+                } else if (value == bestValue && random.nextInt(++ties) == 0) {
+                    best = action;
+                }
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    public static void main(String... args) throws Exception {
+        Properties p = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                p.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        int turn = Integer.parseInt(p.getProperty("turn", "20"));
+        int rollouts = Integer.parseInt(p.getProperty("rollouts", "10000"));
+        long millis = Long.parseLong(p.getProperty("millis", "0"));
+        int threads = Integer.parseInt(p.getProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        Policy policy = Policy.valueOf(p.getProperty("policy", "random").toUpperCase());
+        int perspective = Integer.parseInt(p.getProperty("perspective", "-1"));
+        long rolloutSeed = Long.parseLong(p.getProperty("rolloutSeed", "0"));
+
+        Referee game = new Referee(DISCARD, DISCARD, new String[] { "seed=" + seed, "headless=true" });
+        if (!game.initGame()) {
+            System.err.println("Invalid configuration");
+            System.exit(1);
+        }
+        game.beginGame();
+        Bench.Driver driver = new Bench.Driver(game, seed);
+        while (driver.turn < turn && driver.step(null)) {
+        }
+        if (game.isOver()) {
+            System.err.println("The game is over before turn " + turn);
+            System.exit(1);
+        }
+        System.out.println(String.format("seed %d, turn %d, round %d, scores %d-%d", seed, driver.turn, game.getRound(), game.getScore(0),
+                game.getScore(1)));
+
+        boolean ok = true;
+        try (Rollouts estimator = new Rollouts(threads)) {
+            Estimate estimate = estimator.estimate(game, perspective, policy, rolloutSeed, rollouts, millis);
+            System.out.println(String.format("%d %s playouts%s in %.2f s on %d threads, %.0f playouts/s", estimate.rollouts,
+                    policy.name().toLowerCase(), perspective < 0 ? "" : " from the view of player " + perspective, estimate.nanos / 1e9, threads,
+                    estimate.rolloutsPerSecond()));
+            System.out.println(String.format("%9s %9s %9s %9s %9s", "playouts", "player 0", "+-", "draws", "off by"));
+            double last = estimate.winProbability(0);
+            for (int n = 100; n <= estimate.rollouts; n = n * 2 > estimate.rollouts && n < estimate.rollouts ? estimate.rollouts : n * 2) {
+                double p0 = estimate.winProbability(0, n);
+                System.out.println(String.format("%9d %9.3f %9.3f %9.3f %9.3f", n, p0, estimate.margin(0, n), estimate.drawProbability(n),
+                        Math.abs(p0 - last)));
+            }
+            if (Boolean.parseBoolean(p.getProperty("verify", "false"))) {
+                try (Rollouts single = new Rollouts(1)) {
+                    Estimate again = single.estimate(game, perspective, policy, rolloutSeed, estimate.rollouts, 0);
+                    ok = again.rollouts == estimate.rollouts && again.sameOutcomes(estimate);
+                    System.out.println(String.format("1 thread: %.0f playouts/s, %s", again.rolloutsPerSecond(), ok ? "same outcomes" : "DIFFERENT"));
+                }
+            }
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+}
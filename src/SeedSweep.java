@@ -0,0 +1,311 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Runs the map generator and the start position logic of {@link Referee} for a range of seeds, without playing, and
+ * writes a catalog of the resulting setups that can be queried by map properties.
+ *
+ * <pre>
+ * java -cp cg-ww.jar SeedSweep sweep from=0 to=1000000 out=maps.cat [units=2] [symmetric=false] [mapIndex=-1] [threads=N]
+ * java -cp cg-ww.jar SeedSweep stats maps.cat
+ * java -cp cg-ww.jar SeedSweep query maps.cat [mapIndex=2] [cells=30] [minCells=..] [maxCells=..] [size=6] [limit=100]
+ * </pre>
+ *
+ * The catalog starts with an index of all (mapIndex, cell count) pairs, pointing to the records of that pair, sorted by
+ * seed. Queries on these two properties only read the matching records.
+ */
+class SeedSweep {
+    private static final int MAGIC = 0x57575343; // "WWSC"
+    private static final int VERSION = 1;
+    private static final int LEAF_SIZE = 4096;
+    // shapes are stored as a bit mask of y * MAX_SHAPE_SIZE + x
+    private static final int MAX_SHAPE_SIZE = 8;
+
+    public static void main(String... args) throws IOException {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        switch (args[0]) {
+        case "sweep":
+            sweep(parse(args, 1));
+            break;
+        case "stats":
+            stats(args[1]);
+            break;
+        case "query":
+            query(args[1], parse(args, 2));
+            break;
+        default:
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: SeedSweep sweep from=<seed> to=<seed> out=<file> [units=2] [symmetric=false] [mapIndex=-1] [threads=N]");
+        System.err.println("       SeedSweep stats <file>");
+        System.err.println("       SeedSweep query <file> [mapIndex=..] [cells=..] [minCells=..] [maxCells=..] [size=..] [limit=..]");
+    }
+
+    private static Properties parse(String[] args, int from) {
+        Properties p = new Properties();
+        for (int i = from; i < args.length; ++i) {
+            int eq = args[i].indexOf('=');
+            if (eq > 0) {
+                p.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        return p;
+    }
+
+    static class Record {
+        long seed;
+        int mapIndex, size, cells;
+        long shape;
+        byte[] positions;
+
+        static int bytes(int units) {
+            return 8 + 3 + 8 + 2 * units;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeLong(seed);
+            out.writeByte(mapIndex);
+            out.writeByte(size);
+            out.writeByte(cells);
+            out.writeLong(shape);
+            out.write(positions);
+        }
+
+        static Record read(DataInput in, int units) throws IOException {
+            Record r = new Record();
+            r.seed = in.readLong();
+            r.mapIndex = in.readByte();
+            r.size = in.readUnsignedByte();
+            r.cells = in.readUnsignedByte();
+            r.shape = in.readLong();
+            r.positions = new byte[2 * units];
+            in.readFully(r.positions);
+            return r;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(seed).append(' ').append(mapIndex).append(' ').append(size).append(' ').append(cells).append(' ');
+            sb.append(String.format("%016x", shape));
+            for (byte p : positions) {
+                sb.append(' ').append((p >> 4) & 0xF).append(',').append(p & 0xF);
+            }
+            return sb.toString();
+        }
+    }
+
+    private static Record describe(Referee.Setup setup, int units) {
+        Record r = new Record();
+        r.seed = setup.seed;
+        r.mapIndex = setup.mapIndex;
+        r.size = setup.grid.size;
+        for (int y = 0; y < r.size; ++y) {
+            for (int x = 0; x < r.size; ++x) {
+                if (setup.grid.get(x, y) != null) {
+                    r.cells++;
+                    r.shape |= 1L << (y * MAX_SHAPE_SIZE + x);
+                }
+            }
+        }
+        r.positions = new byte[2 * units];
+        for (int i = 0; i < setup.positions.length; ++i) {
+            r.positions[i] = (byte) (setup.positions[i].x << 4 | setup.positions[i].y);
+        }
+        return r;
+    }
+
+    private static int key(int mapIndex, int cells) {
+        return mapIndex << 8 | cells;
+    }
+
+    @SuppressWarnings("serial")
+    private static class SweepTask extends RecursiveTask<TreeMap<Integer, ByteArrayOutputStream>> {
+        private final long from, to;
+        private final int mapIndex, units;
+        private final boolean symmetric;
+
+        SweepTask(long from, long to, int mapIndex, boolean symmetric, int units) {
+            this.from = from;
+            this.to = to;
+            this.mapIndex = mapIndex;
+            this.symmetric = symmetric;
+            this.units = units;
+        }
+
+        @Override
+        protected TreeMap<Integer, ByteArrayOutputStream> compute() {
+            if (to - from > LEAF_SIZE) {
+                long mid = from + (to - from) / 2;
+                SweepTask left = new SweepTask(from, mid, mapIndex, symmetric, units);
+                SweepTask right = new SweepTask(mid, to, mapIndex, symmetric, units);
+                right.fork();
+                TreeMap<Integer, ByteArrayOutputStream> merged = left.compute();
+                // appending right after left keeps every bucket sorted by seed
+                for (Map.Entry<Integer, ByteArrayOutputStream> e : right.join().entrySet()) {
+                    ByteArrayOutputStream bucket = merged.get(e.getKey());
+                    if (bucket == null) {
+                        merged.put(e.getKey(), e.getValue());
+                    } else {
+                        bucket.write(e.getValue().toByteArray(), 0, e.getValue().size());
+                    }
+                }
+                return merged;
+            }
+
+            TreeMap<Integer, ByteArrayOutputStream> buckets = new TreeMap<>();
+            try {
+                for (long seed = from; seed < to; ++seed) {
+                    Record r = describe(Referee.Setup.create(seed, mapIndex, symmetric, 2, units), units);
+                    ByteArrayOutputStream bucket = buckets.get(key(r.mapIndex, r.cells));
+                    if (bucket == null) {
+                        bucket = new ByteArrayOutputStream();
+                        buckets.put(key(r.mapIndex, r.cells), bucket);
+                    }
+                    r.write(new DataOutputStream(bucket));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return buckets;
+        }
+    }
+
+    private static void sweep(Properties p) throws IOException {
+        long from = Long.parseLong(p.getProperty("from", "0"));
+        long to = Long.parseLong(p.getProperty("to", "100000"));
+        String out = p.getProperty("out", "maps.cat");
+        int units = Integer.parseInt(p.getProperty("units", "2"));
+        boolean symmetric = Boolean.parseBoolean(p.getProperty("symmetric", "false"));
+        int mapIndex = Integer.parseInt(p.getProperty("mapIndex", "-1"));
+        int threads = Integer.parseInt(p.getProperty("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        TreeMap<Integer, ByteArrayOutputStream> buckets;
+        try {
+            buckets = pool.invoke(new SweepTask(from, to, mapIndex, symmetric, units));
+        } finally {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)))) {
+            dos.writeInt(MAGIC);
+            dos.writeShort(VERSION);
+            dos.writeByte(units);
+            dos.writeBoolean(symmetric);
+            dos.writeLong(from);
+            dos.writeLong(to);
+            dos.writeInt(buckets.size());
+            long offset = headerBytes(buckets.size());
+            int recordBytes = Record.bytes(units);
+            for (Map.Entry<Integer, ByteArrayOutputStream> e : buckets.entrySet()) {
+                dos.writeByte(e.getKey() >> 8);
+                dos.writeByte(e.getKey() & 0xFF);
+                dos.writeLong(offset);
+                dos.writeInt(e.getValue().size() / recordBytes);
+                offset += e.getValue().size();
+            }
+            for (ByteArrayOutputStream bucket : buckets.values()) {
+                bucket.writeTo(dos);
+            }
+        }
+        System.err.println(String.format("%d seeds in %.2fs on %d threads: %.0f seeds/s, %d index entries -> %s", to - from, seconds,
+                threads, (to - from) / seconds, buckets.size(), out));
+    }
+
+    private static long headerBytes(int keyCount) {
+        return 4 + 2 + 1 + 1 + 8 + 8 + 4 + keyCount * (1 + 1 + 8 + 4);
+    }
+
+    private static class IndexEntry {
+        int mapIndex, cells, count;
+        long offset;
+    }
+
+    private static class Catalog implements Closeable {
+        final RandomAccessFile file;
+        final int units;
+        final boolean symmetric;
+        final long from, to;
+        final List<IndexEntry> index = new ArrayList<>();
+
+        Catalog(String path) throws IOException {
+            file = new RandomAccessFile(path, "r");
+            if (file.readInt() != MAGIC || file.readShort() != VERSION) {
+                file.close();
+                throw new IOException("Not a seed catalog: " + path);
+            }
+            units = file.readByte();
+            symmetric = file.readBoolean();
+            from = file.readLong();
+            to = file.readLong();
+            int keys = file.readInt();
+            for (int i = 0; i < keys; ++i) {
+                IndexEntry e = new IndexEntry();
+                e.mapIndex = file.readByte();
+                e.cells = file.readUnsignedByte();
+                e.offset = file.readLong();
+                e.count = file.readInt();
+                index.add(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            file.close();
+        }
+    }
+
+    private static void stats(String path) throws IOException {
+        try (Catalog catalog = new Catalog(path)) {
+            System.out.println(String.format("seeds [%d, %d), units=%d, symmetric=%s", catalog.from, catalog.to, catalog.units, catalog.symmetric));
+            System.out.println("mapIndex cells count");
+            for (IndexEntry e : catalog.index) {
+                System.out.println(e.mapIndex + " " + e.cells + " " + e.count);
+            }
+        }
+    }
+
+    private static void query(String path, Properties p) throws IOException {
+        int mapIndex = Integer.parseInt(p.getProperty("mapIndex", "-1"));
+        int minCells = Integer.parseInt(p.getProperty("minCells", p.getProperty("cells", "0")));
+        int maxCells = Integer.parseInt(p.getProperty("maxCells", p.getProperty("cells", "255")));
+        int size = Integer.parseInt(p.getProperty("size", "-1"));
+        long limit = Long.parseLong(p.getProperty("limit", String.valueOf(Long.MAX_VALUE)));
+
+        try (Catalog catalog = new Catalog(path)) {
+            int recordBytes = Record.bytes(catalog.units);
+            long found = 0;
+            for (IndexEntry e : catalog.index) {
+                if ((mapIndex >= 0 && e.mapIndex != mapIndex) || e.cells < minCells || e.cells > maxCells) {
+                    continue;
+                }
+                catalog.file.seek(e.offset);
+                byte[] chunk = new byte[Math.min(e.count, LEAF_SIZE) * recordBytes];
+                for (int read = 0; read < e.count && found < limit; ) {
+                    int n = Math.min(e.count - read, LEAF_SIZE);
+                    catalog.file.readFully(chunk, 0, n * recordBytes);
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(chunk, 0, n * recordBytes));
+                    for (int i = 0; i < n && found < limit; ++i) {
+                        Record r = Record.read(in, catalog.units);
+                        if (size < 0 || r.size == size) {
+                            System.out.println(r);
+                            found++;
+                        }
+                    }
+                    read += n;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the setups of a list of games on background threads, ahead of the threads that play them: the map, with the
+ * island counting of the generated ones, and the start positions, see {@link Referee.Setup}. Ready games wait in a
+ * bounded queue, in the order they are ready, which is about the order of the list.
+ *
+ * A setup only depends on the init properties of its game, so a referee created with them after
+ * {@link Referee.Setup#prepare(Referee.Setup)} plays exactly the game it would play building its own, see
+ * {@link LocalGame#setSetup(Referee.Setup)}.
+ */
+class SetupPrefetcher implements Closeable {
+    /**
+     * A game of the list with its setup, or without one if building it failed: the referee then builds its own.
+     */
+    static class Game {
+        final int index;
+        final String[] init;
+        final Referee.Setup setup;
+
+        private Game(int index, String[] init, Referee.Setup setup) {
+            this.index = index;
+            this.init = init;
+            this.setup = setup;
+        }
+    }
+
+    private final List<String[]> inits;
+    private final BlockingQueue<Game> ready;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicLong nanos = new AtomicLong();
+    private final Thread[] threads;
+
+    /**
+     * @param inits the init properties of every game
+     * @param capacity how many ready games may wait to be played
+     */
+    SetupPrefetcher(List<String[]> inits, int threads, int capacity) {
+        this.inits = inits;
+        ready = new ArrayBlockingQueue<>(Math.max(1, capacity));
+        this.threads = new Thread[Math.max(1, threads)];
+        for (int t = 0; t < this.threads.length; ++t) {
+            this.threads[t] = new Thread(this::prefetch, "setup-" + t);
+            this.threads[t].setDaemon(true);
+            this.threads[t].start();
+        }
+    }
+
+    private void prefetch() {
+        try {
+            for (int i = next.getAndIncrement(); i < inits.size(); i = next.getAndIncrement()) {
+                String[] init = inits.get(i);
+                long start = System.nanoTime();
+                Referee.Setup setup;
+                try {
+                    setup = Referee.Setup.create(2, Referee.properties(init));
+                } catch (RuntimeException e) {
+                    setup = null;
+                }
+                nanos.addAndGet(System.nanoTime() - start);
+                ready.put(new Game(i, init, setup));
+            }
+        } catch (InterruptedException e) {
+            // closed before every game was taken
+        }
+    }
+
+    /**
+     * Waits for the next ready game. Take at most as many games as there are in the list.
+     */
+    Game take() throws InterruptedException {
+        return ready.take();
+    }
+
+    /**
+     * @return the time the background threads spent building setups
+     */
+    long getNanos() {
+        return nanos.get();
+    }
+
+    @Override
+    public void close() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+}
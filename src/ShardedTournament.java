@@ -0,0 +1,432 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A {@link Tournament} split into units of games in a directory, played by worker processes on any number of hosts
+ * that share it.
+ *
+ * <pre>
+ * java -cp cg-ww.jar ShardedTournament plan dir=shards bots=a,b a=&lt;command&gt; b=&lt;command&gt; [a.reset=true] [games=10000]
+ *      [seed=0] [unit=100] [deadlines=true]
+ * java -cp cg-ww.jar ShardedTournament work dir=shards [worker=&lt;id&gt;] [threads=1] [pool=1] [lease=600] [&lt;bot&gt;=&lt;command&gt;]
+ * java -cp cg-ww.jar ShardedTournament merge dir=shards [results=results.snap]
+ * </pre>
+ *
+ * The plan writes the tournament to plan.properties and an empty file per unit to todo/. A worker claims a unit by
+ * renaming its file to claimed/&lt;unit&gt;@&lt;worker&gt;, which only succeeds for one worker, appends a line per
+ * game to it and moves it to done/ once the unit is complete. A worker that restarts with the same id resumes its
+ * claims, and a claim that was not written to for lease seconds is taken over by any worker, with the games already
+ * played. The merge reads the done units in game order, so its totals do not depend on the number of workers or on
+ * the order units finished, as long as the bots play a game the same way every time.
+ */
+class ShardedTournament {
+    private static final String PLAN = "plan.properties";
+    private static final String TODO = "todo", CLAIMED = "claimed", DONE = "done";
+
+    public static void main(String... args) throws Exception {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Properties p = new Properties();
+        for (int i = 1; i < args.length; ++i) {
+            int eq = args[i].indexOf('=');
+            if (eq > 0) {
+                p.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        if (p.getProperty("dir") == null) {
+            usage();
+            return;
+        }
+        File dir = new File(p.getProperty("dir"));
+        switch (args[0]) {
+        case "plan":
+            if (!plan(dir, p)) {
+                System.exit(1);
+            }
+            break;
+        case "work":
+            work(dir, p);
+            break;
+        case "merge":
+            merge(dir, p);
+            break;
+        default:
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: ShardedTournament plan dir=<dir> bots=<name>,<name> <name>=<command> [<name>.reset=true] [games=10000]");
+        System.err.println("                              [seed=0] [unit=100] [deadlines=true]");
+        System.err.println("       ShardedTournament work dir=<dir> [worker=<id>] [threads=1] [pool=1] [lease=600] [<name>=<command>]");
+        System.err.println("       ShardedTournament merge dir=<dir> [results=<file>]");
+    }
+
+    private static String unitName(int unit) {
+        return String.format("unit-%06d", unit);
+    }
+
+    private static int unitIndex(String fileName) {
+        int at = fileName.indexOf('@');
+        return Integer.parseInt(fileName.substring("unit-".length(), at < 0 ? fileName.length() : at));
+    }
+
+    private static Properties loadPlan(File dir) throws IOException {
+        Properties plan = new Properties();
+        try (Reader in = new InputStreamReader(new FileInputStream(new File(dir, PLAN)), StandardCharsets.UTF_8)) {
+            plan.load(in);
+        }
+        return plan;
+    }
+
+    private static boolean plan(File dir, Properties p) throws IOException {
+        if (Tournament.specs(p) == null) {
+            usage();
+            return false;
+        }
+        if (new File(dir, PLAN).exists()) {
+            System.err.println("There is a plan in " + dir + " already");
+            return false;
+        }
+        for (String sub : new String[] { TODO, CLAIMED, DONE }) {
+            File d = new File(dir, sub);
+            if (!d.isDirectory() && !d.mkdirs()) {
+                throw new IOException("Cannot create " + d);
+            }
+        }
+        int games = Integer.parseInt(p.getProperty("games", "10000"));
+        int unit = Integer.parseInt(p.getProperty("unit", "100"));
+        Properties plan = new Properties();
+        plan.putAll(p);
+        plan.remove("dir");
+        plan.setProperty("games", String.valueOf(games));
+        plan.setProperty("unit", String.valueOf(unit));
+        int units = (games + unit - 1) / unit;
+        for (int u = 0; u < units; ++u) {
+            new File(new File(dir, TODO), unitName(u)).createNewFile();
+        }
+        // written last, a worker only starts on a complete plan
+        File tmp = new File(dir, PLAN + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            plan.store(out, null);
+        }
+        if (!tmp.renameTo(new File(dir, PLAN))) {
+            throw new IOException("Cannot write " + new File(dir, PLAN));
+        }
+        System.out.println(units + " units of " + unit + " games in " + dir);
+        return true;
+    }
+
+    /**
+     * Claims and plays units of a plan until none is left, on a thread pool sharing the bot processes.
+     */
+    private static void work(File dir, Properties p) throws Exception {
+        Properties plan = loadPlan(dir);
+        // the commands may differ from host to host
+        plan.putAll(p);
+        List<BotPool.Spec> specs = Tournament.specs(plan);
+        String worker = p.getProperty("worker", ManagementFactory.getRuntimeMXBean().getName().replace('@', '-'));
+        int threads = Integer.parseInt(p.getProperty("threads", "1"));
+        int poolSize = Integer.parseInt(p.getProperty("pool", "1"));
+        long leaseMillis = 1000 * Long.parseLong(p.getProperty("lease", "600"));
+        boolean deadlines = Boolean.parseBoolean(plan.getProperty("deadlines", "false"));
+        long answerTimeout = Long.parseLong(plan.getProperty("answerTimeout", deadlines ? "2000" : "-1"));
+
+        Claims claims = new Claims(dir, worker, leaseMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (BotPool pool = new BotPool(specs, poolSize, Long.parseLong(plan.getProperty("resetTimeout", "1000")), answerTimeout)) {
+            pool.prestart();
+            List<Future<Integer>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                workers.add(executor.submit(() -> {
+                    int played = 0;
+                    File claim;
+                    while ((claim = claims.next()) != null) {
+                        try {
+                            played += playUnit(claim, plan, specs, pool, new File(new File(dir, DONE), unitName(unitIndex(claim.getName()))));
+                        } finally {
+                            claims.release(claim);
+                        }
+                    }
+                    return played;
+                }));
+            }
+            int played = 0;
+            for (Future<Integer> w : workers) {
+                played += w.get();
+            }
+            System.out.println(worker + ": " + played + " games played, no unit left to claim");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The units claimed by a worker process, shared by its threads.
+     */
+    static class Claims {
+        private final File todo, claimed;
+        private final String suffix;
+        private final long leaseMillis;
+        // claims of this worker that one of its threads plays
+        private final Set<String> active = new HashSet<>();
+
+        Claims(File dir, String worker, long leaseMillis) {
+            todo = new File(dir, TODO);
+            claimed = new File(dir, CLAIMED);
+            suffix = "@" + worker;
+            this.leaseMillis = leaseMillis;
+        }
+
+        /**
+         * @return a claimed unit: one this worker claimed before it restarted, a new one, or an abandoned one, in that
+         *         order; null if there is none
+         */
+        synchronized File next() {
+            for (File f : sorted(claimed)) {
+                if (f.getName().endsWith(suffix) && active.add(f.getName())) {
+                    return f;
+                }
+            }
+            for (File f : sorted(todo)) {
+                File claim = new File(claimed, f.getName() + suffix);
+                if (f.renameTo(claim)) {
+                    // a rename keeps the time of the plan, which would make the claim look abandoned
+                    claim.setLastModified(System.currentTimeMillis());
+                    active.add(claim.getName());
+                    return claim;
+                }
+            }
+            long stale = System.currentTimeMillis() - leaseMillis;
+            for (File f : sorted(claimed)) {
+                if (!f.getName().endsWith(suffix) && f.lastModified() < stale) {
+                    File claim = new File(claimed, f.getName().substring(0, f.getName().indexOf('@')) + suffix);
+                    if (f.renameTo(claim)) {
+                        claim.setLastModified(System.currentTimeMillis());
+                        active.add(claim.getName());
+                        return claim;
+                    }
+                }
+            }
+            return null;
+        }
+
+        synchronized void release(File claim) {
+            active.remove(claim.getName());
+        }
+
+        private static File[] sorted(File dir) {
+            File[] files = dir.listFiles();
+            if (files == null) {
+                return new File[0];
+            }
+            Arrays.sort(files);
+            return files;
+        }
+    }
+
+    /**
+     * Plays the games of a claimed unit that are not in it yet, appending a line per game, then moves it to done.
+     *
+     * @return the number of games played
+     */
+    private static int playUnit(File claim, Properties plan, List<BotPool.Spec> specs, BotPool pool, File done) throws IOException {
+        int unit = Integer.parseInt(plan.getProperty("unit"));
+        int games = Integer.parseInt(plan.getProperty("games"));
+        long seed = Long.parseLong(plan.getProperty("seed", "0"));
+        boolean deadlines = Boolean.parseBoolean(plan.getProperty("deadlines", "false"));
+        List<String[]> pairs = Tournament.pairings(specs);
+
+        Set<Integer> played;
+        try {
+            played = gameNumbers(readLines(claim));
+        } catch (NoSuchFileException e) {
+            // taken over since it was claimed
+            return 0;
+        }
+        int first = unitIndex(claim.getName()) * unit;
+        int count = 0;
+        for (int game = first; game < Math.min(first + unit, games); ++game) {
+            if (played.contains(game)) {
+                continue;
+            }
+            String[] pair = pairs.get(game % pairs.size());
+            LocalGame.Result result = Tournament.play(pool, Tournament.init(seed, game, deadlines), null, pair, null);
+            String line = game + "\t" + pair[0] + "\t" + pair[1] + "\t" + result.scores[0] + "\t" + result.scores[1] + "\t" + result.winner()
+                    + "\t" + ResultsAggregator.mapType(result.configuration) + "\t" + result.turns + "\n";
+            if (!append(claim.toPath(), line)) {
+                // taken over after the lease ran out, the other worker finishes the unit
+                return count;
+            }
+            count++;
+        }
+        try {
+            finish(claim.toPath(), done.toPath());
+        } catch (NoSuchFileException e) {
+            // taken over after the lease ran out, the other worker finishes the unit
+        }
+        return count;
+    }
+
+    /**
+     * Moves a complete claim to done, never replacing a done unit: if there is one, the games of the claim it does not
+     * have are added to it.
+     */
+    private static void finish(Path claim, Path done) throws IOException {
+        try {
+            try {
+                // a link fails if there is a done unit, where a rename would replace it
+                Files.createLink(done, claim);
+            } catch (UnsupportedOperationException e) {
+                // no links on this file system, a move that does not replace comes close
+                Files.move(claim, done);
+                return;
+            }
+        } catch (FileAlreadyExistsException e) {
+            // the unit was also finished by a worker that took it over, each may have played games the other did not
+            Set<Integer> merged = gameNumbers(readLines(done.toFile()));
+            for (String line : readLines(claim.toFile())) {
+                if (merged.add(gameNumber(line)) && !append(done, line + "\n")) {
+                    throw new IOException("Cannot add to " + done);
+                }
+            }
+        }
+        Files.delete(claim);
+    }
+
+    /**
+     * Appends a line to a unit file, without creating it.
+     *
+     * @return false if there is no such file, e.g. a claim that was taken over
+     */
+    private static boolean append(Path file, String line) throws IOException {
+        try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static int gameNumber(String line) {
+        return Integer.parseInt(line.substring(0, line.indexOf('\t')));
+    }
+
+    private static Set<Integer> gameNumbers(List<String> lines) {
+        Set<Integer> games = new HashSet<>();
+        for (String line : lines) {
+            games.add(gameNumber(line));
+        }
+        return games;
+    }
+
+    /**
+     * @return the complete lines of a unit file; a line cut by a crash is removed from the file
+     */
+    private static List<String> readLines(File file) throws IOException {
+        byte[] bytes;
+        // not created if it is gone, e.g. a claim that was taken over
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            bytes = buffer.array();
+            int end = buffer.position();
+            while (end > 0 && bytes[end - 1] != '\n') {
+                end--;
+            }
+            if (end < bytes.length) {
+                channel.truncate(end);
+                bytes = Arrays.copyOf(bytes, end);
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @return the numbers of the games that are not in the set, as ranges, e.g. "100-199, 250"
+     */
+    private static String missing(Set<Integer> played, int games) {
+        StringBuilder missing = new StringBuilder();
+        for (int game = 0; game < games; ++game) {
+            if (played.contains(game)) {
+                continue;
+            }
+            int last = game;
+            while (last + 1 < games && !played.contains(last + 1)) {
+                last++;
+            }
+            if (missing.length() > 0) {
+                missing.append(", ");
+            }
+            missing.append(game);
+            if (last > game) {
+                missing.append('-').append(last);
+            }
+            game = last;
+        }
+        return missing.toString();
+    }
+
+    /**
+     * Merges the done units in game order into results.tsv of the directory, and prints the totals.
+     */
+    private static void merge(File dir, Properties p) throws IOException {
+        Properties plan = loadPlan(dir);
+        int games = Integer.parseInt(plan.getProperty("games"));
+        int unit = Integer.parseInt(plan.getProperty("unit"));
+        int units = (games + unit - 1) / unit;
+
+        File[] done = Claims.sorted(new File(dir, DONE));
+        SortedMap<Integer, String> lines = new TreeMap<>();
+        for (File f : done) {
+            for (String line : readLines(f)) {
+                // a game played twice, by a worker that lost its claim, plays the same
+                lines.putIfAbsent(gameNumber(line), line);
+            }
+        }
+        if (done.length < units) {
+            System.err.println(done.length + " of " + units + " units done, merging those");
+        }
+        if (lines.size() < games) {
+            System.err.println(games - lines.size() + " games missing: " + missing(lines.keySet(), games));
+        }
+
+        File results = p.getProperty("results") == null ? null : new File(p.getProperty("results"));
+        try (ResultsAggregator aggregator = new ResultsAggregator(results, 0)) {
+            File tmp = new File(dir, "results.tsv.tmp");
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8))) {
+                for (String line : lines.values()) {
+                    out.write(line);
+                    out.write('\n');
+                    String[] f = line.split("\t");
+                    aggregator.record(new String[] { f[1], f[2] }, new int[] { Integer.parseInt(f[3]), Integer.parseInt(f[4]) },
+                            Integer.parseInt(f[5]), f[6]);
+                }
+            }
+            File merged = new File(dir, "results.tsv");
+            merged.delete();
+            if (!tmp.renameTo(merged)) {
+                throw new IOException("Cannot write " + merged);
+            }
+            ResultsAggregator.print(Tournament.filter(aggregator.values()), System.out);
+            System.out.println(lines.size() + " games of " + games + " merged into " + merged);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Startup of the referee in a fresh process, for drivers that launch one per game.
+ *
+ * <pre>
+ * java -XX:ArchiveClassesAtExit=cg-ww.jsa -cp cg-ww.jar Startup train [games=50]
+ * java -cp cg-ww.jar Startup bench [launches=20] [archive=cg-ww.jsa] [jvmArgs=-Xshare:auto,-XX:TieredStopAtLevel=1]
+ * </pre>
+ *
+ * The training run plays in-process games of every game version and board type, so that the class data sharing archive
+ * written at exit holds every class a game loads. Launches then map it with -XX:SharedArchiveFile, which needs Java 13
+ * or later and the same class path as the training run.
+ */
+class Startup {
+
+    public static void main(String... args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            usage();
+            return;
+        }
+        Properties p = new Properties();
+        for (int i = 1; i < args.length; ++i) {
+            int eq = args[i].indexOf('=');
+            if (eq > 0) {
+                p.setProperty(args[i].substring(0, eq), args[i].substring(eq + 1));
+            }
+        }
+        switch (args[0]) {
+        case "train":
+            train(p);
+            break;
+        case "bench":
+            bench(p);
+            break;
+        default:
+            usage();
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: Startup train [games=50]");
+        System.err.println("       Startup bench [launches=20] [archive=<file>] [jvmArgs=<arg>,<arg>]");
+    }
+
+    private static void train(Properties p) throws IOException {
+        int games = Integer.parseInt(p.getProperty("games", "50"));
+        int version = Referee.GAME_VERSION;
+        PrintStream err = new PrintStream(new ByteArrayOutputStream());
+        try {
+            for (int i = 0; i < games; ++i) {
+                Referee.GAME_VERSION = i % (version + 1);
+                String[] init = i % 5 == 4 ? new String[] { "seed=" + i, "boardSize=8", "units=4" } : new String[] { "seed=" + i, "mapIndex=" + i % 3 };
+                LocalGame game = new LocalGame(init, new Bots.RandomLegal(2 * i), new Bots.RandomLegal(2 * i + 1));
+                game.setErr(err);
+                game.play();
+            }
+        } finally {
+            Referee.GAME_VERSION = version;
+        }
+        System.err.println(games + " games played");
+    }
+
+    /**
+     * Launches the referee repeatedly and measures the time until it prints its first ###Input line, without and with
+     * the archive if one is given.
+     */
+    private static void bench(Properties p) throws IOException, InterruptedException {
+        int launches = Integer.parseInt(p.getProperty("launches", "20"));
+        List<String> jvmArgs = new ArrayList<>();
+        if (p.getProperty("jvmArgs") != null) {
+            jvmArgs.addAll(Arrays.asList(p.getProperty("jvmArgs").split(",")));
+        }
+        String archive = p.getProperty("archive");
+
+        report("default", launch(jvmArgs, launches));
+        if (archive != null) {
+            List<String> shared = new ArrayList<>(jvmArgs);
+            shared.add("-XX:SharedArchiveFile=" + archive);
+            report("archive", launch(shared, launches));
+        }
+    }
+
+    private static double[] launch(List<String> jvmArgs, int launches) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.addAll(jvmArgs);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Referee");
+        // the first launch only warms up the file system cache
+        double[] millis = new double[launches];
+        for (int i = -1; i < launches; ++i) {
+            long start = System.nanoTime();
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try {
+                Writer in = new OutputStreamWriter(process.getOutputStream());
+                in.write("###Start 2\n");
+                in.flush();
+                BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                String line;
+                while ((line = out.readLine()) != null && !line.startsWith("###Input")) {
+                }
+                if (line == null) {
+                    throw new IOException("The referee exited before its first input: " + command);
+                }
+                if (i >= 0) {
+                    millis[i] = (System.nanoTime() - start) / 1e6;
+                }
+            } finally {
+                process.destroy();
+                process.waitFor();
+            }
+        }
+        Arrays.sort(millis);
+        return millis;
+    }
+
+    private static void report(String name, double[] millis) {
+        System.out.println(String.format("%-8s %3d launches: min %6.1f ms  median %6.1f ms  p90 %6.1f ms", name, millis.length, millis[0],
+                millis[millis.length / 2], millis[Math.min(millis.length - 1, millis.length * 9 / 10)]));
+    }
+}
@@ -0,0 +1,262 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Plays games between bot programs on this machine, with the referee in process and the bot processes kept in a
+ * {@link BotPool}.
+ *
+ * <pre>
+ * java -cp cg-ww.jar Tournament bots=a,b a=&lt;command&gt; b=&lt;command&gt; [a.reset=true] [games=100] [seed=0] [threads=1]
+ *      [pool=1] [resetTimeout=1000] [results=results.snap] [deadlines=true] [answerTimeout=2000]
+ *      [transcripts=dir] [transcriptBuffer=4194304] [transcriptFiles=1000] [live=1000] [adjudicate=true]
+ *      [prefetch=0]
+ * </pre>
+ *
+ * Games cycle through every ordered pair of bots, so both play every seat. A bot with "reset=true" keeps its process
+ * between games, see {@link BotPool}. With "deadlines=true" the referee times every answer, a bot that misses the
+ * deadline of its round loses by timeout, and the response times of every bot are printed at the end. A bot that does
+ * not answer at all gets an empty line after answerTimeout milliseconds. With "transcripts" every game is logged to a
+ * file of the directory, see {@link TranscriptWriter}. With "live" the games being played are printed to the error
+ * stream every that many milliseconds, from their views, see {@link Referee#watch(String)}. With "adjudicate=true"
+ * games end as soon as their ranking can no longer change, see {@link Referee#adjudicate()}. With "prefetch" that many
+ * background threads build the maps and start positions of the games ahead of the threads that play them, see
+ * {@link SetupPrefetcher}; the games are the same.
+ */
+class Tournament {
+
+    public static void main(String... args) throws Exception {
+        Properties p = new Properties();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                p.setProperty(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+        List<BotPool.Spec> specs = specs(p);
+        if (specs == null) {
+            usage();
+            return;
+        }
+        run(specs, p);
+    }
+
+    /**
+     * @return the bots named by "bots", or null if there are none or one has no command
+     */
+    static List<BotPool.Spec> specs(Properties p) {
+        if (p.getProperty("bots") == null) {
+            return null;
+        }
+        List<BotPool.Spec> specs = new ArrayList<>();
+        for (String name : p.getProperty("bots").split(",")) {
+            if (p.getProperty(name) == null) {
+                System.err.println("No command for bot " + name);
+                return null;
+            }
+            specs.add(new BotPool.Spec(name, p.getProperty(name), Boolean.parseBoolean(p.getProperty(name + ".reset", "false"))));
+        }
+        return specs;
+    }
+
+    private static void usage() {
+        System.err.println("usage: Tournament bots=<name>,<name> <name>=<command> [<name>.reset=true] [games=100] [seed=0] [threads=1]");
+        System.err.println("                  [pool=1] [resetTimeout=1000] [results=<file>] [deadlines=true] [answerTimeout=2000]");
+        System.err.println("                  [transcripts=<dir>] [transcriptBuffer=4194304] [transcriptFiles=1000] [live=<ms>]");
+        System.err.println("                  [adjudicate=true] [prefetch=0]");
+    }
+
+    /**
+     * @return every ordered pair of distinct bots, or a bot against itself if there is only one
+     */
+    static List<String[]> pairings(List<BotPool.Spec> specs) {
+        List<String[]> pairs = new ArrayList<>();
+        for (BotPool.Spec a : specs) {
+            for (BotPool.Spec b : specs) {
+                if (a != b || specs.size() == 1) {
+                    pairs.add(new String[] { a.name, b.name });
+                }
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * @return the init properties of a game, which only depend on its index in the tournament
+     */
+    static String[] init(long seed, int game, boolean deadlines) {
+        return new String[] { "seed=" + (seed + game), "headless=true", "deadlines=" + deadlines };
+    }
+
+    private static void run(List<BotPool.Spec> specs, Properties p) throws Exception {
+        int games = Integer.parseInt(p.getProperty("games", "100"));
+        long seed = Long.parseLong(p.getProperty("seed", "0"));
+        int threads = Integer.parseInt(p.getProperty("threads", "1"));
+        int poolSize = Integer.parseInt(p.getProperty("pool", "1"));
+        long resetTimeout = Long.parseLong(p.getProperty("resetTimeout", "1000"));
+        String results = p.getProperty("results");
+        String transcripts = p.getProperty("transcripts");
+        boolean deadlines = Boolean.parseBoolean(p.getProperty("deadlines", "false"));
+        long answerTimeout = Long.parseLong(p.getProperty("answerTimeout", deadlines ? "2000" : "-1"));
+        long live = Long.parseLong(p.getProperty("live", "0"));
+        boolean adjudicate = Boolean.parseBoolean(p.getProperty("adjudicate", "false"));
+        int prefetch = Integer.parseInt(p.getProperty("prefetch", "0"));
+        AtomicInteger adjudicated = new AtomicInteger();
+        // per bot, the first round then the other rounds
+        Map<String, Referee.LatencyHistogram[]> latencies = new TreeMap<>();
+        for (BotPool.Spec spec : specs) {
+            latencies.put(spec.name, new Referee.LatencyHistogram[] { new Referee.LatencyHistogram(), new Referee.LatencyHistogram() });
+        }
+
+        List<String[]> pairs = pairings(specs);
+        List<String> names = new ArrayList<>(games);
+        List<String[]> inits = new ArrayList<>(games);
+        for (int i = 0; i < games; ++i) {
+            String[] pair = pairs.get(i % pairs.size());
+            names.add("game-" + (seed + i) + "-" + pair[0] + "-" + pair[1]);
+            String[] init = init(seed, i, deadlines);
+            if (live > 0) {
+                init = with(init, "live=" + names.get(i));
+            }
+            if (adjudicate) {
+                init = with(init, "adjudicate=true");
+            }
+            inits.add(init);
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Thread dashboard = live > 0 ? dashboard(live) : null;
+        SetupPrefetcher prefetcher = prefetch > 0 ? new SetupPrefetcher(inits, prefetch, 4 * threads) : null;
+        try (BotPool pool = new BotPool(specs, poolSize, resetTimeout, answerTimeout);
+                ResultsAggregator aggregator = new ResultsAggregator(results == null ? null : new File(results), 10_000);
+                TranscriptWriter transcript = transcripts == null ? null
+                        : new TranscriptWriter(new File(transcripts), Integer.parseInt(p.getProperty("transcriptBuffer", "4194304")),
+                                Integer.parseInt(p.getProperty("transcriptFiles", "1000")))) {
+            pool.prestart();
+            List<Future<?>> played = new ArrayList<>();
+            for (int i = 0; i < games; ++i) {
+                int index = i;
+                played.add(executor.submit(() -> {
+                    // with prefetching, the next game that is ready rather than the next one of the list
+                    SetupPrefetcher.Game ready = prefetcher == null ? null : prefetcher.take();
+                    int game = ready == null ? index : ready.index;
+                    String[] pair = pairs.get(game % pairs.size());
+                    LocalGame.Result result = play(pool, inits.get(game), ready == null ? null : ready.setup, pair,
+                            transcript == null ? null : transcript.open(names.get(game)));
+                    aggregator.record(pair[0], pair[1], result);
+                    if ("adjudicated".equals(result.reason)) {
+                        adjudicated.incrementAndGet();
+                    }
+                    if (result.latencies != null) {
+                        synchronized (latencies) {
+                            for (int seat = 0; seat < pair.length; ++seat) {
+                                for (int r = 0; r < 2; ++r) {
+                                    latencies.get(pair[seat])[r].add(result.latencies[seat][r]);
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> game : played) {
+                game.get();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            ResultsAggregator.print(filter(aggregator.values()), System.out);
+            System.out.println(String.format("%d games in %.1f s, %.1f games/s", games, seconds, games / seconds));
+            if (adjudicate) {
+                System.out.println(adjudicated + " games adjudicated");
+            }
+            System.out.println(pool);
+            if (transcript != null) {
+                transcript.finish();
+                System.out.println(transcript);
+            }
+            if (deadlines) {
+                for (Map.Entry<String, Referee.LatencyHistogram[]> e : latencies.entrySet()) {
+                    System.out.println(String.format("%-20s %-12s %s", e.getKey(), "first round", e.getValue()[0]));
+                    System.out.println(String.format("%-20s %-12s %s", e.getKey(), "other rounds", e.getValue()[1]));
+                }
+            }
+        } finally {
+            executor.shutdown();
+            if (prefetcher != null) {
+                prefetcher.close();
+            }
+            if (dashboard != null) {
+                dashboard.interrupt();
+            }
+        }
+    }
+
+    private static String[] with(String[] init, String property) {
+        String[] with = Arrays.copyOf(init, init.length + 1);
+        with[init.length] = property;
+        return with;
+    }
+
+    /**
+     * Prints the view of every game being played to the error stream, every interval milliseconds. It only reads the
+     * published views, without slowing down the games.
+     */
+    private static Thread dashboard(long interval) {
+        Thread dashboard = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(interval);
+                    for (String name : Referee.liveGames()) {
+                        Referee.LiveView view = Referee.watch(name);
+                        if (view != null) {
+                            System.err.println(name + ": " + view);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                // the tournament is over
+            }
+        }, "dashboard");
+        dashboard.setDaemon(true);
+        dashboard.start();
+        return dashboard;
+    }
+
+    /**
+     * @param setup the setup of the game built ahead of time, or null
+     * @param transcript where to log the game, or null
+     */
+    static LocalGame.Result play(BotPool pool, String[] init, Referee.Setup setup, String[] pair, TranscriptWriter.Game transcript)
+            throws IOException {
+        BotPool.ProcessBot[] bots = new BotPool.ProcessBot[pair.length];
+        try {
+            for (int i = 0; i < pair.length; ++i) {
+                bots[i] = pool.acquire(pair[i]);
+            }
+            return new LocalGame(init, bots).setSetup(setup).setTranscript(transcript).play();
+        } finally {
+            for (BotPool.ProcessBot bot : bots) {
+                if (bot != null) {
+                    pool.release(bot);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the totals per bot and per opponent, without the breakdowns by map type and seat
+     */
+    static SortedMap<String, long[]> filter(SortedMap<String, long[]> values) {
+        SortedMap<String, long[]> totals = new TreeMap<>();
+        String suffix = "\t" + ResultsAggregator.ANY + "\t" + ResultsAggregator.ANY;
+        for (Map.Entry<String, long[]> e : values.entrySet()) {
+            if (e.getKey().endsWith(suffix)) {
+                totals.put(e.getKey(), e.getValue());
+            }
+        }
+        return totals;
+    }
+}
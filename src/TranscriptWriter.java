@@ -0,0 +1,340 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the protocol traffic of games to one gzip file per game, on a background thread, so that logging never stalls
+ * a game.
+ * <p>
+ * Games hand over whole protocol blocks, a header line and the lines after it, through a bounded ring buffer. When a
+ * block does not fit, it is dropped rather than waited for: the transcript then has a "###Dropped &lt;bytes&gt;" line
+ * where the block was, and the bytes are counted in {@link #getDroppedBytes()}. Only the files of the last games to end
+ * are kept, older ones are deleted as games end.
+ */
+class TranscriptWriter implements Closeable {
+    // record: game id, bytes dropped before the block, block length or END
+    private static final int HEADER = 12;
+    private static final int END = -1;
+
+    /**
+     * The transcript of one game, to be used by the thread playing it.
+     */
+    class Game {
+        private final int id;
+        private byte[] block = new byte[1024];
+        private int length;
+        private int dropped;
+
+        private Game(int id) {
+            this.id = id;
+        }
+
+        /**
+         * Adds a line of the protocol, as sent or received. A line starting with "###" starts a new block.
+         */
+        void line(String line) {
+            if (line.startsWith("###") && length > 0) {
+                flush();
+            }
+            int n = line.length();
+            ensure(length + n + 1);
+            for (int i = 0; i < n; ++i) {
+                char c = line.charAt(i);
+                if (c >= 0x80) {
+                    // not ASCII, rare enough to encode the line again
+                    byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+                    ensure(length + bytes.length + 1);
+                    System.arraycopy(bytes, 0, block, length, bytes.length);
+                    length += bytes.length;
+                    n = -1;
+                    break;
+                }
+                block[length + i] = (byte) c;
+            }
+            if (n >= 0) {
+                length += n;
+            }
+            block[length++] = '\n';
+        }
+
+        private void ensure(int capacity) {
+            if (capacity > block.length) {
+                block = Arrays.copyOf(block, Math.max(capacity, 2 * block.length));
+            }
+        }
+
+        private void flush() {
+            if (offer(id, dropped, block, length)) {
+                dropped = 0;
+            } else {
+                dropped += length;
+            }
+            length = 0;
+        }
+
+        /**
+         * Ends the game, its file is closed once the writer thread got every block before.
+         */
+        void end() {
+            if (length > 0) {
+                flush();
+            }
+            if (!offer(id, dropped, null, END)) {
+                // never lost, or the file would stay open
+                pendingEnds.add(new int[] { id, dropped });
+                signal();
+            }
+        }
+    }
+
+    private final File directory;
+    private final int maxFiles;
+    private final byte[] ring;
+    // positions in the ring, only growing, guarded by the lock
+    private long head, tail;
+    private final Object lock = new Object();
+    private final ConcurrentLinkedQueue<int[]> pendingEnds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger ids = new AtomicInteger();
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+    // the files to rotate, oldest first, only used by the writer thread once it started
+    private final ArrayDeque<File> written = new ArrayDeque<>();
+    private final AtomicLong acceptedBytes = new AtomicLong(), droppedBytes = new AtomicLong(), droppedBlocks = new AtomicLong(),
+            writtenBytes = new AtomicLong(), files = new AtomicLong(), deletedFiles = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+    private IOException failure;
+
+    /**
+     * @param bufferBytes the size of the ring buffer, what games can get ahead of the disk
+     * @param maxFiles how many transcripts to keep in the directory, those of the games of this writer that ended first
+     *        are deleted
+     */
+    TranscriptWriter(File directory, int bufferBytes, int maxFiles) throws IOException {
+        this(directory, bufferBytes, maxFiles, false);
+    }
+
+    /**
+     * @param existing whether the transcripts already in the directory count as ended before the games of this writer,
+     *        the least recently modified first, so that writers of one game each still keep at most maxFiles
+     */
+    TranscriptWriter(File directory, int bufferBytes, int maxFiles, boolean existing) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        if (existing) {
+            File[] files = directory.listFiles((dir, name) -> name.endsWith(".txt.gz"));
+            if (files != null) {
+                Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+                written.addAll(Arrays.asList(files));
+            }
+        }
+        this.directory = directory;
+        this.maxFiles = maxFiles;
+        ring = new byte[bufferBytes];
+        writer = new Thread(this::run, "transcript-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @param name the file name of the transcript, without the ".txt.gz" extension
+     */
+    Game open(String name) {
+        int id = ids.incrementAndGet();
+        names.put(id, name);
+        return new Game(id);
+    }
+
+    /**
+     * @return false if the block was dropped, because the ring buffer is full or the writer closed
+     */
+    private boolean offer(int game, int droppedBefore, byte[] block, int length) {
+        int size = HEADER + Math.max(0, length);
+        synchronized (lock) {
+            if (closed || size > ring.length - (head - tail)) {
+                if (length > 0) {
+                    droppedBytes.addAndGet(length);
+                    droppedBlocks.incrementAndGet();
+                }
+                return false;
+            }
+            putInt(game);
+            putInt(droppedBefore);
+            putInt(length);
+            if (length > 0) {
+                int at = (int) (head % ring.length);
+                int first = Math.min(length, ring.length - at);
+                System.arraycopy(block, 0, ring, at, first);
+                System.arraycopy(block, first, ring, 0, length - first);
+                head += length;
+                acceptedBytes.addAndGet(length);
+            }
+            lock.notify();
+        }
+        return true;
+    }
+
+    private void signal() {
+        synchronized (lock) {
+            lock.notify();
+        }
+    }
+
+    private void putInt(int v) {
+        for (int shift = 24; shift >= 0; shift -= 8) {
+            ring[(int) (head++ % ring.length)] = (byte) (v >>> shift);
+        }
+    }
+
+    private int takeInt() {
+        int v = 0;
+        for (int i = 0; i < 4; ++i) {
+            v = v << 8 | ring[(int) (tail++ % ring.length)] & 0xFF;
+        }
+        return v;
+    }
+
+    private void run() {
+        Map<Integer, OutputStream> open = new HashMap<>();
+        byte[] block = new byte[1024];
+        try {
+            while (true) {
+                int game, droppedBefore, length;
+                synchronized (lock) {
+                    while (head == tail && pendingEnds.isEmpty() && !closed) {
+                        lock.wait();
+                    }
+                    if (head == tail) {
+                        int[] end = pendingEnds.poll();
+                        if (end == null) {
+                            // closed and drained
+                            break;
+                        }
+                        game = end[0];
+                        droppedBefore = end[1];
+                        length = END;
+                    } else {
+                        game = takeInt();
+                        droppedBefore = takeInt();
+                        length = takeInt();
+                        if (length > block.length) {
+                            block = new byte[Math.max(length, 2 * block.length)];
+                        }
+                        for (int i = 0; i < length; ++i) {
+                            block[i] = ring[(int) (tail++ % ring.length)];
+                        }
+                    }
+                }
+                OutputStream out = open.get(game);
+                if (out == null) {
+                    File file = new File(directory, names.get(game) + ".txt.gz");
+                    out = new GZIPOutputStream(new CountingStream(new FileOutputStream(file)), 8192);
+                    open.put(game, out);
+                    files.incrementAndGet();
+                }
+                if (droppedBefore > 0) {
+                    out.write(("###Dropped " + droppedBefore + "\n").getBytes(StandardCharsets.UTF_8));
+                }
+                if (length == END) {
+                    out.close();
+                    open.remove(game);
+                    // rotated in the order games end, a file still being written is never deleted
+                    written.addLast(new File(directory, names.remove(game) + ".txt.gz"));
+                    while (written.size() > maxFiles) {
+                        if (written.pollFirst().delete()) {
+                            deletedFiles.incrementAndGet();
+                        }
+                    }
+                } else {
+                    out.write(block, 0, length);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            failure = e;
+        } finally {
+            for (OutputStream out : open.values()) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the compressed bytes that reach the disk.
+     */
+    private class CountingStream extends FilterOutputStream {
+        CountingStream(OutputStream out) {
+            super(new BufferedOutputStream(out, 65536));
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            writtenBytes.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            writtenBytes.addAndGet(len);
+        }
+    }
+
+    long getAcceptedBytes() {
+        return acceptedBytes.get();
+    }
+
+    long getDroppedBytes() {
+        return droppedBytes.get();
+    }
+
+    long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("transcripts: %d files (%d rotated out), %d bytes logged, %d bytes in %d blocks dropped, %d bytes written",
+                files.get(), deletedFiles.get(), acceptedBytes.get(), droppedBytes.get(), droppedBlocks.get(), writtenBytes.get());
+    }
+
+    /**
+     * Writes what the games handed over so far, and closes the files of the games that did not end. Blocks handed over
+     * after are dropped, the statistics are final.
+     */
+    void finish() throws IOException {
+        closed = true;
+        signal();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            // reported once, not again by close() after
+            IOException e = failure;
+            failure = null;
+            throw e;
+        }
+    }
+
+    /**
+     * @see #finish()
+     */
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+}